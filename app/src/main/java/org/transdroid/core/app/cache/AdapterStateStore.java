@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import android.content.Context;
+
+import androidx.core.content.ContextCompat;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.util.AuthSessions;
+import org.transdroid.daemon.util.BinaryHelper;
+import org.transdroid.daemon.util.KeyValueStore;
+import org.transdroid.daemon.util.ServerCapabilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persists the state that server adapters learned about their servers: their authentication sessions (see
+ * {@link AuthSessions}) and capabilities (see {@link ServerCapabilities}), such that the first request after an app
+ * restart does not need to log in or probe the server first. The state is kept in the app's no-backup directory, so
+ * sessions are never included in (cloud) backups, nor in the settings export, which only covers the preferences.
+ */
+@EBean(scope = Scope.Singleton)
+public class AdapterStateStore implements KeyValueStore {
+
+    private static final int STATE_MAGIC = 0x54444153; // TDAS
+    private static final int STATE_VERSION = 1;
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+    private Map<String, String> values = null;
+
+    @Override
+    public synchronized String get(String key) {
+        return getValues().get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, String value) {
+        if (value.equals(getValues().put(key, value))) {
+            return;
+        }
+        write();
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        if (getValues().remove(key) != null) {
+            write();
+        }
+    }
+
+    private Map<String, String> getValues() {
+        if (values != null) {
+            return values;
+        }
+        values = new HashMap<>();
+        File file = getStateFile();
+        try {
+            ByteBuffer in = BinaryHelper.mapReadOnly(file);
+            if (in == null || in.getInt() != STATE_MAGIC || in.getInt() != STATE_VERSION) {
+                return values;
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = BinaryHelper.readString(in);
+                values.put(key, BinaryHelper.readString(in));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.e(this, "Cannot read adapter state " + file.toString() + ": " + e.toString());
+            values.clear();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        return values;
+    }
+
+    private void write() {
+        final Map<String, String> toWrite = new HashMap<>(values);
+        File file = getStateFile();
+        try {
+            BinaryHelper.writeAtomically(file, out -> {
+                out.writeInt(STATE_MAGIC);
+                out.writeInt(STATE_VERSION);
+                out.writeInt(toWrite.size());
+                for (Map.Entry<String, String> value : toWrite.entrySet()) {
+                    BinaryHelper.writeString(out, value.getKey());
+                    BinaryHelper.writeString(out, value.getValue());
+                }
+            });
+        } catch (IOException e) {
+            log.e(this, "Cannot write adapter state " + file.toString() + ": " + e.toString());
+        }
+    }
+
+    private File getStateFile() {
+        return new File(ContextCompat.getNoBackupFilesDir(context), "adapterstate.bin");
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.core.content.ContextCompat;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.util.BinaryHelper;
+import org.transdroid.daemon.util.DataUsage;
+import org.transdroid.daemon.util.DataUsage.Feature;
+import org.transdroid.daemon.util.FileSizeConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps daily counters of the data received per server and per app feature (see {@link DataUsage}), for the last month.
+ * The counters are kept in the app's no-backup directory; to not write the file for every read from the network, it is
+ * written at most once a minute. Work that runs in the background, where the process may be killed directly after,
+ * should therefore call {@link #flush()} when done.
+ */
+@EBean(scope = Scope.Singleton)
+public class DataUsageStore implements DataUsage.Recorder {
+
+    private static final int USAGE_MAGIC = 0x54444455; // TDDU
+    private static final int USAGE_VERSION = 1;
+    private static final int KEEP_DAYS = 31;
+    private static final long WRITE_INTERVAL = 60 * 1000;
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+    private Map<String, Counter> counters = null;
+    private boolean dirty = false;
+    private long lastWrite = 0;
+
+    @Override
+    public synchronized void record(String server, Feature feature, long bytes) {
+        int day = getDay(0);
+        String key = day + "|" + feature.name() + "|" + server;
+        Counter counter = getCounters().get(key);
+        if (counter == null) {
+            counter = new Counter(day, feature, server);
+            counters.put(key, counter);
+        }
+        counter.bytes += bytes;
+        dirty = true;
+        if (SystemClock.elapsedRealtime() - lastWrite > WRITE_INTERVAL) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the counters to disk directly if any data was recorded since they were last written.
+     */
+    public synchronized void flush() {
+        if (dirty) {
+            write();
+        }
+    }
+
+    /**
+     * Returns a human-readable overview of the data received today and in the last month, per server and per feature,
+     * such as to show on screen or to include in an error report.
+     *
+     * @return The data usage overview, or an empty string if no data was received yet
+     */
+    public synchronized String getReport() {
+        flush();
+        int today = getDay(0);
+        int monthAgo = getDay(KEEP_DAYS - 1);
+        Map<String, Long> todayServers = new TreeMap<>();
+        Map<String, Long> todayFeatures = new TreeMap<>();
+        Map<String, Long> monthServers = new TreeMap<>();
+        Map<String, Long> monthFeatures = new TreeMap<>();
+        for (Counter counter : getCounters().values()) {
+            if (counter.day < monthAgo) {
+                continue;
+            }
+            if (counter.day == today) {
+                add(todayServers, counter.server, counter.bytes);
+                add(todayFeatures, counter.feature.name(), counter.bytes);
+            }
+            add(monthServers, counter.server, counter.bytes);
+            add(monthFeatures, counter.feature.name(), counter.bytes);
+        }
+        if (monthServers.isEmpty()) {
+            return "";
+        }
+        StringBuilder report = new StringBuilder();
+        appendUsage(report, "Today", todayServers, todayFeatures);
+        report.append("\n");
+        appendUsage(report, "Last " + KEEP_DAYS + " days", monthServers, monthFeatures);
+        return report.toString();
+    }
+
+    private void add(Map<String, Long> totals, String key, long bytes) {
+        Long total = totals.get(key);
+        totals.put(key, total == null ? bytes : total + bytes);
+    }
+
+    private void appendUsage(StringBuilder report, String period, Map<String, Long> servers, Map<String, Long> features) {
+        long total = 0;
+        for (Long bytes : servers.values()) {
+            total += bytes;
+        }
+        report.append(period).append(": ").append(FileSizeConverter.getSize(total)).append(" received\n");
+        for (Map.Entry<String, Long> server : servers.entrySet()) {
+            report.append("  ").append(server.getKey()).append(": ").append(FileSizeConverter.getSize(server.getValue()))
+                    .append("\n");
+        }
+        for (Map.Entry<String, Long> feature : features.entrySet()) {
+            report.append("  ").append(feature.getKey()).append(": ").append(FileSizeConverter.getSize(feature.getValue()))
+                    .append("\n");
+        }
+    }
+
+    private Map<String, Counter> getCounters() {
+        if (counters != null) {
+            return counters;
+        }
+        counters = new HashMap<>();
+        File file = getUsageFile();
+        try {
+            ByteBuffer in = BinaryHelper.mapReadOnly(file);
+            if (in == null || in.getInt() != USAGE_MAGIC || in.getInt() != USAGE_VERSION) {
+                return counters;
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int day = in.getInt();
+                Feature feature = Feature.valueOf(BinaryHelper.readString(in));
+                String server = BinaryHelper.readString(in);
+                Counter counter = new Counter(day, feature, server);
+                counter.bytes = in.getLong();
+                counters.put(day + "|" + feature.name() + "|" + server, counter);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.e(this, "Cannot read data usage " + file.toString() + ": " + e.toString());
+            counters.clear();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        return counters;
+    }
+
+    private void write() {
+        // Drop the counters of days that are no longer reported on
+        int oldest = getDay(KEEP_DAYS - 1);
+        final List<Counter> toWrite = new ArrayList<>();
+        for (Map.Entry<String, Counter> counter : new ArrayList<>(counters.entrySet())) {
+            if (counter.getValue().day < oldest) {
+                counters.remove(counter.getKey());
+            } else {
+                toWrite.add(counter.getValue());
+            }
+        }
+        dirty = false;
+        lastWrite = SystemClock.elapsedRealtime();
+        File file = getUsageFile();
+        try {
+            BinaryHelper.writeAtomically(file, out -> {
+                out.writeInt(USAGE_MAGIC);
+                out.writeInt(USAGE_VERSION);
+                out.writeInt(toWrite.size());
+                for (Counter counter : toWrite) {
+                    out.writeInt(counter.day);
+                    BinaryHelper.writeString(out, counter.feature.name());
+                    BinaryHelper.writeString(out, counter.server);
+                    out.writeLong(counter.bytes);
+                }
+            });
+        } catch (IOException e) {
+            log.e(this, "Cannot write data usage " + file.toString() + ": " + e.toString());
+        }
+    }
+
+    /**
+     * Returns a day as yyyyMMdd number, such that days can be compared
+     *
+     * @param daysAgo The number of days before today
+     */
+    private int getDay(int daysAgo) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -daysAgo);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    private File getUsageFile() {
+        return new File(ContextCompat.getNoBackupFilesDir(context), "datausage.bin");
+    }
+
+    private static class Counter {
+
+        private final int day;
+        private final Feature feature;
+        private final String server;
+        private long bytes = 0;
+
+        Counter(int day, Feature feature, String server) {
+            this.day = day;
+            this.feature = feature;
+            this.server = server;
+        }
+
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.app.settings.RssfeedSetting;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.core.rssparser.Channel;
+import org.transdroid.core.rssparser.Item;
+import org.transdroid.daemon.util.BinaryHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persists the items of every RSS feed in a compact binary file, so that the feeds can be shown directly from storage
+ * while they are refreshed in the background. Items are identified by (a hash of) their guid or link, such that a
+ * refresh only adds the items that are really new, and the user's seen state is kept per item. Every file starts with a
+ * sorted index of these hashes, with the seen state in the lowest bit, which is searched directly in the memory-mapped
+ * file.
+ */
+@EBean(scope = Scope.Singleton)
+public class RssItemStore {
+
+    static final long SEEN_BIT = 1L;
+    private static final int STORE_MAGIC = 0x54445231; // TDR1
+    private static final int STORE_VERSION = 1;
+    private static final int MAX_ITEMS = 250;
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+
+    /**
+     * Returns the key that identifies some RSS item within its feed, based on its guid or otherwise its link.
+     */
+    public static long getItemKey(Item item) {
+        String id = !TextUtils.isEmpty(item.getGuid()) ? item.getGuid() : item.getTheLink() != null ? item.getTheLink() : item.getTitle();
+        return BinaryHelper.hash64(id == null ? "" : id) & ~SEEN_BIT;
+    }
+
+    /**
+     * Reads the stored items of some RSS feed.
+     *
+     * @param feed The RSS feed to read the items for
+     * @return The stored feed items, or null if the feed was not stored yet or was stored with other item filters
+     */
+    public synchronized StoredRssfeed read(RssfeedSetting feed) {
+        String url = feed.getUrl();
+        if (url == null) {
+            return null;
+        }
+        File file = getStoreFile(url);
+        try {
+            ByteBuffer in = BinaryHelper.mapReadOnly(file);
+            if (in == null) {
+                return null;
+            }
+            if (in.getInt() != STORE_MAGIC || in.getInt() != STORE_VERSION || !url.equals(BinaryHelper.readString(in))) {
+                // Old format or a hash collision with another feed: ignore
+                return null;
+            }
+            if (!TextUtils.equals(BinaryHelper.readString(in), feed.getExcludeFilter())
+                    || !TextUtils.equals(BinaryHelper.readString(in), feed.getIncludeFilter())) {
+                // The stored items were filtered differently, so the feed needs to be retrieved again
+                return null;
+            }
+            String etag = BinaryHelper.readString(in);
+            String lastModified = BinaryHelper.readString(in);
+            long retrievedAt = in.getLong();
+            Channel channel = new Channel();
+            channel.setTitle(BinaryHelper.readString(in));
+            channel.setLink(BinaryHelper.readString(in));
+            channel.setDescription(BinaryHelper.readString(in));
+            channel.setImage(BinaryHelper.readString(in));
+            int count = in.getInt();
+            LongBuffer index = in.slice().asLongBuffer();
+            if (index.remaining() < count) {
+                throw new IOException("File is truncated");
+            }
+            index.limit(count);
+            in.position(in.position() + count * 8);
+            StoredRssfeed stored = new StoredRssfeed(channel, index, etag, lastModified, retrievedAt);
+            for (int i = 0; i < count; i++) {
+                Item item = new Item();
+                item.setTitle(BinaryHelper.readString(in));
+                item.setLink(BinaryHelper.readString(in));
+                item.setGuid(BinaryHelper.readString(in));
+                item.setDescription(BinaryHelper.readString(in));
+                long pubDate = in.getLong();
+                item.setPubdate(pubDate == -1 ? null : new Date(pubDate));
+                item.setEnclosureUrl(BinaryHelper.readString(in));
+                item.setEnclosureType(BinaryHelper.readString(in));
+                item.setEnclosureLength(in.getLong());
+                Boolean seen = stored.isSeen(getItemKey(item));
+                item.setIsNew(seen == null || !seen);
+                channel.addItem(item);
+            }
+            return stored;
+        } catch (IOException | RuntimeException e) {
+            log.e(this, "Cannot read RSS items " + file.toString() + ": " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Merges the just retrieved contents of some RSS feed into its stored items and stores the result. Items that were
+     * stored already keep their seen state and items that are no longer in the feed are kept, up to some maximum. If
+     * the feed was never stored before, the last viewed date or item of the feed settings determine which items are new.
+     *
+     * @param feed         The RSS feed that was retrieved
+     * @param fetched      The retrieved (and filtered) feed contents
+     * @param etag         The ETag header of the retrieved contents, or null if there was none
+     * @param lastModified The Last-Modified header of the retrieved contents, or null if there was none
+     * @return The merged feed contents, in which all items not seen by the user are marked as new
+     */
+    public synchronized Channel merge(RssfeedSetting feed, Channel fetched, String etag, String lastModified) {
+        StoredRssfeed stored = read(feed);
+        Channel merged = new Channel();
+        merged.setTitle(fetched.getTitle());
+        merged.setLink(fetched.getLink());
+        merged.setDescription(fetched.getDescription());
+        merged.setPubDate(fetched.getPubDate());
+        merged.setImage(fetched.getImage());
+
+        // Peek if this feed properly supports publish dates, for when there are no stored items yet
+        boolean usePublishDate = false;
+        if (fetched.getItems().size() > 0) {
+            Date pubDate = fetched.getItems().get(0).getPubdate();
+            usePublishDate = pubDate != null && pubDate.getTime() > 0;
+        }
+        boolean beforeLastViewedItem = true;
+
+        Set<Long> keys = new HashSet<>();
+        for (Item item : fetched.getItems()) {
+            long key = getItemKey(item);
+            if (!keys.add(key)) {
+                // Duplicate item in the same feed
+                continue;
+            }
+            if (item.getTheLink() != null && item.getTheLink().equals(feed.getLastViewedItemUrl())) {
+                beforeLastViewedItem = false;
+            }
+            Boolean seen = stored == null ? null : stored.isSeen(key);
+            if (seen != null) {
+                item.setIsNew(!seen);
+            } else if (stored == null && usePublishDate) {
+                item.setIsNew(item.getPubdate() == null || feed.getLastViewed() == null || item.getPubdate().after(feed.getLastViewed()));
+            } else if (stored == null) {
+                item.setIsNew(beforeLastViewedItem);
+            } else {
+                // Never seen this item before
+                item.setIsNew(true);
+            }
+            merged.addItem(item);
+        }
+        if (stored != null) {
+            for (Item item : stored.getChannel().getItems()) {
+                if (merged.getItems().size() >= MAX_ITEMS) {
+                    break;
+                }
+                if (keys.add(getItemKey(item))) {
+                    merged.addItem(item);
+                }
+            }
+        }
+
+        write(feed, merged, etag, lastModified, System.currentTimeMillis());
+        return merged;
+    }
+
+    /**
+     * Registers that some RSS feed was retrieved again but had not changed, which resets its retrieval time.
+     *
+     * @param feed The RSS feed that was retrieved
+     */
+    public synchronized void markRetrieved(RssfeedSetting feed) {
+        StoredRssfeed stored = read(feed);
+        if (stored != null) {
+            write(feed, stored.getChannel(), stored.getEtag(), stored.getLastModified(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Marks all stored items of some RSS feed as seen by the user.
+     *
+     * @param feed The RSS feed that was viewed
+     */
+    public synchronized void markSeen(RssfeedSetting feed) {
+        StoredRssfeed stored = read(feed);
+        if (stored == null) {
+            return;
+        }
+        for (Item item : stored.getChannel().getItems()) {
+            item.setIsNew(false);
+        }
+        write(feed, stored.getChannel(), stored.getEtag(), stored.getLastModified(), stored.getRetrievedAt());
+    }
+
+    /**
+     * Removes the stored items of all RSS feeds that are no longer configured.
+     *
+     * @param feeds All RSS feeds as currently configured by the user
+     */
+    public synchronized void removeUnused(List<RssfeedSetting> feeds) {
+        File[] files = new File(context.getFilesDir(), "rssitems").listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> used = new HashSet<>();
+        for (RssfeedSetting feed : feeds) {
+            if (feed.getUrl() != null) {
+                used.add(getStoreFile(feed.getUrl()).getName());
+            }
+        }
+        for (File file : files) {
+            if (!used.contains(file.getName())) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private void write(final RssfeedSetting feed, final Channel channel, final String etag, final String lastModified,
+                       final long retrievedAt) {
+        final List<Item> items = channel.getItems();
+        final long[] index = new long[items.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = getItemKey(items.get(i)) | (items.get(i).isNew() ? 0L : SEEN_BIT);
+        }
+        Arrays.sort(index);
+        File file = getStoreFile(feed.getUrl());
+        try {
+            BinaryHelper.writeAtomically(file, out -> {
+                out.writeInt(STORE_MAGIC);
+                out.writeInt(STORE_VERSION);
+                BinaryHelper.writeString(out, feed.getUrl());
+                BinaryHelper.writeString(out, feed.getExcludeFilter());
+                BinaryHelper.writeString(out, feed.getIncludeFilter());
+                BinaryHelper.writeString(out, etag);
+                BinaryHelper.writeString(out, lastModified);
+                out.writeLong(retrievedAt);
+                BinaryHelper.writeString(out, channel.getTitle());
+                BinaryHelper.writeString(out, channel.getLink());
+                BinaryHelper.writeString(out, channel.getDescription());
+                BinaryHelper.writeString(out, channel.getImage());
+                out.writeInt(index.length);
+                for (long entry : index) {
+                    out.writeLong(entry);
+                }
+                for (Item item : items) {
+                    BinaryHelper.writeString(out, item.getTitle());
+                    BinaryHelper.writeString(out, item.getLink());
+                    BinaryHelper.writeString(out, item.getGuid());
+                    BinaryHelper.writeString(out, item.getDescription());
+                    out.writeLong(item.getPubdate() == null ? -1 : item.getPubdate().getTime());
+                    BinaryHelper.writeString(out, item.getEnclosureUrl());
+                    BinaryHelper.writeString(out, item.getEnclosureType());
+                    out.writeLong(item.getEnclosureLength());
+                }
+            });
+        } catch (IOException e) {
+            log.e(this, "Cannot write RSS items " + file.toString() + ": " + e.toString());
+        }
+    }
+
+    private File getStoreFile(String url) {
+        return new File(new File(context.getFilesDir(), "rssitems"), Long.toHexString(BinaryHelper.hash64(url)) + ".bin");
+    }
+
+}
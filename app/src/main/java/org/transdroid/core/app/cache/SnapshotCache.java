@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import android.content.Context;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.app.settings.ServerSetting;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.Label;
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.util.BinaryHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the last retrieved torrents and labels per server in a compact binary file in the cache directory, so they can
+ * be shown directly on a cold start (while the live list is being retrieved) or when a server can not be reached.
+ */
+@EBean(scope = Scope.Singleton)
+public class SnapshotCache {
+
+    private static final int SNAPSHOT_MAGIC = 0x54445331; // TDS1
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long MIN_WRITE_INTERVAL = 30 * 1000; // 30 seconds
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+    private final Map<String, Long> lastWritten = new HashMap<>();
+
+    /**
+     * Reads the last stored snapshot of some server's torrents.
+     *
+     * @param server The server to read the snapshot for
+     * @return The stored snapshot, or null if no (valid) snapshot exists for this server
+     */
+    public TorrentsSnapshot read(ServerSetting server) {
+        String identifier = server.getUniqueIdentifier();
+        if (identifier == null) {
+            return null;
+        }
+        File file = getSnapshotFile(identifier);
+        try {
+            ByteBuffer in = BinaryHelper.mapReadOnly(file);
+            if (in == null) {
+                return null;
+            }
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION || !identifier.equals(BinaryHelper.readString(in))) {
+                // Old format or a hash collision with another server: ignore
+                return null;
+            }
+            Date retrievedAt = new Date(in.getLong());
+            int torrentCount = in.getInt();
+            List<Torrent> torrents = new ArrayList<>(torrentCount);
+            for (int i = 0; i < torrentCount; i++) {
+                torrents.add(Torrent.readFrom(in));
+            }
+            int labelCount = in.getInt();
+            List<Label> labels = new ArrayList<>(labelCount);
+            for (int i = 0; i < labelCount; i++) {
+                labels.add(new Label(BinaryHelper.readString(in), in.getInt()));
+            }
+            return new TorrentsSnapshot(torrents, labels, retrievedAt);
+        } catch (IOException | RuntimeException e) {
+            log.e(this, "Cannot read torrents snapshot " + file.toString() + ": " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the just retrieved torrents and labels of some server, replacing the earlier snapshot. To limit disk writes
+     * during auto refreshes, a snapshot is not replaced if it was written only moments ago.
+     *
+     * @param server   The server from which the torrents were retrieved
+     * @param torrents The full list of retrieved torrents
+     * @param labels   The retrieved labels, or null if the server does not support labels
+     */
+    public void write(ServerSetting server, final List<Torrent> torrents, final List<Label> labels) {
+        final String identifier = server.getUniqueIdentifier();
+        if (identifier == null || torrents == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (lastWritten) {
+            Long last = lastWritten.get(identifier);
+            if (last != null && now - last < MIN_WRITE_INTERVAL) {
+                return;
+            }
+            lastWritten.put(identifier, now);
+        }
+        File file = getSnapshotFile(identifier);
+        try {
+            BinaryHelper.writeAtomically(file, out -> {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                BinaryHelper.writeString(out, identifier);
+                out.writeLong(now);
+                out.writeInt(torrents.size());
+                for (Torrent torrent : torrents) {
+                    torrent.writeTo(out);
+                }
+                out.writeInt(labels == null ? 0 : labels.size());
+                if (labels != null) {
+                    for (Label label : labels) {
+                        BinaryHelper.writeString(out, label.getName());
+                        out.writeInt(label.getCount());
+                    }
+                }
+            });
+        } catch (IOException e) {
+            log.e(this, "Cannot write torrents snapshot " + file.toString() + ": " + e.toString());
+        }
+    }
+
+    private File getSnapshotFile(String identifier) {
+        return new File(new File(context.getCacheDir(), "snapshots"), Integer.toHexString(identifier.hashCode()) + ".bin");
+    }
+
+}
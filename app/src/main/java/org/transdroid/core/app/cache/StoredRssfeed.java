@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import org.transdroid.core.rssparser.Channel;
+
+import java.nio.LongBuffer;
+
+/**
+ * The items of some RSS feed as they were last retrieved, restored from the on-disk {@link RssItemStore}. Every item is
+ * marked as new if the user did not see it yet. The HTTP validators of the last retrieval are kept as well, such that a
+ * refresh can be a conditional request.
+ */
+public class StoredRssfeed {
+
+    private final Channel channel;
+    private final LongBuffer index;
+    private final String etag;
+    private final String lastModified;
+    private final long retrievedAt;
+
+    StoredRssfeed(Channel channel, LongBuffer index, String etag, String lastModified, long retrievedAt) {
+        this.channel = channel;
+        this.index = index;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.retrievedAt = retrievedAt;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the time (in milliseconds since the epoch) at which the feed was last retrieved.
+     */
+    public long getRetrievedAt() {
+        return retrievedAt;
+    }
+
+    /**
+     * Looks up an item in the index of stored items.
+     *
+     * @param key The item key as returned by {@link RssItemStore#getItemKey(org.transdroid.core.rssparser.Item)}
+     * @return True if the item was seen by the user, false if it was not, or null if the item is not stored at all
+     */
+    Boolean isSeen(long key) {
+        int low = 0;
+        int high = index.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = index.get(middle) & ~RssItemStore.SEEN_BIT;
+            if (entry < key) {
+                low = middle + 1;
+            } else if (entry > key) {
+                high = middle - 1;
+            } else {
+                return (index.get(middle) & RssItemStore.SEEN_BIT) != 0;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.cache;
+
+import org.transdroid.daemon.Label;
+import org.transdroid.daemon.Torrent;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The torrents and labels of some server as they were last retrieved, restored from the on-disk {@link SnapshotCache}.
+ * This data is by definition stale and should only be shown until a live list of torrents was retrieved.
+ */
+public class TorrentsSnapshot {
+
+    private final List<Torrent> torrents;
+    private final List<Label> labels;
+    private final Date retrievedAt;
+
+    public TorrentsSnapshot(List<Torrent> torrents, List<Label> labels, Date retrievedAt) {
+        this.torrents = torrents;
+        this.labels = labels;
+        this.retrievedAt = retrievedAt;
+    }
+
+    public List<Torrent> getTorrents() {
+        return torrents;
+    }
+
+    public List<Label> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the date and time at which the torrents in this snapshot were retrieved from the server.
+     */
+    public Date getRetrievedAt() {
+        return retrievedAt;
+    }
+
+}
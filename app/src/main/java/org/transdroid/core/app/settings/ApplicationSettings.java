@@ -19,6 +19,7 @@ package org.transdroid.core.app.settings;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.text.TextUtils;
 
 import androidx.preference.PreferenceManager;
@@ -38,6 +39,7 @@ import org.transdroid.core.gui.search.SearchSetting;
 import org.transdroid.core.seedbox.SeedboxProvider;
 import org.transdroid.core.widget.ListWidgetConfig;
 import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.OS;
 import org.transdroid.daemon.TorrentsSortBy;
 
@@ -46,9 +48,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Singleton object to access all application settings, including stored servers, web search sites and RSS feeds.
+ * Singleton object to access all application settings, including stored servers, web search sites and RSS feeds. The
+ * stored servers, web search sites and RSS feeds are read once into an immutable snapshot, which is shared by all
+ * (background) readers until a preference change invalidates it.
  *
  * @author Eric Kok
  */
@@ -63,9 +69,48 @@ public class ApplicationSettings {
     @Bean
     protected SearchHelper searchHelper;
     private SharedPreferences prefs;
+    private final AtomicInteger snapshotGeneration = new AtomicInteger();
+    private final AtomicReference<SettingsSnapshot> snapshot = new AtomicReference<>();
+    // NOTE The listener is kept as field since the shared preferences only hold a weak reference to it
+    private final OnSharedPreferenceChangeListener snapshotInvalidator = (sharedPreferences, key) -> {
+        if (key == null || key.startsWith("server_") || key.startsWith("seedbox_") || key.startsWith(WebsearchSetting.KEY_PREFIX)
+                || key.startsWith("rssfeed_")) {
+            invalidateSnapshot();
+        }
+    };
 
     protected ApplicationSettings(Context context) {
         prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        prefs.registerOnSharedPreferenceChangeListener(snapshotInvalidator);
+    }
+
+    /**
+     * Returns the current snapshot of all stored servers, web search sites and RSS feeds, reading it from the
+     * preferences if it was invalidated since it was last read.
+     */
+    private SettingsSnapshot getSnapshot() {
+        int generation = snapshotGeneration.get();
+        SettingsSnapshot current = snapshot.get();
+        if (current != null && current.generation == generation) {
+            return current;
+        }
+        // Read all settings; if these are changed meanwhile, the generation no longer matches and the next reader will
+        // read them again
+        List<ServerSetting> normalServers = readNormalServerSettings();
+        List<ServerSetting> allServers = new ArrayList<>(normalServers);
+        int maxOfAllServers = normalServers.size() - 1;
+        for (SeedboxProvider provider : SeedboxProvider.values()) {
+            allServers.addAll(provider.getSettings().getAllServerSettings(prefs, allServers.size()));
+            maxOfAllServers += provider.getSettings().getMaxSeedboxOrder(prefs) + 1;
+        }
+        SettingsSnapshot read = new SettingsSnapshot(generation, normalServers, Collections.unmodifiableList(allServers),
+                maxOfAllServers, readWebsearchSettings(), readRssfeedSettings());
+        snapshot.set(read);
+        return read;
+    }
+
+    private void invalidateSnapshot() {
+        snapshotGeneration.incrementAndGet();
     }
 
     /**
@@ -74,11 +119,7 @@ public class ApplicationSettings {
      * @return A list of all stored server settings objects
      */
     public List<ServerSetting> getAllServerSettings() {
-        List<ServerSetting> all = new ArrayList<>(getNormalServerSettings());
-        for (SeedboxProvider provider : SeedboxProvider.values()) {
-            all.addAll(provider.getSettings().getAllServerSettings(prefs, all.size()));
-        }
-        return all;
+        return getSnapshot().allServers;
     }
 
     /**
@@ -87,11 +128,7 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored server settings
      */
     public int getMaxOfAllServers() {
-        int max = getMaxNormalServer();
-        for (SeedboxProvider provider : SeedboxProvider.values()) {
-            max += provider.getSettings().getMaxSeedboxOrder(prefs) + 1;
-        }
-        return max;
+        return getSnapshot().maxOfAllServers;
     }
 
     /**
@@ -103,6 +140,10 @@ public class ApplicationSettings {
      * @return The server settings object, loaded from shared preferences
      */
     public ServerSetting getServerSetting(int order) {
+        List<ServerSetting> allServers = getSnapshot().allServers;
+        if (order >= 0 && order < allServers.size() && allServers.get(order).getOrder() == order) {
+            return allServers.get(order);
+        }
         int max = getMaxNormalServer() + 1;
         if (order < max) {
             return getNormalServerSetting(order);
@@ -123,9 +164,13 @@ public class ApplicationSettings {
      * @return A list of all stored server settings objects
      */
     public List<ServerSetting> getNormalServerSettings() {
+        return getSnapshot().normalServers;
+    }
+
+    private List<ServerSetting> readNormalServerSettings() {
         List<ServerSetting> servers = new ArrayList<>();
-        for (int i = 0; i <= getMaxNormalServer(); i++) {
-            servers.add(getNormalServerSetting(i));
+        for (int i = 0; i <= readMaxNormalServer(); i++) {
+            servers.add(readNormalServerSetting(i));
         }
         return Collections.unmodifiableList(servers);
     }
@@ -136,6 +181,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored normal server settings
      */
     public int getMaxNormalServer() {
+        return getSnapshot().normalServers.size() - 1;
+    }
+
+    private int readMaxNormalServer() {
         for (int i = 0; true; i++) {
             if (prefs.getString("server_type_" + i, null) == null || prefs.getString("server_address_" + i, null) == null)
                 return i - 1;
@@ -150,6 +199,14 @@ public class ApplicationSettings {
      * @return The server settings object, loaded from shared preferences
      */
     public ServerSetting getNormalServerSetting(int order) {
+        List<ServerSetting> normalServers = getSnapshot().normalServers;
+        if (order >= 0 && order < normalServers.size()) {
+            return normalServers.get(order);
+        }
+        return readNormalServerSetting(order);
+    }
+
+    private ServerSetting readNormalServerSetting(int order) {
         // @formatter:off
         Daemon type = Daemon.fromCode(prefs.getString("server_type_" + order, null));
         boolean ssl = prefs.getBoolean("server_sslenabled_" + order, false);
@@ -194,6 +251,7 @@ public class ApplicationSettings {
                 prefs.getString("server_ftpurl_" + order, null),
                 prefs.getString("server_ftppass_" + order, null),
                 parseInt(prefs.getString("server_timeout_" + order, "8"), 8),
+                parseInt(prefs.getString("server_maxconnections_" + order, null), DaemonSettings.DEFAULT_MAX_CONNECTIONS),
                 prefs.getBoolean("server_alarmfinished_" + order, true),
                 prefs.getBoolean("server_alarmnew_" + order, false),
                 prefs.getString("server_alarmexclude_" + order, null),
@@ -236,6 +294,7 @@ public class ApplicationSettings {
             edit.putString("server_ftpurl_" + i, prefs.getString("server_ftpurl_" + (i + 1), null));
             edit.putString("server_ftppass_" + i, prefs.getString("server_ftppass_" + (i + 1), null));
             edit.putString("server_timeout_" + i, prefs.getString("server_timeout_" + (i + 1), null));
+            edit.putString("server_maxconnections_" + i, prefs.getString("server_maxconnections_" + (i + 1), null));
             edit.putBoolean("server_alarmfinished_" + i, prefs.getBoolean("server_alarmfinished_" + (i + 1), true));
             edit.putBoolean("server_alarmfinished_" + i, prefs.getBoolean("server_alarmfinished_" + (i + 1), false));
         }
@@ -261,6 +320,7 @@ public class ApplicationSettings {
         edit.remove("server_ftpurl_" + max);
         edit.remove("server_ftppass_" + max);
         edit.remove("server_timeout_" + max);
+        edit.remove("server_maxconnections_" + max);
         edit.remove("server_alarmfinished_" + max);
         edit.remove("server_alarmfinished_" + max);
 
@@ -275,6 +335,7 @@ public class ApplicationSettings {
         }
 
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -403,9 +464,13 @@ public class ApplicationSettings {
      * @return A list of all stored web search site settings objects
      */
     public List<WebsearchSetting> getWebsearchSettings() {
+        return getSnapshot().websearches;
+    }
+
+    private List<WebsearchSetting> readWebsearchSettings() {
         List<WebsearchSetting> websearches = new ArrayList<>();
-        for (int i = 0; i <= getMaxWebsearch(); i++) {
-            websearches.add(getWebsearchSetting(i));
+        for (int i = 0; i <= readMaxWebsearch(); i++) {
+            websearches.add(readWebsearchSetting(i));
         }
         return Collections.unmodifiableList(websearches);
     }
@@ -416,6 +481,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored web search site
      */
     public int getMaxWebsearch() {
+        return getSnapshot().websearches.size() - 1;
+    }
+
+    private int readMaxWebsearch() {
         for (int i = 0; true; i++) {
             if (prefs.getString("websearch_baseurl_" + i, null) == null)
                 return i - 1;
@@ -429,6 +498,14 @@ public class ApplicationSettings {
      * @return The web search site settings object, loaded from shared preferences
      */
     public WebsearchSetting getWebsearchSetting(int order) {
+        List<WebsearchSetting> websearches = getSnapshot().websearches;
+        if (order >= 0 && order < websearches.size()) {
+            return websearches.get(order);
+        }
+        return readWebsearchSetting(order);
+    }
+
+    private WebsearchSetting readWebsearchSetting(int order) {
         // @formatter:off
         return new WebsearchSetting(order,
                 prefs.getString("websearch_name_" + order, null),
@@ -461,6 +538,7 @@ public class ApplicationSettings {
         edit.remove("websearch_baseurl_" + max);
         edit.remove("websearch_cookies_" + max);
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -470,9 +548,13 @@ public class ApplicationSettings {
      * @return A list of all stored RSS feed settings objects
      */
     public List<RssfeedSetting> getRssfeedSettings() {
+        return getSnapshot().rssfeeds;
+    }
+
+    private List<RssfeedSetting> readRssfeedSettings() {
         List<RssfeedSetting> rssfeeds = new ArrayList<>();
-        for (int i = 0; i <= getMaxRssfeed(); i++) {
-            rssfeeds.add(getRssfeedSetting(i));
+        for (int i = 0; i <= readMaxRssfeed(); i++) {
+            rssfeeds.add(readRssfeedSetting(i));
         }
         return Collections.unmodifiableList(rssfeeds);
     }
@@ -483,6 +565,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored RSS feed
      */
     public int getMaxRssfeed() {
+        return getSnapshot().rssfeeds.size() - 1;
+    }
+
+    private int readMaxRssfeed() {
         for (int i = 0; true; i++) {
             if (prefs.getString("rssfeed_url_" + i, null) == null)
                 return i - 1;
@@ -496,6 +582,14 @@ public class ApplicationSettings {
      * @return The RSS feed settings object, loaded from shared preferences
      */
     public RssfeedSetting getRssfeedSetting(int order) {
+        List<RssfeedSetting> rssfeeds = getSnapshot().rssfeeds;
+        if (order >= 0 && order < rssfeeds.size()) {
+            return rssfeeds.get(order);
+        }
+        return readRssfeedSetting(order);
+    }
+
+    private RssfeedSetting readRssfeedSetting(int order) {
         // @formatter:off
         long lastViewed = prefs.getLong("rssfeed_lastviewed_" + order, -1);
         return new RssfeedSetting(order,
@@ -522,6 +616,7 @@ public class ApplicationSettings {
 
         // Copy all settings higher than the supplied order number to the previous spot
         Editor edit = prefs.edit();
+        removeRssfeedLastCheck(edit, prefs.getString("rssfeed_url_" + order, null));
         int max = getMaxRssfeed();
         for (int i = order; i < max; i++) {
             edit.putString("rssfeed_name_" + i, prefs.getString("rssfeed_name_" + (i + 1), null));
@@ -544,6 +639,7 @@ public class ApplicationSettings {
         edit.remove("rssfeed_lastviewed_" + max);
         edit.remove("rssfeed_lastvieweditemurl_" + max);
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -564,6 +660,60 @@ public class ApplicationSettings {
         edit.putLong("rssfeed_lastviewed_" + order, lastViewed.getTime());
         edit.putString("rssfeed_lastvieweditemurl_" + order, lastViewedItemUrl);
         edit.apply();
+        invalidateSnapshot();
+    }
+
+    /**
+     * Returns the outcome of the last background check of some RSS feed.
+     *
+     * @param feed The RSS feed for which to get the last check
+     * @return The validators and unread count of the last check, or null if the feed was not checked before
+     */
+    public RssfeedLastCheck getRssfeedLastCheck(RssfeedSetting feed) {
+        String url = feed.getUrl();
+        if (url == null || !prefs.contains("rsscheck_unread_" + url))
+            return null;
+        return new RssfeedLastCheck(
+                prefs.getString("rsscheck_etag_" + url, null),
+                prefs.getString("rsscheck_modified_" + url, null),
+                prefs.getLong("rsscheck_lastviewed_" + url, -1),
+                prefs.getString("rsscheck_lastvieweditemurl_" + url, null),
+                prefs.getInt("rsscheck_unread_" + url, 0));
+    }
+
+    /**
+     * Stores the outcome of a background check of some RSS feed, such that the next check may use a conditional
+     * request. These are stored by feed url rather than order, as they only apply to that specific url.
+     *
+     * @param feed      The RSS feed that was checked
+     * @param lastCheck The validators and unread count of the check
+     */
+    public void setRssfeedLastCheck(RssfeedSetting feed, RssfeedLastCheck lastCheck) {
+        String url = feed.getUrl();
+        if (url == null)
+            return;
+        Editor edit = prefs.edit();
+        if (lastCheck.getEtag() == null && lastCheck.getLastModified() == null) {
+            // Server does not support conditional requests, so there is no use in remembering anything
+            removeRssfeedLastCheck(edit, url);
+        } else {
+            edit.putString("rsscheck_etag_" + url, lastCheck.getEtag());
+            edit.putString("rsscheck_modified_" + url, lastCheck.getLastModified());
+            edit.putLong("rsscheck_lastviewed_" + url, lastCheck.getLastViewed());
+            edit.putString("rsscheck_lastvieweditemurl_" + url, lastCheck.getLastViewedItemUrl());
+            edit.putInt("rsscheck_unread_" + url, lastCheck.getUnread());
+        }
+        edit.apply();
+    }
+
+    private void removeRssfeedLastCheck(Editor edit, String url) {
+        if (url == null)
+            return;
+        edit.remove("rsscheck_etag_" + url);
+        edit.remove("rsscheck_modified_" + url);
+        edit.remove("rsscheck_lastviewed_" + url);
+        edit.remove("rsscheck_lastvieweditemurl_" + url);
+        edit.remove("rsscheck_unread_" + url);
     }
 
     /**
@@ -708,7 +858,8 @@ public class ApplicationSettings {
     }
 
     /**
-     * Returns the statistics of this server as it was last seen by the background server checker service.
+     * Returns the statistics of this server as it was last seen by the background server checker service of earlier
+     * versions, which stored these in the preferences.
      *
      * @param server The server for which to retrieved the statistics from the stored preferences
      * @return A JSON array of JSON objects, each which represent a since torrent
@@ -725,14 +876,13 @@ public class ApplicationSettings {
     }
 
     /**
-     * Stores the now-last seen statistics of the supplied server by the background server checker service to the
-     * internal stored preferences.
+     * Removes the statistics of the supplied server as stored by earlier versions of the background server checker
+     * service, which now keeps these in a {@link org.transdroid.core.service.ServerStatsStore} instead.
      *
-     * @param server    The server to which the statistics apply to
-     * @param lastStats A JSON array of JSON objects that each represent a single seen torrent
+     * @param server The server to which the statistics apply to
      */
-    public void setServerLastStats(ServerSetting server, JSONArray lastStats) {
-        prefs.edit().putString(server.getUniqueIdentifier(), lastStats.toString()).apply();
+    public void removeServerLastStats(ServerSetting server) {
+        prefs.edit().remove(server.getUniqueIdentifier()).apply();
     }
 
 	/**
@@ -809,4 +959,28 @@ public class ApplicationSettings {
         }
     }
 
+    /**
+     * Immutable copy of the stored servers, web search sites and RSS feeds as read at one moment from the preferences.
+     */
+    private static final class SettingsSnapshot {
+
+        final int generation;
+        final List<ServerSetting> normalServers;
+        final List<ServerSetting> allServers;
+        final int maxOfAllServers;
+        final List<WebsearchSetting> websearches;
+        final List<RssfeedSetting> rssfeeds;
+
+        SettingsSnapshot(int generation, List<ServerSetting> normalServers, List<ServerSetting> allServers, int maxOfAllServers,
+                         List<WebsearchSetting> websearches, List<RssfeedSetting> rssfeeds) {
+            this.generation = generation;
+            this.normalServers = normalServers;
+            this.allServers = allServers;
+            this.maxOfAllServers = maxOfAllServers;
+            this.websearches = websearches;
+            this.rssfeeds = rssfeeds;
+        }
+
+    }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.settings;
+
+/**
+ * Represents the outcome of the last background check of an RSS feed: the validators that the server returned, which
+ * allow the next check to be a conditional request, and the number of unread items that were found then.
+ */
+public class RssfeedLastCheck {
+
+    private final String etag;
+    private final String lastModified;
+    private final long lastViewed;
+    private final String lastViewedItemUrl;
+    private final int unread;
+
+    public RssfeedLastCheck(String etag, String lastModified, long lastViewed, String lastViewedItemUrl, int unread) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.lastViewed = lastViewed;
+        this.lastViewedItemUrl = lastViewedItemUrl;
+        this.unread = unread;
+    }
+
+    /**
+     * Creates the outcome of a check against the current last viewed date and item of some feed.
+     */
+    public RssfeedLastCheck(RssfeedSetting feed, String etag, String lastModified, int unread) {
+        this(etag, lastModified, feed.getLastViewed() == null ? -1L : feed.getLastViewed().getTime(),
+                feed.getLastViewedItemUrl(), unread);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getLastViewed() {
+        return lastViewed;
+    }
+
+    public String getLastViewedItemUrl() {
+        return lastViewedItemUrl;
+    }
+
+    public int getUnread() {
+        return unread;
+    }
+
+    /**
+     * Whether the unread items count of this check still applies to the feed, that is, the user did not view the feed
+     * since. If so, an unchanged feed does not need to be retrieved and parsed again.
+     *
+     * @param feed The feed settings, with its current last viewed date and item
+     * @return True if the feed was not viewed since this check; false otherwise
+     */
+    public boolean appliesTo(RssfeedSetting feed) {
+        long feedLastViewed = feed.getLastViewed() == null ? -1L : feed.getLastViewed().getTime();
+        return feedLastViewed == lastViewed && (lastViewedItemUrl == null ? feed.getLastViewedItemUrl() == null :
+                lastViewedItemUrl.equals(feed.getLastViewedItemUrl()));
+    }
+
+}
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.text.TextUtils;
 import org.transdroid.core.gui.lists.SimpleListItem;
 import org.transdroid.core.gui.log.Log_;
+import org.transdroid.core.service.LocalAddressProbe_;
 import org.transdroid.daemon.Daemon;
 import org.transdroid.daemon.DaemonFactory;
 import org.transdroid.daemon.DaemonSettings;
@@ -34,6 +35,7 @@ import org.transdroid.daemon.OS;
 public class ServerSetting implements SimpleListItem {
 
     private static final String DEFAULT_NAME = "Default";
+    private static final String UNKNOWN_SSID = "<unknown ssid>"; // As reported by Android without location permission
 
     private final int key;
     private final String name;
@@ -54,6 +56,7 @@ public class ServerSetting implements SimpleListItem {
     private final String ftpUrl;
     private final String ftpPassword;
     private final int timeout;
+    private final int maxConnections;
     private final boolean alarmOnFinishedDownload;
     private final boolean alarmOnNewTorrent;
     private final boolean ssl;
@@ -84,12 +87,13 @@ public class ServerSetting implements SimpleListItem {
      * @param downloadDir       The default download directory (which may also be used as base directory for file paths)
      * @param ftpUrl            The partial URL to connect to when requesting FTP-style transfers
      * @param timeout           The number of seconds to wait before timing out a connection attempt
+     * @param maxConnections    The number of requests that may be executed on the server at the same time
      * @param isAutoGenerated   Whether this setting was generated rather than manually inputed by the user
      */
     public ServerSetting(int key, String name, Daemon type, String address, String localAddress, int localPort, String localNetwork, int port,
                          boolean ssl, boolean localSsl, boolean sslTrustAll, String sslTrustKey, String folder, boolean useAuthentication, String username,
                          String password, String extraPass, String authToken, OS os, String downloadDir, String ftpUrl, String ftpPassword, int timeout,
-                         boolean alarmOnFinishedDownload, boolean alarmOnNewTorrent, String excludeFilter, String includeFilter,
+                         int maxConnections, boolean alarmOnFinishedDownload, boolean alarmOnNewTorrent, String excludeFilter, String includeFilter,
                          boolean isAutoGenerated) {
         this.key = key;
         this.name = name;
@@ -114,6 +118,7 @@ public class ServerSetting implements SimpleListItem {
         this.ftpUrl = ftpUrl;
         this.ftpPassword = ftpPassword;
         this.timeout = timeout;
+        this.maxConnections = maxConnections;
         this.alarmOnFinishedDownload = alarmOnFinishedDownload;
         this.alarmOnNewTorrent = alarmOnNewTorrent;
         this.excludeFilter = excludeFilter;
@@ -225,6 +230,10 @@ public class ServerSetting implements SimpleListItem {
         return timeout * 1000;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
     public boolean shouldAlarmOnFinishedDownload() {
         return alarmOnFinishedDownload;
     }
@@ -332,20 +341,33 @@ public class ServerSetting implements SimpleListItem {
         String addressToUse = address;
         int portToUse = port;
         boolean sslEnable = ssl;
-        if (!TextUtils.isEmpty(localNetwork) && !TextUtils.isEmpty(localAddress) &&
-                !TextUtils.isEmpty(connectedToNetwork)) {
-            String[] localNetworks = localNetwork.split("\\|");
-            for (String network : localNetworks) {
-                if (connectedToNetwork.equals(network)) {
-                    addressToUse = localAddress;
-                    portToUse = localPort;
-                    sslEnable = localSsl;
-                    break;
+        if (!TextUtils.isEmpty(localAddress)) {
+            boolean useLocal = false;
+            if (!TextUtils.isEmpty(localNetwork) && !TextUtils.isEmpty(connectedToNetwork)) {
+                String[] localNetworks = localNetwork.split("\\|");
+                for (String network : localNetworks) {
+                    if (connectedToNetwork.equals(network)) {
+                        useLocal = true;
+                        break;
+                    }
                 }
             }
+            if (!useLocal && !TextUtils.isEmpty(localNetwork) && (TextUtils.isEmpty(connectedToNetwork)
+                    || UNKNOWN_SSID.equals(connectedToNetwork))) {
+                // A local network is configured, but the network name is not known (no permission, VPN, tethering);
+                // use the local address if it can be reached instead. Without a configured local network the local
+                // address is never tried, as then any network could have some other host, which would receive our
+                // credentials, at that address
+                useLocal = LocalAddressProbe_.getInstance_(caller).shouldUseLocal(this);
+            }
+            if (useLocal) {
+                addressToUse = localAddress;
+                portToUse = localPort;
+                sslEnable = localSsl;
+            }
         }
         return new DaemonSettings(name, type, addressToUse, portToUse, sslEnable, sslTrustAll, sslTrustKey, folder,
-                useAuthentication, username, password, extraPass, authToken, os, downloadDir, ftpUrl, ftpPassword, timeout,
+                useAuthentication, username, password, extraPass, authToken, os, downloadDir, ftpUrl, ftpPassword, timeout, maxConnections,
                 alarmOnFinishedDownload, alarmOnNewTorrent, Integer.toString(key), isAutoGenerated);
     }
 }
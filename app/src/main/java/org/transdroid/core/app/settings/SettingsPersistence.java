@@ -143,6 +143,8 @@ public class SettingsPersistence {
                     editor.putString("server_ftppass_" + postfix, server.getString("ftp_password"));
                 if (server.has("server_timeout"))
                     editor.putString("server_timeout_" + postfix, server.getString("server_timeout"));
+                if (server.has("server_maxconnections"))
+                    editor.putString("server_maxconnections_" + postfix, server.getString("server_maxconnections"));
                 if (server.has("download_alarm"))
                     editor.putBoolean("server_alarmfinished_" + postfix, server.getBoolean("download_alarm"));
                 if (server.has("new_torrent_alarm"))
@@ -308,6 +310,7 @@ public class SettingsPersistence {
             server.put("base_ftp_url", prefs.getString("server_ftpurl_" + postfixi, null));
             server.put("ftp_password", prefs.getString("server_ftppass_" + postfixi, null));
             server.put("server_timeout", prefs.getString("server_timeout_" + postfixi, null));
+            server.put("server_maxconnections", prefs.getString("server_maxconnections_" + postfixi, null));
             server.put("download_alarm", prefs.getBoolean("server_alarmfinished_" + postfixi, false));
             server.put("new_torrent_alarm", prefs.getBoolean("server_alarmnew_" + postfixi, false));
             server.put("alarm_filter_exclude", prefs.getString("server_alarmexclude_" + postfixi, null));
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Schedules the automatic refreshes of a screen. The next refresh is planned only once the previous one completed, so
+ * refreshes never pile up on a slow connection, and a planned refresh is skipped if another (manual) refresh is still
+ * running at that moment. After successive failures the interval is doubled every time, while after user actions it is
+ * shortened for a moment, so the effect of the action shows quickly. The time that the refreshes take is measured, such
+ * that the screen can show when the data it shows is older than expected (see {@link #getStaleAfter()}).
+ */
+public class AutoRefreshScheduler {
+
+    private static final int MAX_BACKOFF_DOUBLINGS = 4;
+    private static final long MAX_BACKOFF_INTERVAL = 5 * 60 * 1000; // 5 minutes
+    private static final long BOOST_INTERVAL = 2 * 1000; // 2 seconds
+    private static final long BOOST_DURATION = 10 * 1000; // 10 seconds
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresher;
+    private final Runnable tick = this::tick;
+    private long interval = 0;
+    private int inFlight = 0;
+    private int failures = 0;
+    private long boostUntil = 0;
+    private long averageLatency = -1;
+    private long lastSuccessAt = -1;
+
+    /**
+     * @param refresher The code that starts a refresh, which is expected to report back via {@link #onRefreshStarted()}
+     *                  and {@link #onRefreshCompleted(long, boolean)}
+     */
+    public AutoRefreshScheduler(Runnable refresher) {
+        this.refresher = refresher;
+    }
+
+    /**
+     * Starts the automatic refreshes, of which the first is done after the normal interval.
+     *
+     * @param interval The normal interval between the end of a refresh and the start of the next, in milliseconds
+     */
+    public synchronized void start(long interval) {
+        this.interval = interval;
+        handler.removeCallbacks(tick);
+        if (inFlight == 0) {
+            handler.postDelayed(tick, getNextDelay());
+        }
+    }
+
+    /**
+     * Stops the automatic refreshes; a refresh that is running now will still complete.
+     */
+    public synchronized void stop() {
+        interval = 0;
+        handler.removeCallbacks(tick);
+    }
+
+    /**
+     * Changes the normal interval of the running automatic refreshes, which applies from the next planned refresh on.
+     *
+     * @param interval The new normal interval, in milliseconds
+     */
+    public synchronized void setInterval(long interval) {
+        if (this.interval > 0 && interval > 0) {
+            this.interval = interval;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return interval > 0;
+    }
+
+    /**
+     * Shortens the interval for a moment, to be called after the user did something that changes what the screen shows.
+     */
+    public synchronized void boost() {
+        boostUntil = SystemClock.elapsedRealtime() + BOOST_DURATION;
+        if (interval > 0 && inFlight == 0) {
+            handler.removeCallbacks(tick);
+            handler.postDelayed(tick, getNextDelay());
+        }
+    }
+
+    /**
+     * Registers that a refresh started, which may or may not have been started by this scheduler. Multiple refreshes may
+     * be running at the same time, such as a manual refresh next to an automatic one.
+     *
+     * @return The moment the refresh started, to pass on to {@link #onRefreshCompleted(long, boolean)}
+     */
+    public synchronized long onRefreshStarted() {
+        inFlight++;
+        handler.removeCallbacks(tick);
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Registers that a refresh completed; once no other refresh is running, this plans the next automatic refresh.
+     *
+     * @param startedAt The moment the refresh started, as returned by {@link #onRefreshStarted()}
+     * @param success   Whether the refresh was successful; if not, the next refresh is delayed further
+     */
+    public synchronized void onRefreshCompleted(long startedAt, boolean success) {
+        if (inFlight == 0) {
+            return;
+        }
+        inFlight--;
+        if (success) {
+            failures = 0;
+            long latency = SystemClock.elapsedRealtime() - startedAt;
+            averageLatency = averageLatency < 0 ? latency : (averageLatency * 3 + latency) / 4;
+            lastSuccessAt = System.currentTimeMillis();
+        } else {
+            failures++;
+        }
+        if (interval > 0 && inFlight == 0) {
+            handler.removeCallbacks(tick);
+            handler.postDelayed(tick, getNextDelay());
+        }
+    }
+
+    /**
+     * Returns how long after the last successful refresh the shown data is older than expected, which is when the next
+     * automatic refresh should have completed already, given the (moving) average time that recent refreshes took.
+     *
+     * @return The time in milliseconds, or -1 if not refreshing automatically, so the data is never considered stale
+     */
+    public synchronized long getStaleAfter() {
+        if (interval <= 0) {
+            return -1;
+        }
+        return interval + Math.max(interval, averageLatency * 2);
+    }
+
+    /**
+     * Returns when the last refresh completed successfully, to tell how stale the shown data may be.
+     *
+     * @return The time in milliseconds since the epoch, or -1 if no refresh completed successfully yet
+     */
+    public synchronized long getLastSuccessAt() {
+        return lastSuccessAt;
+    }
+
+    private long getNextDelay() {
+        if (failures > 0) {
+            return Math.max(interval, Math.min(interval << Math.min(failures, MAX_BACKOFF_DOUBLINGS), MAX_BACKOFF_INTERVAL));
+        }
+        if (SystemClock.elapsedRealtime() < boostUntil) {
+            return Math.min(interval, BOOST_INTERVAL);
+        }
+        return interval;
+    }
+
+    private void tick() {
+        synchronized (this) {
+            if (interval <= 0 || inFlight > 0) {
+                // Stopped, or another refresh is still running, which will plan the next tick when it completes
+                return;
+            }
+        }
+        refresher.run();
+    }
+
+}
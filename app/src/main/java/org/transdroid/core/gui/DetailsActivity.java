@@ -377,11 +377,10 @@ public class DetailsActivity extends AppCompatActivity implements TorrentTasksEx
     @UiThread
     protected void onCommunicationError(DaemonTaskFailureResult result, boolean isCritical) {
         log.i(this, result.getException().toString());
-        String error = getString(LocalTorrent.getResourceForDaemonException(result.getException()));
+        String error = LocalTorrent.getMessageForDaemonException(getResources(), result.getException());
         if (fragmentDetails.isResumed())
             fragmentDetails.updateIsLoading(false, isCritical ? error : null);
-        SnackbarManager.show(Snackbar.with(this).text(getString(LocalTorrent.getResourceForDaemonException(result.getException())))
-                .colorResource(R.color.red));
+        SnackbarManager.show(Snackbar.with(this).text(error).colorResource(R.color.red));
     }
 
     @UiThread
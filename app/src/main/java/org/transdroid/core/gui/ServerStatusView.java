@@ -29,11 +29,9 @@ import org.androidannotations.annotations.ViewById;
 import org.transdroid.R;
 import org.transdroid.core.gui.navigation.SetTransferRatesDialog;
 import org.transdroid.core.gui.navigation.SetTransferRatesDialog.OnRatesPickedListener;
-import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentsAggregate;
 import org.transdroid.daemon.util.FileSizeConverter;
 
-import java.util.List;
-
 @EViewGroup(R.layout.actionbar_serverstatus)
 public class ServerStatusView extends RelativeLayout implements OnRatesPickedListener {
 
@@ -57,13 +55,12 @@ public class ServerStatusView extends RelativeLayout implements OnRatesPickedLis
     /**
      * Updates the statistics as shown in the action bar through this server status view.
      *
-     * @param torrents                 The most recently received list of torrents
-     * @param dormantAsInactive        Whether to treat dormant (0KB/s) torrent as inactive state torrents
+     * @param aggregate                The statistics over the most recently received list of torrents
      * @param supportsSetTransferRates Whether the connected torrent client supports setting of max transfer speeds
      */
-    public void updateStatus(List<Torrent> torrents, boolean dormantAsInactive, boolean supportsSetTransferRates) {
+    public void updateStatus(TorrentsAggregate aggregate, boolean supportsSetTransferRates) {
 
-        if (torrents == null) {
+        if (aggregate == null) {
             downcountText.setText(null);
             upcountText.setText(null);
             downspeedText.setText(null);
@@ -74,20 +71,11 @@ public class ServerStatusView extends RelativeLayout implements OnRatesPickedLis
             return;
         }
 
-        int downcount = 0, upcount = 0, downspeed = 0, upspeed = 0;
-        for (Torrent torrent : torrents) {
-
-            // Downloading torrents count towards downloads and uploads, seeding torrents towards uploads
-            if (torrent.isDownloading(dormantAsInactive)) {
-                downcount++;
-                upcount++;
-            } else if (torrent.isSeeding(dormantAsInactive)) {
-                upcount++;
-            }
-            downspeed += torrent.getRateDownload();
-            upspeed += torrent.getRateUpload();
-
-        }
+        // Downloading torrents count towards downloads and uploads, seeding torrents towards uploads
+        int downcount = aggregate.getDownloadingCount();
+        int upcount = aggregate.getActiveCount();
+        long downspeed = aggregate.getRateDownload();
+        long upspeed = aggregate.getRateUpload();
 
         downcountText.setText(Integer.toString(downcount));
         upcountText.setText(Integer.toString(upcount));
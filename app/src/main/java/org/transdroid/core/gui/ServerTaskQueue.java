@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui;
+
+import android.text.TextUtils;
+
+import org.androidannotations.api.BackgroundExecutor;
+import org.transdroid.daemon.DaemonSettings;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Executes the tasks of a screen on the server it is connected to, in the background. Pending tasks are started in
+ * order of their kind: user actions first, then the details the user asked for, then the (automatic) refreshes. One of
+ * the tasks that may run on the server at the same time (see {@link DaemonSettings#getMaxConnections()}) is always kept
+ * free for user actions, so these start directly, even when slow reads are running. A read that is already pending with the same key
+ * is not queued twice, and all pending tasks are dropped when the screen connects to another server.
+ */
+public class ServerTaskQueue {
+
+    private final PriorityQueue<Job> pending = new PriorityQueue<>();
+    private String connectionId = null;
+    private int maxRunning = 2;
+    private long sequence = 0;
+    private int running = 0;
+    private int runningReads = 0;
+
+    /**
+     * Sets the server that tasks are executed on from now on; if this is another server than before, the tasks that
+     * were not started yet are dropped. Tasks that are running now will complete, so their results should still be
+     * checked to be for the current server.
+     *
+     * @param settings The settings of the server that is connected to now
+     */
+    public synchronized void setConnection(DaemonSettings settings) {
+        String connectionId = settings.getIdString();
+        maxRunning = Math.max(2, settings.getMaxConnections());
+        if (!TextUtils.equals(this.connectionId, connectionId)) {
+            this.connectionId = connectionId;
+            pending.clear();
+        }
+    }
+
+    /**
+     * Queues a task to be executed in the background on the current server.
+     *
+     * @param kind The kind of task, which determines when it is started
+     * @param key  A key that identifies what a read retrieves, such that it is not queued twice, or null to always
+     *             queue the task
+     * @param task The code that executes the task
+     * @return True if the task was queued, false if the same read was already pending
+     */
+    public synchronized boolean submit(Kind kind, String key, Runnable task) {
+        if (key != null) {
+            for (Job job : pending) {
+                if (key.equals(job.key)) {
+                    return false;
+                }
+            }
+        }
+        pending.add(new Job(kind, key, connectionId, sequence++, task));
+        startPending();
+        return true;
+    }
+
+    /**
+     * Drops the pending tasks of some kind, such as the refreshes when the screen is no longer visible.
+     */
+    public synchronized void cancel(Kind kind) {
+        for (Iterator<Job> jobs = pending.iterator(); jobs.hasNext(); ) {
+            if (jobs.next().kind == kind) {
+                jobs.remove();
+            }
+        }
+    }
+
+    private void startPending() {
+        while (!pending.isEmpty() && running < maxRunning) {
+            final Job next = pending.peek();
+            boolean isRead = next.kind != Kind.UserAction;
+            if (isRead && runningReads >= maxRunning - 1) {
+                // Keep a slot free for user actions; since these would be at the head of the queue, nothing can start
+                return;
+            }
+            pending.poll();
+            running++;
+            if (isRead) {
+                runningReads++;
+            }
+            BackgroundExecutor.execute(() -> run(next));
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            boolean current;
+            synchronized (this) {
+                current = TextUtils.equals(job.connectionId, connectionId);
+            }
+            if (current) {
+                job.task.run();
+            }
+        } finally {
+            synchronized (this) {
+                running--;
+                if (job.kind != Kind.UserAction) {
+                    runningReads--;
+                }
+                startPending();
+            }
+        }
+    }
+
+    /**
+     * The kinds of tasks, in order of importance.
+     */
+    public enum Kind {
+        /**
+         * Changes the user asked for, such as pausing or removing a torrent
+         */
+        UserAction,
+        /**
+         * Reads of details the user asked for, such as the files of a torrent
+         */
+        Details,
+        /**
+         * Reads to refresh the screen, such as of the torrents list
+         */
+        Polling
+    }
+
+    private static class Job implements Comparable<Job> {
+
+        private final Kind kind;
+        private final String key;
+        private final String connectionId;
+        private final long sequence;
+        private final Runnable task;
+
+        Job(Kind kind, String key, String connectionId, long sequence, Runnable task) {
+            this.kind = kind;
+            this.key = key;
+            this.connectionId = connectionId;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (kind != other.kind) {
+                return kind.compareTo(other.kind);
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+    }
+
+}
@@ -16,14 +16,13 @@
  */
 package org.transdroid.core.gui;
 
-import android.annotation.TargetApi;
 import android.app.SearchManager;
 import android.content.ContentResolver;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -61,16 +60,20 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.transdroid.R;
+import org.transdroid.core.app.cache.SnapshotCache;
+import org.transdroid.core.app.cache.TorrentsSnapshot;
 import org.transdroid.core.app.search.SearchHelper_;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.app.settings.SettingsUtils;
 import org.transdroid.core.app.settings.SystemSettings;
 import org.transdroid.core.app.settings.WebsearchSetting;
+import org.transdroid.core.gui.ServerTaskQueue.Kind;
 import org.transdroid.core.gui.lists.LocalTorrent;
 import org.transdroid.core.gui.lists.SimpleListItem;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.log.LogUncaughtExceptionHandler;
+import org.transdroid.core.gui.log.StartupTrace;
 import org.transdroid.core.gui.navigation.FilterListAdapter;
 import org.transdroid.core.gui.navigation.FilterListAdapter_;
 import org.transdroid.core.gui.navigation.Label;
@@ -84,16 +87,20 @@ import org.transdroid.core.gui.search.UrlEntryDialog;
 import org.transdroid.core.gui.settings.MainSettingsActivity_;
 import org.transdroid.core.service.AppUpdateJob;
 import org.transdroid.core.service.ConnectivityHelper;
+import org.transdroid.core.service.LocalAddressProbe;
 import org.transdroid.core.service.RssCheckerJob;
 import org.transdroid.core.service.ServerCheckerJob;
 import org.transdroid.core.widget.ListWidgetProvider;
+import org.transdroid.core.widget.WidgetDataCache;
 import org.transdroid.daemon.Daemon;
 import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.IDaemonAdapter;
 import org.transdroid.daemon.Priority;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentDetails;
 import org.transdroid.daemon.TorrentFile;
+import org.transdroid.daemon.TorrentsAggregate;
 import org.transdroid.daemon.TorrentsSortBy;
 import org.transdroid.daemon.task.AddByFileTask;
 import org.transdroid.daemon.task.AddByMagnetUrlTask;
@@ -123,6 +130,7 @@ import org.transdroid.daemon.task.StartTask;
 import org.transdroid.daemon.task.StopTask;
 import org.transdroid.daemon.task.ToggleFirstLastPieceDownloadTask;
 import org.transdroid.daemon.task.ToggleSequentialDownloadTask;
+import org.transdroid.daemon.util.CircuitBreaker;
 import org.transdroid.daemon.util.HttpHelper;
 
 import java.io.File;
@@ -161,6 +169,10 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     protected NavigationHelper navigationHelper;
     @Bean
     protected ConnectivityHelper connectivityHelper;
+    @Bean
+    protected LocalAddressProbe localAddressProbe;
+    @Bean
+    protected StartupTrace startupTrace;
     @ViewById
     protected Toolbar selectionToolbar;
     @ViewById
@@ -188,6 +200,10 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     protected ApplicationSettings applicationSettings;
     @Bean
     protected SystemSettings systemSettings;
+    @Bean
+    protected SnapshotCache snapshotCache;
+    @Bean
+    protected WidgetDataCache widgetDataCache;
     @InstanceState
     protected NavigationFilter currentFilter = null;
     @InstanceState
@@ -209,10 +225,20 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     private ServerStatusView serverStatusView;
     private ActionBarDrawerToggle drawerToggle;
     private MenuItem searchMenu = null;
-    private IDaemonAdapter currentConnection = null;
-
-    // Auto refresh task
-    private AsyncTask<Void, Void, Void> autoRefreshTask;
+    private volatile IDaemonAdapter currentConnection = null;
+    // Executes the tasks on the current server, user actions before reads and without queueing the same read twice
+    private final ServerTaskQueue taskQueue = new ServerTaskQueue();
+    private volatile ServerSetting currentServer = null;
+    private volatile boolean hasLiveTorrents = false;
+    private final TorrentsAggregate torrentsAggregate = new TorrentsAggregate();
+
+    // Auto refresh scheduler, which plans the next refresh when the previous one completed
+    private final AutoRefreshScheduler autoRefresh = new AutoRefreshScheduler(() -> {
+        refreshTorrents();
+        if (currentConnection != null && Daemon.supportsStats(currentConnection.getType())) {
+            getAdditionalStats();
+        }
+    });
 
     private String awaitingAddLocalFile;
     private String awaitingAddTitle;
@@ -256,6 +282,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
 
     @AfterViews
     protected void init() {
+        startupTrace.phase("activity");
 
         // Use custom views as action bar content, showing filter selection and current torrent counts/speeds
         serverSelectionView = ServerSelectionView_.build(this);
@@ -272,8 +299,8 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         getSupportActionBar().setDisplayShowTitleEnabled(false);
 
         // Construct the filters list, i.e. the list of servers, status types and labels
+        // NOTE The servers are added in onResume, so we don't have to read all server settings during start up twice
         navigationListAdapter = FilterListAdapter_.getInstance_(this);
-        navigationListAdapter.updateServers(applicationSettings.getAllServerSettings());
         navigationListAdapter.updateStatusTypes(StatusType.getAllStatusTypes(this));
         // Add an empty labels list (which will be updated later, but the adapter needs to be created now)
         navigationListAdapter.updateLabels(new ArrayList<>());
@@ -296,9 +323,11 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
             currentFilter = StatusType.getShowAllType(this);
         }
         filterSearch.setOnQueryTextListener(filterQueryTextChanged);
+        startupTrace.phase("navigation");
 
         // Load the default server or a server that was explicitly supplied in the starting intent
         ServerSetting defaultServer = applicationSettings.getDefaultServer();
+        startupTrace.phase("settings");
         if (defaultServer == null) {
             // No server settings yet
             return;
@@ -334,17 +363,34 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         } else {
             // Resume after instead of fully loading the torrents list; create connection and set action bar title
             ServerSetting lastUsed = applicationSettings.getLastUsedServer();
-            currentConnection = lastUsed.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
+            currentServer = lastUsed;
+            connectTo(lastUsed);
             serverSelectionView.updateCurrentServer(currentConnection);
             serverSelectionView.updateCurrentFilter(currentFilter);
         }
         firstStart = false;
+        startupTrace.phase("connection");
+
+        // Start the jobs for the background services, if needed, which is not needed to show the torrents
+        scheduleJobs();
+
+    }
 
-        // Start the jobs for the background services, if needed
+    @Background
+    protected void scheduleJobs() {
         ServerCheckerJob.schedule(getApplicationContext());
         RssCheckerJob.schedule(getApplicationContext());
         AppUpdateJob.schedule(getApplicationContext());
+    }
+
+    @Background
+    protected void loadServers() {
+        onServersLoaded(applicationSettings.getAllServerSettings());
+    }
 
+    @UiThread
+    protected void onServersLoaded(List<ServerSetting> servers) {
+        navigationListAdapter.updateServers(servers);
     }
 
     @Override
@@ -363,8 +409,8 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         // update navigation labels
         navigationListAdapter.updateLabels(lastNavigationLabels);
 
-        // Refresh server settings
-        navigationListAdapter.updateServers(applicationSettings.getAllServerSettings());
+        // Refresh server settings; the full list of servers is only used in the navigation, so load it in the background
+        loadServers();
         ServerSetting lastUsed = applicationSettings.getLastUsedServer();
 
         if (lastUsed == null) {
@@ -377,7 +423,8 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         if (currentConnection == null) {
             filterSelected(lastUsed, true);
         } else {
-            currentConnection = lastUsed.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
+            currentServer = lastUsed;
+            connectTo(lastUsed);
         }
 
         // Start auto refresh
@@ -391,48 +438,30 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         // (the details fragment is the source, so no need to update that)
         if (result != null && result.hasExtra("affected_torrent")) {
             Torrent affected = result.getParcelableExtra("affected_torrent");
-            fragmentTorrents.quickUpdateTorrent(affected, result.getBooleanExtra("torrent_removed", false));
+            boolean wasRemoved = result.getBooleanExtra("torrent_removed", false);
+            fragmentTorrents.quickUpdateTorrent(affected, wasRemoved);
+            // Only apply this single torrent to the server statistics
+            if (wasRemoved) {
+                torrentsAggregate.remove(affected);
+            } else {
+                torrentsAggregate.add(affected);
+            }
+            if (currentConnection != null) {
+                serverStatusView.updateStatus(torrentsAggregate, Daemon.supportsSetTransferRates(currentConnection.getType()));
+            }
         }
     }
 
-    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     public void startAutoRefresh() {
         // Check if already running
-        if (autoRefreshTask != null || stopRefresh || systemSettings.getRefreshIntervalMilliseconds() == 0) {
+        if (autoRefresh.isRunning() || stopRefresh || systemSettings.getRefreshIntervalMilliseconds() == 0) {
             return;
         }
-
-        autoRefreshTask = new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                while (!isCancelled()) {
-                    try {
-                        Thread.sleep(systemSettings.getRefreshIntervalMilliseconds());
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
-                    // Just in case it was cancelled during sleep
-                    if (isCancelled()) {
-                        return null;
-                    }
-
-                    refreshTorrents();
-                    if (Daemon.supportsStats(currentConnection.getType())) {
-                        getAdditionalStats();
-                    }
-                }
-                return null;
-            }
-
-        };
-        autoRefreshTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        autoRefresh.start(connectivityHelper.adjustRefreshInterval(systemSettings.getRefreshIntervalMilliseconds()));
     }
 
     public void stopAutoRefresh() {
-        if (autoRefreshTask != null) {
-            autoRefreshTask.cancel(true);
-        }
-        autoRefreshTask = null;
+        autoRefresh.stop();
     }
 
     @Override
@@ -561,7 +590,12 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
             }
 
             // Update connection to the newly selected server and refresh
-            currentConnection = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
+            currentServer = server;
+            synchronized (torrentsAggregate) {
+                connectTo(server);
+                torrentsAggregate.clear();
+            }
+            hasLiveTorrents = false;
             applicationSettings.setLastUsedServer(server);
             serverSelectionView.updateCurrentServer(currentConnection);
             if (forceNewConnection) {
@@ -577,6 +611,8 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
             }
             updateFragmentVisibility(true);
             refreshScreen();
+            // While the live list is being retrieved, show the last known torrents of this server
+            loadSnapshot(server);
             return;
 
         }
@@ -740,6 +776,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
             searchMenu.collapseActionView();
         }
         stopAutoRefresh();
+        taskQueue.cancel(Kind.Polling);
         super.onPause();
     }
 
@@ -799,6 +836,8 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     public void refreshScreen() {
         if (fragmentTorrents.isAdded())
             fragmentTorrents.updateIsLoading(true);
+        // An explicit refresh should always contact the server, even if it could not be reached just before
+        CircuitBreaker.forServer(currentConnection.getSettings()).retryNow();
         refreshTorrents();
         if (Daemon.supportsStats(currentConnection.getType())) {
             getAdditionalStats();
@@ -899,146 +938,237 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     }
 
     @Background
+    protected void loadSnapshot(ServerSetting server) {
+        TorrentsSnapshot snapshot = snapshotCache.read(server);
+        if (snapshot != null) {
+            onSnapshotLoaded(server, snapshot, TorrentsAggregate.of(snapshot.getTorrents(), systemSettings.treatDormantAsInactive()));
+        }
+    }
+
     protected void refreshTorrents() {
+        taskQueue.submit(Kind.Polling, "torrents", () -> {
+            // Let the auto refresh know about this refresh, to skip or plan its next refresh accordingly
+            long startedAt = autoRefresh.onRefreshStarted();
+            boolean success = false;
+            try {
+                success = retrieveTorrents();
+            } finally {
+                autoRefresh.onRefreshCompleted(startedAt, success);
+                onRefreshCompleted();
+            }
+        });
+    }
+
+    @UiThread
+    protected void onRefreshCompleted() {
+        // Let the torrents list show when it is older than expected, such as on a slow connection
+        fragmentTorrents.updateFreshness(autoRefresh.getLastSuccessAt(), autoRefresh.getStaleAfter());
+    }
+
+    private boolean retrieveTorrents() {
+        updateConnectionEndpoint();
+        // On metered networks refresh less often
+        autoRefresh.setInterval(connectivityHelper.adjustRefreshInterval(systemSettings.getRefreshIntervalMilliseconds()));
+        ServerSetting startServer = currentServer;
         String startConnectionId = currentConnection.getSettings().getIdString();
         DaemonTaskResult result = RetrieveTask.create(currentConnection).execute(log);
-        if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
-            // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
-        }
         if (result instanceof RetrieveTaskSuccessResult) {
-            onTorrentsRetrieved(((RetrieveTaskSuccessResult) result).getTorrents(), ((RetrieveTaskSuccessResult) result).getLabels());
+            List<Torrent> torrents = ((RetrieveTaskSuccessResult) result).getTorrents();
+            List<org.transdroid.daemon.Label> labels = ((RetrieveTaskSuccessResult) result).getLabels();
+            // Walk the new list once (off the UI thread) to update all counts and totals, but only if the user did not
+            // change the server during the command execution, which also clears the totals (while holding this lock)
+            synchronized (torrentsAggregate) {
+                if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+                    return true;
+                }
+                torrentsAggregate.update(torrents, systemSettings.treatDormantAsInactive());
+            }
+            hasLiveTorrents = true;
+            onTorrentsRetrieved(torrents, labels);
+            // Remember these torrents to show them directly on the next start, and share them with the widgets
+            if (startServer != null) {
+                snapshotCache.write(startServer, torrents, labels);
+                widgetDataCache.put(startServer, torrents);
+            }
+            return true;
+        } else if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+            // During the command execution the user changed the server, so we are no longer interested in the result
+            return true;
         } else {
             onCommunicationError((DaemonTaskFailureResult) result, true);
+            return false;
         }
     }
 
-    @Background
-    public void refreshTorrentDetails(Torrent torrent) {
-        if (!Daemon.supportsFineDetails(currentConnection.getType())) {
+    /**
+     * Creates the connection to a server; requests that were still pending for another server are dropped.
+     */
+    private void connectTo(ServerSetting server) {
+        currentConnection = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
+        taskQueue.setConnection(currentConnection.getSettings());
+    }
+
+    /**
+     * Switches to the local or remote address of the current server if, since the connection was created, it was found
+     * that the other address should be used on the current network. The switch itself is made on the UI thread, where
+     * all other connection changes are made, so it applies from the next request on.
+     */
+    private void updateConnectionEndpoint() {
+        ServerSetting server = currentServer;
+        if (server == null || TextUtils.isEmpty(server.getLocalAddress())) {
             return;
         }
-        String startConnectionId = currentConnection.getSettings().getIdString();
-        DaemonTaskResult result = GetTorrentDetailsTask.create(currentConnection, torrent).execute(log);
-        if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
-            // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
+        Boolean useLocal = localAddressProbe.getKnownChoice(server);
+        if (useLocal != null && useLocal != isConnectedLocal(server)) {
+            switchConnectionEndpoint(server, useLocal);
         }
-        if (result instanceof GetTorrentDetailsTaskSuccessResult) {
-            onTorrentDetailsRetrieved(torrent, ((GetTorrentDetailsTaskSuccessResult) result).getTorrentDetails());
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
+    }
+
+    @UiThread
+    protected void switchConnectionEndpoint(ServerSetting server, boolean useLocal) {
+        // Only switch if the user did not select another server and no earlier refresh switched already in the meantime
+        if (server.equals(currentServer) && useLocal != isConnectedLocal(server)) {
+            connectTo(server);
         }
     }
 
-    @Background
+    private boolean isConnectedLocal(ServerSetting server) {
+        DaemonSettings connected = currentConnection.getSettings();
+        return server.getLocalAddress().equals(connected.getAddress()) && server.getLocalPort() == connected.getPort();
+    }
+
+    public void refreshTorrentDetails(Torrent torrent) {
+        taskQueue.submit(Kind.Details, "details|" + torrent.getUniqueID(), () -> {
+            if (!Daemon.supportsFineDetails(currentConnection.getType())) {
+                return;
+            }
+            String startConnectionId = currentConnection.getSettings().getIdString();
+            DaemonTaskResult result = GetTorrentDetailsTask.create(currentConnection, torrent).execute(log);
+            if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+                // During the command execution the user changed the server, so we are no longer interested in the result
+                return;
+            }
+            if (result instanceof GetTorrentDetailsTaskSuccessResult) {
+                onTorrentDetailsRetrieved(torrent, ((GetTorrentDetailsTaskSuccessResult) result).getTorrentDetails());
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
+    }
+
     public void refreshTorrentFiles(Torrent torrent) {
-        if (!Daemon.supportsFileListing(currentConnection.getType())) {
-            return;
-        }
-        String startConnectionId = currentConnection.getSettings().getIdString();
-        DaemonTaskResult result = GetFileListTask.create(currentConnection, torrent).execute(log);
-        if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
-            // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
-        }
-        if (result instanceof GetFileListTaskSuccessResult) {
-            onTorrentFilesRetrieved(torrent, ((GetFileListTaskSuccessResult) result).getFiles());
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.Details, "files|" + torrent.getUniqueID(), () -> {
+            if (!Daemon.supportsFileListing(currentConnection.getType())) {
+                return;
+            }
+            String startConnectionId = currentConnection.getSettings().getIdString();
+            DaemonTaskResult result = GetFileListTask.create(currentConnection, torrent).execute(log);
+            if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+                // During the command execution the user changed the server, so we are no longer interested in the result
+                return;
+            }
+            if (result instanceof GetFileListTaskSuccessResult) {
+                onTorrentFilesRetrieved(torrent, ((GetFileListTaskSuccessResult) result).getFiles());
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     protected void getAdditionalStats() {
-        String startConnectionId = currentConnection.getSettings().getIdString();
-        DaemonTaskResult result = GetStatsTask.create(currentConnection).execute(log);
-        if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
-            // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
-        }
-        if (result instanceof GetStatsTaskSuccessResult) {
-            onTurtleModeRetrieved(((GetStatsTaskSuccessResult) result).isAlternativeModeEnabled());
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.Polling, "stats", () -> {
+            String startConnectionId = currentConnection.getSettings().getIdString();
+            DaemonTaskResult result = GetStatsTask.create(currentConnection).execute(log);
+            if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+                // During the command execution the user changed the server, so we are no longer interested in the result
+                return;
+            }
+            if (result instanceof GetStatsTaskSuccessResult) {
+                onTurtleModeRetrieved(((GetStatsTaskSuccessResult) result).isAlternativeModeEnabled());
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     protected void updateTurtleMode(boolean enable) {
-        String startConnectionId = currentConnection.getSettings().getIdString();
-        DaemonTaskResult result = SetAlternativeModeTask.create(currentConnection, enable).execute(log);
-        if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
-            // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
-        }
-        if (result instanceof DaemonTaskSuccessResult) {
-            // Success; no need to retrieve it again - just update the visual indicator
-            onTurtleModeRetrieved(enable);
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            String startConnectionId = currentConnection.getSettings().getIdString();
+            DaemonTaskResult result = SetAlternativeModeTask.create(currentConnection, enable).execute(log);
+            if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
+                // During the command execution the user changed the server, so we are no longer interested in the result
+                return;
+            }
+            if (result instanceof DaemonTaskSuccessResult) {
+                // Success; no need to retrieve it again - just update the visual indicator
+                onTurtleModeRetrieved(enable);
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     public void addTorrentByUrl(String url, String title) {
-        DaemonTaskResult result = AddByUrlTask.create(currentConnection, url, title).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
-            refreshTorrents();
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = AddByUrlTask.create(currentConnection, url, title).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
+                refreshTorrents();
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
-    public void addTorrentByMagnetUrl(String url, String title) {
-
-        // Since v39 Chrome sends application/x-www-form-urlencoded magnet links and most torrent clients do not understand those, so decode first
-        try {
-            url = URLDecoder.decode(url, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // Ignore: UTF-8 is always available on Android devices
-        } catch (IllegalArgumentException e) {
-            // Illegal character or escape sequence; fail task to show error
-            onCommunicationError(new DaemonTaskFailureResult(AddByMagnetUrlTask.create(currentConnection, url),
-                    new DaemonException(DaemonException.ExceptionType.MalformedUri, "Invalid characters in magnet uri")), false);
-            return;
-        }
-
-        AddByMagnetUrlTask addByMagnetUrlTask = AddByMagnetUrlTask.create(currentConnection, url);
-        if (!Daemon.supportsAddByMagnetUrl(currentConnection.getType())) {
-            // No support for magnet links: forcefully let the task fail to report the error
-            onCommunicationError(new DaemonTaskFailureResult(addByMagnetUrlTask, new DaemonException(DaemonException.ExceptionType.MethodUnsupported,
-                    currentConnection.getType().name() + " does not support magnet links")), false);
-            return;
-        }
+    public void addTorrentByMagnetUrl(String magnetUrl, String title) {
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            // Since v39 Chrome sends application/x-www-form-urlencoded magnet links and most torrent clients do not understand those, so decode first
+            String url = magnetUrl;
+            try {
+                url = URLDecoder.decode(magnetUrl, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // Ignore: UTF-8 is always available on Android devices
+            } catch (IllegalArgumentException e) {
+                // Illegal character or escape sequence; fail task to show error
+                onCommunicationError(new DaemonTaskFailureResult(AddByMagnetUrlTask.create(currentConnection, url),
+                        new DaemonException(DaemonException.ExceptionType.MalformedUri, "Invalid characters in magnet uri")), false);
+                return;
+            }
 
-        DaemonTaskResult result = addByMagnetUrlTask.execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
-            refreshTorrents();
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+            AddByMagnetUrlTask addByMagnetUrlTask = AddByMagnetUrlTask.create(currentConnection, url);
+            if (!Daemon.supportsAddByMagnetUrl(currentConnection.getType())) {
+                // No support for magnet links: forcefully let the task fail to report the error
+                onCommunicationError(new DaemonTaskFailureResult(addByMagnetUrlTask, new DaemonException(DaemonException.ExceptionType.MethodUnsupported,
+                        currentConnection.getType().name() + " does not support magnet links")), false);
+                return;
+            }
 
+            DaemonTaskResult result = addByMagnetUrlTask.execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
+                refreshTorrents();
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     protected void addTorrentByFile(String localFile, String title) {
-        if (!navigationHelper.checkTorrentReadPermission(this)) {
-            // No read permission yet (which we get the result of in onRequestPermissionsResult)
-            awaitingAddLocalFile = localFile;
-            awaitingAddTitle = title;
-            return;
-        }
-        DaemonTaskResult result = AddByFileTask.create(currentConnection, localFile).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
-            refreshTorrents();
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            if (!navigationHelper.checkTorrentReadPermission(this)) {
+                // No read permission yet (which we get the result of in onRequestPermissionsResult)
+                awaitingAddLocalFile = localFile;
+                awaitingAddTitle = title;
+                return;
+            }
+            DaemonTaskResult result = AddByFileTask.create(currentConnection, localFile).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_added, title));
+                refreshTorrents();
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
     private void addTorrentFromDownloads(Uri contentUri, String title) {
@@ -1135,161 +1265,175 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         }
     }
 
-    @Background
     @Override
     public void resumeTorrent(Torrent torrent) {
-        torrent.mimicResume();
-        DaemonTaskResult result = ResumeTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_resumed, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicResume();
+            DaemonTaskResult result = ResumeTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_resumed, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void pauseTorrent(Torrent torrent) {
-        torrent.mimicPause();
-        DaemonTaskResult result = PauseTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_paused, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicPause();
+            DaemonTaskResult result = PauseTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_paused, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void startTorrent(Torrent torrent, boolean forced) {
-        torrent.mimicStart();
-        DaemonTaskResult result = StartTask.create(currentConnection, torrent, forced).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_started, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicStart();
+            DaemonTaskResult result = StartTask.create(currentConnection, torrent, forced).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_started, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void stopTorrent(Torrent torrent) {
-        torrent.mimicStop();
-        DaemonTaskResult result = StopTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_stopped, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicStop();
+            DaemonTaskResult result = StopTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_stopped, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void removeTorrent(Torrent torrent, boolean withData) {
-        DaemonTaskResult result = RemoveTask.create(currentConnection, torrent, withData).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result,
-                    getString(withData ? R.string.result_removed_with_data : R.string.result_removed, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = RemoveTask.create(currentConnection, torrent, withData).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result,
+                        getString(withData ? R.string.result_removed_with_data : R.string.result_removed, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void updateLabel(Torrent torrent, String newLabel) {
-        torrent.mimicNewLabel(newLabel);
-        DaemonTaskResult result = SetLabelTask.create(currentConnection, torrent, newLabel == null ? "" : newLabel).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result,
-                    newLabel == null ? getString(R.string.result_labelremoved) : getString(R.string.result_labelset, newLabel));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicNewLabel(newLabel);
+            DaemonTaskResult result = SetLabelTask.create(currentConnection, torrent, newLabel == null ? "" : newLabel).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result,
+                        newLabel == null ? getString(R.string.result_labelremoved) : getString(R.string.result_labelset, newLabel));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void toggleSequentialDownload(Torrent torrent, boolean sequentialState) {
-        torrent.mimicSequentialDownload(sequentialState);
-        DaemonTaskResult result = ToggleSequentialDownloadTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_togglesequential));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicSequentialDownload(sequentialState);
+            DaemonTaskResult result = ToggleSequentialDownloadTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_togglesequential));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void toggleFirstLastPieceDownload(Torrent torrent, boolean firstLastPieceState) {
-        torrent.mimicFirstLastPieceDownload(firstLastPieceState);
-        DaemonTaskResult result = ToggleFirstLastPieceDownloadTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.action_toggle_firstlastpiece));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicFirstLastPieceDownload(firstLastPieceState);
+            DaemonTaskResult result = ToggleFirstLastPieceDownloadTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.action_toggle_firstlastpiece));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void forceRecheckTorrent(Torrent torrent) {
-        torrent.mimicCheckingStatus();
-        DaemonTaskResult result = ForceRecheckTask.create(currentConnection, torrent).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_recheckedstarted, torrent.getName()));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            torrent.mimicCheckingStatus();
+            DaemonTaskResult result = ForceRecheckTask.create(currentConnection, torrent).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_recheckedstarted, torrent.getName()));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void updateTrackers(Torrent torrent, List<String> newTrackers) {
-        DaemonTaskResult result = SetTrackersTask.create(currentConnection, torrent, newTrackers).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_trackersupdated));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = SetTrackersTask.create(currentConnection, torrent, newTrackers).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_trackersupdated));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void updateLocation(Torrent torrent, String newLocation) {
-        DaemonTaskResult result = SetDownloadLocationTask.create(currentConnection, torrent, newLocation).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_locationset, newLocation));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = SetDownloadLocationTask.create(currentConnection, torrent, newLocation).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_locationset, newLocation));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     @Override
     public void updatePriority(Torrent torrent, List<TorrentFile> files, Priority priority) {
-        DaemonTaskResult result = SetFilePriorityTask.create(currentConnection, torrent, priority, new ArrayList<>(files)).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_priotitiesset));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = SetFilePriorityTask.create(currentConnection, torrent, priority, new ArrayList<>(files)).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_priotitiesset));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
-    @Background
     public void updateMaxSpeeds(Integer maxDownloadSpeed, Integer maxUploadSpeed) {
-        DaemonTaskResult result = SetTransferRatesTask.create(currentConnection, maxUploadSpeed, maxDownloadSpeed).execute(log);
-        if (result instanceof DaemonTaskSuccessResult) {
-            onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_maxspeedsset));
-        } else {
-            onCommunicationError((DaemonTaskFailureResult) result, false);
-        }
+        taskQueue.submit(Kind.UserAction, null, () -> {
+            DaemonTaskResult result = SetTransferRatesTask.create(currentConnection, maxUploadSpeed, maxDownloadSpeed).execute(log);
+            if (result instanceof DaemonTaskSuccessResult) {
+                onTaskSucceeded((DaemonTaskSuccessResult) result, getString(R.string.result_maxspeedsset));
+            } else {
+                onCommunicationError((DaemonTaskFailureResult) result, false);
+            }
+        });
     }
 
     @UiThread
     protected void onTaskSucceeded(DaemonTaskSuccessResult result, String successMessage) {
-        // Refresh the screen as well
+        // Refresh the screen as well, and a few more times shortly to show the effect of this action
+        autoRefresh.boost();
         refreshScreen();
         SnackbarManager.show(Snackbar.with(this).text(successMessage));
     }
@@ -1297,7 +1441,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     @UiThread
     protected void onCommunicationError(DaemonTaskFailureResult result, boolean isCritical) {
         log.i(this, result.getException().toString());
-        String error = getString(LocalTorrent.getResourceForDaemonException(result.getException()));
+        String error = LocalTorrent.getMessageForDaemonException(getResources(), result.getException());
         SnackbarManager.show(Snackbar.with(this).text(error).colorResource(R.color.red).type(SnackbarType.MULTI_LINE));
         fragmentTorrents.updateIsLoading(false);
         if (isCritical) {
@@ -1311,11 +1455,12 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     @UiThread
     protected void onTorrentsRetrieved(List<Torrent> torrents, List<org.transdroid.daemon.Label> labels) {
 
-        lastNavigationLabels = Label.convertToNavigationLabels(labels, getResources().getString(R.string.labels_unlabeled));
+        lastNavigationLabels = Label.convertToNavigationLabels(labels, getResources().getString(R.string.labels_unlabeled), torrentsAggregate);
 
         // Report the newly retrieved list of torrents to the torrents fragment
         fragmentTorrents.updateIsLoading(false);
         fragmentTorrents.updateTorrents(new ArrayList<>(torrents), lastNavigationLabels);
+        startupTrace.firstListShown("retrieval");
 
         // Update the details fragment if the currently shown torrent is in the newly retrieved list
         if (fragmentDetails != null && fragmentDetails.isResumed()) {
@@ -1345,11 +1490,24 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         }
 
         // Update the server status (counts and speeds) in the action bar
-        serverStatusView
-                .updateStatus(torrents, systemSettings.treatDormantAsInactive(), Daemon.supportsSetTransferRates(currentConnection.getType()));
+        serverStatusView.updateStatus(torrentsAggregate, Daemon.supportsSetTransferRates(currentConnection.getType()));
 
     }
 
+    @UiThread
+    protected void onSnapshotLoaded(ServerSetting server, TorrentsSnapshot snapshot, TorrentsAggregate snapshotAggregate) {
+        // Only show the stored torrents if the live list did not arrive yet and the user did not switch servers meanwhile
+        if (hasLiveTorrents || currentConnection == null || !server.equals(currentConnection.getSettings())) {
+            return;
+        }
+        lastNavigationLabels =
+                Label.convertToNavigationLabels(snapshot.getLabels(), getResources().getString(R.string.labels_unlabeled), snapshotAggregate);
+        fragmentTorrents.updateStaleTorrents(new ArrayList<>(snapshot.getTorrents()), lastNavigationLabels);
+        navigationListAdapter.updateLabels(lastNavigationLabels);
+        serverStatusView.updateStatus(snapshotAggregate, Daemon.supportsSetTransferRates(currentConnection.getType()));
+        startupTrace.firstListShown("snapshot");
+    }
+
     @UiThread
     protected void onTorrentDetailsRetrieved(Torrent torrent, TorrentDetails torrentDetails) {
         // Update the details fragment with the new fine details for the shown torrent
@@ -17,6 +17,7 @@
 package org.transdroid.core.gui;
 
 import android.content.Context;
+import android.text.format.DateUtils;
 import android.view.ActionMode;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -71,6 +72,8 @@ import java.util.Locale;
 @EFragment(R.layout.fragment_torrents)
 public class TorrentsFragment extends Fragment implements OnLabelPickedListener {
 
+    private static final long FRESHNESS_CHECK_INTERVAL = 10 * 1000;
+
     // HACK Working around #391 while hopefully we rework the UI in the future to persist the list in db or something
     protected static ArrayList<Torrent> torrents = null;
     // Local data
@@ -94,10 +97,13 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
     protected boolean hasAConnection = false;
     @InstanceState
     protected boolean isLoading = true;
+    protected boolean isStale = false;
     @InstanceState
     protected String connectionErrorMessage = null;
     @InstanceState
     protected Daemon daemonType;
+    protected long lastUpdatedAt = -1;
+    protected long staleAfter = -1;
 
     // Views
     @ViewById
@@ -112,6 +118,9 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
     protected TextView errorText;
     @ViewById
     protected ProgressBar loadingProgress;
+    @ViewById
+    protected TextView statusText;
+    private final Runnable freshnessCheck = this::updateStatusText;
     private MultiChoiceModeListener onTorrentsSelected = new MultiChoiceModeListener() {
 
         private SelectionManagerMode selectionManagerMode;
@@ -272,9 +281,73 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
 
         torrents = newTorrents;
         this.currentLabels = currentLabels;
+        updateIsStale(false);
         applyAllFilters();
     }
 
+    /**
+     * Shows a stored, stale list of torrents (such as the last known torrents at a cold start) while the live list is still being retrieved. The
+     * list stays marked as refreshing until it is replaced via {@link #updateTorrents(ArrayList, ArrayList)} or cleared.
+     *
+     * @param staleTorrents The last known list of torrents
+     */
+    public void updateStaleTorrents(ArrayList<Torrent> staleTorrents, ArrayList<Label> currentLabels) {
+        if (!isResumed()) return;
+        torrents = staleTorrents;
+        this.currentLabels = currentLabels;
+        this.isLoading = false;
+        updateIsStale(true);
+        applyAllFilters();
+    }
+
+    private void updateIsStale(boolean isStale) {
+        this.isStale = isStale;
+        if (swipeRefreshLayout != null) {
+            swipeRefreshLayout.setRefreshing(isStale);
+        }
+    }
+
+    /**
+     * Updates when the shown torrents were last retrieved, such that the user is told when they are older than expected.
+     *
+     * @param lastUpdatedAt The time in milliseconds since the epoch that the torrents were last retrieved, or -1 if never
+     * @param staleAfter    The time in milliseconds after which the torrents are older than expected, or -1 if never
+     */
+    public void updateFreshness(long lastUpdatedAt, long staleAfter) {
+        if (!isResumed()) return;
+        this.lastUpdatedAt = lastUpdatedAt;
+        this.staleAfter = staleAfter;
+        updateStatusText();
+    }
+
+    private void updateStatusText() {
+        if (statusText == null) {
+            return;
+        }
+        statusText.removeCallbacks(freshnessCheck);
+        boolean isListShown = torrentsList.getVisibility() == View.VISIBLE && lastUpdatedAt > 0 && staleAfter > 0;
+        long now = System.currentTimeMillis();
+        if (isListShown && now - lastUpdatedAt > staleAfter) {
+            statusText.setText(getString(R.string.navigation_lastupdated,
+                    DateUtils.getRelativeTimeSpanString(lastUpdatedAt, now, DateUtils.SECOND_IN_MILLIS)));
+            statusText.setVisibility(View.VISIBLE);
+        } else {
+            statusText.setVisibility(View.GONE);
+        }
+        if (isListShown && isResumed()) {
+            // Check again later, as the torrents become stale if no refresh completes in the meantime
+            statusText.postDelayed(freshnessCheck, FRESHNESS_CHECK_INTERVAL);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (statusText != null) {
+            statusText.removeCallbacks(freshnessCheck);
+        }
+    }
+
     /**
      * Just look for a specific torrent in the currently shown list (by its unique id) and update only this
      *
@@ -311,6 +384,7 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
      */
     public void clear(boolean clearError, boolean clearFilter) {
         torrents = null;
+        updateIsStale(false);
         if (clearError) {
             this.connectionErrorMessage = null;
         }
@@ -436,6 +510,7 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
             loadingProgress.setVisibility(View.GONE);
             errorText.setVisibility(View.GONE);
             nosettingsText.setVisibility(View.VISIBLE);
+            statusText.setVisibility(View.GONE);
             swipeRefreshLayout.setEnabled(false);
             clear(true, true); // Indirectly also calls updateViewVisibility()
         } else {
@@ -486,6 +561,7 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
         loadingProgress.setVisibility(!hasError && isLoading ? View.VISIBLE : View.GONE);
         emptyText.setVisibility(!hasError && !isLoading && isEmpty ? View.VISIBLE : View.GONE);
         swipeRefreshLayout.setEnabled(true);
+        updateStatusText();
     }
 
     /**
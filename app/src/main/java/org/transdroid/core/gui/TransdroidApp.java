@@ -23,14 +23,31 @@ import com.evernote.android.job.JobManager;
 
 import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EApplication;
+import org.transdroid.core.app.cache.AdapterStateStore;
+import org.transdroid.core.app.cache.AdapterStateStore_;
+import org.transdroid.core.app.cache.DataUsageStore;
+import org.transdroid.core.app.cache.DataUsageStore_;
 import org.transdroid.core.gui.log.Log;
+import org.transdroid.core.gui.log.StartupTrace;
+import org.transdroid.core.service.ConnectivityHelper_;
 import org.transdroid.core.service.ScheduledJobCreator;
+import org.transdroid.daemon.util.AuthSessions;
+import org.transdroid.daemon.util.DataUsage;
+import org.transdroid.daemon.util.KeyValueStore;
+import org.transdroid.daemon.util.ServerCapabilities;
+import org.transdroid.daemon.util.TlsSniSocketFactory;
+
+import java.io.File;
 
 @EApplication
 public class TransdroidApp extends Application {
 
     @Bean
     protected Log log;
+    @Bean
+    protected StartupTrace startupTrace;
+    private AdapterStateStore adapterStateStore;
+    private DataUsageStore dataUsageStore;
 
     @Override
     public void onCreate() {
@@ -39,6 +56,47 @@ public class TransdroidApp extends Application {
         // Configure Android-Job
         JobConfig.addLogger((priority, tag, message, t) -> log.d(tag, message));
         JobManager.create(this).addJobCreator(new ScheduledJobCreator());
+        // Allow resuming SSL sessions with servers, also after the app was restarted
+        TlsSniSocketFactory.setSessionCacheDirectory(new File(getCacheDir(), "sslsessions"));
+        // Allow adapters to reuse their server login sessions and capabilities, also after the app was restarted; like
+        // the stores below, the store is only created once an adapter uses it, so not on the way to the first list
+        KeyValueStore adapterState = new KeyValueStore() {
+            @Override
+            public String get(String key) {
+                return getAdapterStateStore().get(key);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                getAdapterStateStore().put(key, value);
+            }
+
+            @Override
+            public void remove(String key) {
+                getAdapterStateStore().remove(key);
+            }
+        };
+        AuthSessions.setStore(adapterState);
+        ServerCapabilities.setStore(adapterState);
+        // Keep track of the data received from servers, per day
+        DataUsage.setRecorder((server, feature, bytes) -> getDataUsageStore().record(server, feature, bytes));
+        // Let adapters save data when on a metered network
+        DataUsage.setNetworkCheck(() -> ConnectivityHelper_.getInstance_(this).isActiveNetworkMetered());
+        startupTrace.phase("application");
+    }
+
+    private synchronized AdapterStateStore getAdapterStateStore() {
+        if (adapterStateStore == null) {
+            adapterStateStore = AdapterStateStore_.getInstance_(this);
+        }
+        return adapterStateStore;
+    }
+
+    private synchronized DataUsageStore getDataUsageStore() {
+        if (dataUsageStore == null) {
+            dataUsageStore = DataUsageStore_.getInstance_(this);
+        }
+        return dataUsageStore;
     }
 
 }
@@ -22,6 +22,7 @@ import org.transdroid.R;
 import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentStatus;
+import org.transdroid.daemon.util.CircuitBreaker;
 import org.transdroid.daemon.util.FileSizeConverter;
 import org.transdroid.daemon.util.TimespanConverter;
 
@@ -81,6 +82,22 @@ public class LocalTorrent {
         }
     }
 
+    /**
+     * Convert a DaemonException to a translatable human-readable error message, which includes when the server will be
+     * contacted again if the task was not executed since the server could not be reached recently
+     *
+     * @param r The context resources to get the message with
+     * @param e The exception that was thrown by the server
+     * @return A message to show to the user
+     */
+    public static String getMessageForDaemonException(Resources r, DaemonException e) {
+        if (e instanceof CircuitBreaker.OpenCircuitException) {
+            long seconds = Math.max(1, (((CircuitBreaker.OpenCircuitException) e).getRetryDelay() + 999) / 1000);
+            return r.getString(R.string.error_serverunreachable, seconds);
+        }
+        return r.getString(getResourceForDaemonException(e));
+    }
+
     /**
      * Builds a string showing the upload/download seed ratio. If not downloading, it will base the ratio on the total
      * size; so if you created the torrent yourself you will have downloaded 0 bytes, but the ratio will pretend you
@@ -28,6 +28,7 @@ import org.androidannotations.ormlite.annotations.OrmLiteDao;
 import org.transdroid.R;
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.gui.navigation.NavigationHelper;
+import org.transdroid.daemon.util.TaskMetrics;
 
 import java.sql.SQLException;
 import java.util.List;
@@ -39,6 +40,8 @@ public class ErrorLogSender {
     protected Log log;
     @Bean
     protected NavigationHelper navigationHelper;
+    @Bean
+    protected StartupTrace startupTrace;
     @OrmLiteDao(helper = DatabaseHelper.class)
     protected Dao<ErrorLogEntry, Integer> errorLogDao;
 
@@ -74,6 +77,18 @@ public class ErrorLogSender {
                 body.append(errorLogEntry.getMessage());
             }
 
+            // Include the start up and request timings, to see whether the app or which servers and operations are slow
+            String startup = startupTrace.getReport();
+            if (!startup.isEmpty()) {
+                body.append("\n\nStart up statistics:\n");
+                body.append(startup);
+            }
+            String metrics = TaskMetrics.getReport();
+            if (!metrics.isEmpty()) {
+                body.append("\n\nRequest statistics:\n");
+                body.append(metrics);
+            }
+
             Intent target = new Intent(Intent.ACTION_SEND);
             target.setType("message/rfc822");
             target.putExtra(Intent.EXTRA_EMAIL, new String[]{"transdroid@2312.nl"});
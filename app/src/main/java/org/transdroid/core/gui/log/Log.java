@@ -16,18 +16,26 @@
  */
 package org.transdroid.core.gui.log;
 
+import android.content.Context;
+
+import com.j256.ormlite.android.apptools.OpenHelperManager;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.DeleteBuilder;
 
+import org.androidannotations.annotations.Background;
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.EBean.Scope;
-import org.androidannotations.ormlite.annotations.OrmLiteDao;
+import org.androidannotations.annotations.RootContext;
 import org.transdroid.BuildConfig;
 
 import java.util.Date;
 
 /**
- * Application-wide logging class that registers entries in the database (for a certain time).
+ * Application-wide logging class that registers entries in the database (for a certain time). The database is only
+ * opened when the first message is stored and then kept open for the lifetime of the process. Messages are stored in
+ * the background in the order they were logged, so logging never touches the disk on the calling (often the UI)
+ * thread; only the stack trace of a crash is stored directly (see {@link #crash(Object, String)}), as the process ends
+ * right after.
  *
  * @author Eric Kok
  */
@@ -36,8 +44,11 @@ public class Log {
 
     public static final String LOG_NAME = "Transdroid";
     private static final long MAX_LOG_AGE = 15 * 60 * 1000; // 15 minutes
-    @OrmLiteDao(helper = DatabaseHelper.class)
-    Dao<ErrorLogEntry, Integer> errorLogDao;
+    private static final long TRUNCATE_INTERVAL = 60 * 1000; // 1 minute
+    @RootContext
+    protected Context context;
+    private Dao<ErrorLogEntry, Integer> errorLogDao;
+    private long lastTruncate = 0;
 
     protected void log(Object object, int priority, String message) {
         log(object instanceof String ? (String) object : object.getClass().getSimpleName(), priority, message);
@@ -47,13 +58,30 @@ public class Log {
         if (BuildConfig.DEBUG) {
             android.util.Log.println(priority, LOG_NAME, message);
         }
+        store(new ErrorLogEntry(priority, logName, message));
+    }
+
+    @Background(serial = "log")
+    protected void store(ErrorLogEntry entry) {
+        write(entry);
+    }
+
+    private synchronized void write(ErrorLogEntry entry) {
         try {
             // Store this log message to the database
-            errorLogDao.create(new ErrorLogEntry(priority, logName, message));
-            // Truncate the error log
-            DeleteBuilder<ErrorLogEntry, Integer> db = errorLogDao.deleteBuilder();
-            db.setWhere(db.where().le(ErrorLogEntry.DATEANDTIME, new Date(new Date().getTime() - MAX_LOG_AGE)));
-            errorLogDao.delete(db.prepare());
+            if (errorLogDao == null) {
+                // The helper is never released, so the database stays open until the process ends
+                errorLogDao = OpenHelperManager.getHelper(context, DatabaseHelper.class).getDao(ErrorLogEntry.class);
+            }
+            errorLogDao.create(entry);
+            // Truncate the error log, which does not need to be exact
+            long now = System.currentTimeMillis();
+            if (now - lastTruncate > TRUNCATE_INTERVAL) {
+                lastTruncate = now;
+                DeleteBuilder<ErrorLogEntry, Integer> db = errorLogDao.deleteBuilder();
+                db.setWhere(db.where().le(ErrorLogEntry.DATEANDTIME, new Date(now - MAX_LOG_AGE)));
+                errorLogDao.delete(db.prepare());
+            }
         } catch (Exception e) {
             android.util.Log.e(LOG_NAME, "Cannot write log message to database: " + e.toString());
         }
@@ -71,4 +99,16 @@ public class Log {
         log(object, android.util.Log.ERROR, msg);
     }
 
+    /**
+     * Stores an error directly on the calling thread, rather than in the background, such as the stack trace of an
+     * uncaught exception, after which the process ends.
+     */
+    void crash(Object object, String msg) {
+        if (BuildConfig.DEBUG) {
+            android.util.Log.println(android.util.Log.ERROR, LOG_NAME, msg);
+        }
+        String logName = object instanceof String ? (String) object : object.getClass().getSimpleName();
+        write(new ErrorLogEntry(android.util.Log.ERROR, logName, msg));
+    }
+
 }
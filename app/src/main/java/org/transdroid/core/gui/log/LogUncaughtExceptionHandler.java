@@ -34,14 +34,14 @@ public class LogUncaughtExceptionHandler implements Thread.UncaughtExceptionHand
         // Write exception stack trace to the log
         String prefix = "E: ";
         Log_ log = Log_.getInstance_(context);
-        log.e(this, prefix + ex.toString());
+        log.crash(this, prefix + ex.toString());
         if (ex.getCause() != null) {
             for (StackTraceElement e : ex.getCause().getStackTrace()) {
-                log.e(this, prefix + e.toString());
+                log.crash(this, prefix + e.toString());
             }
         }
         for (StackTraceElement e : ex.getStackTrace()) {
-            log.e(this, prefix + e.toString());
+            log.crash(this, prefix + e.toString());
         }
 
         // Rely on default Android exception handling
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui.log;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.preference.PreferenceManager;
+
+import org.androidannotations.annotations.Background;
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long the phases of a cold start take, up to the moment that the first torrents list is shown. The phase
+ * durations are written to the log once that list is shown and the total time to first list is stored, so it can be
+ * tracked over app versions (see {@link #getReport()}).
+ * <p/>
+ * Only starts where the process was created to show a screen are recorded. A process that was started in the
+ * background (such as by a job, widget or broadcast) and only later opened by the user is not a cold start, so it is not
+ * recorded, and neither is any start that took unrealistically long, such as when the device was suspended meanwhile.
+ */
+@EBean(scope = Scope.Singleton)
+public class StartupTrace {
+
+    private static final String PREF_LAST = "system_startup_last";
+    private static final String PREF_AVERAGE = "system_startup_average";
+    private static final long MAX_TIME_TO_FIRST_LIST = 60 * 1000; // 1 minute
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+    private final long startedAt;
+    private final boolean startedForeground;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long lastMark;
+    private boolean completed = false;
+
+    public StartupTrace() {
+        // Include the process creation itself, where the platform tells us when this was
+        startedAt = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+        lastMark = startedAt;
+        // This bean is created in Application.onCreate, where the importance tells whether the process was started to
+        // show a screen; on old platforms only the time cap applies
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+            ActivityManager.getMyMemoryState(processInfo);
+            startedForeground = processInfo.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+        } else {
+            startedForeground = true;
+        }
+    }
+
+    /**
+     * Marks the end of a start up phase, which is recorded as the time since the end of the previous phase. Phases that
+     * are marked after the first list was already shown (i.e. no longer a cold start) are ignored.
+     *
+     * @param name A short name for the phase that just completed
+     */
+    public synchronized void phase(String name) {
+        if (completed) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        Long earlier = phases.get(name);
+        phases.put(name, (earlier == null ? 0 : earlier) + now - lastMark);
+        lastMark = now;
+    }
+
+    /**
+     * Marks that the first torrents list is now shown to the user, which ends the start up trace.
+     *
+     * @param source The source of the shown list, such as a stored snapshot or a live retrieval
+     */
+    public void firstListShown(String source) {
+        long total;
+        StringBuilder report = new StringBuilder();
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            phase(source);
+            completed = true;
+            total = lastMark - startedAt;
+            if (!startedForeground || total > MAX_TIME_TO_FIRST_LIST) {
+                // Not a cold start, so the time to first list means nothing
+                return;
+            }
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                report.append(report.length() == 0 ? "" : ", ").append(phase.getKey()).append(" ").append(phase.getValue()).append("ms");
+            }
+        }
+        store(total, "Time to first torrents list: " + total + "ms (" + report.toString() + ")");
+    }
+
+    @Background
+    protected void store(long total, String report) {
+        log.i(this, report);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long average = prefs.getLong(PREF_AVERAGE, -1);
+        average = average < 0 ? total : (average * 3 + total) / 4;
+        prefs.edit().putLong(PREF_LAST, total).putLong(PREF_AVERAGE, average).apply();
+    }
+
+    /**
+     * Returns a human-readable overview of the time from process start to the first shown torrents list, of the last
+     * cold start and the (moving) average over recent cold starts, such as to show on screen or to include in an error
+     * report.
+     *
+     * @return The start up times, or an empty string if no start up was recorded yet
+     */
+    public String getReport() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long last = prefs.getLong(PREF_LAST, -1);
+        if (last < 0) {
+            return "";
+        }
+        return "Time to first torrents list: last " + last + "ms, average " + prefs.getLong(PREF_AVERAGE, last) + "ms\n";
+    }
+
+}
@@ -22,6 +22,7 @@ import android.text.TextUtils;
 
 import org.transdroid.core.gui.lists.SimpleListItem;
 import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentsAggregate;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -58,6 +59,10 @@ public class Label implements SimpleListItem, NavigationFilter, Comparable<Label
         this(daemonLabel.getName(), daemonLabel.getCount(), false);
     }
 
+    private Label(org.transdroid.daemon.Label daemonLabel, TorrentsAggregate aggregate) {
+        this(daemonLabel.getName(), aggregate.getLabelCount(daemonLabel.getName()), false);
+    }
+
     private Label(Parcel in) {
         this.name = in.readString();
         this.count = in.readInt();
@@ -72,6 +77,20 @@ public class Label implements SimpleListItem, NavigationFilter, Comparable<Label
      * @return A label items that can be used in a filter list such as the action bar spinner
      */
     public static ArrayList<Label> convertToNavigationLabels(List<org.transdroid.daemon.Label> daemonLabels, String unnamedLabel) {
+        return convertToNavigationLabels(daemonLabels, unnamedLabel, null);
+    }
+
+    /**
+     * Converts a list of labels as retrieved from a server daemon into a list of labels that can be used in the UI as navigation filters. The
+     * torrent counts are taken from the aggregated statistics, rather than the counts as reported by the server daemon adapter.
+     *
+     * @param daemonLabels The raw list of labels as received from the server daemon adapter
+     * @param unnamedLabel The text to show for the empty label (i.e. the unnamed label)
+     * @param aggregate    The aggregated statistics over the current torrents, or null to use the daemon label counts
+     * @return A label items that can be used in a filter list such as the action bar spinner
+     */
+    public static ArrayList<Label> convertToNavigationLabels(List<org.transdroid.daemon.Label> daemonLabels, String unnamedLabel,
+                                                             TorrentsAggregate aggregate) {
         if (daemonLabels == null) {
             return null;
         }
@@ -80,13 +99,13 @@ public class Label implements SimpleListItem, NavigationFilter, Comparable<Label
 
         for (org.transdroid.daemon.Label label : daemonLabels) {
             if (label != null && !TextUtils.isEmpty(label.getName())) {
-                localLabels.add(new Label(label));
+                localLabels.add(aggregate == null ? new Label(label) : new Label(label, aggregate));
             }
         }
         Collections.sort(localLabels);
 
         // force unlabelled to be at the top
-        localLabels.add(0, new Label(unnamedLabel, -1, true));
+        localLabels.add(0, new Label(unnamedLabel, aggregate == null ? -1 : aggregate.getLabelCount(null), true));
 
         return localLabels;
     }
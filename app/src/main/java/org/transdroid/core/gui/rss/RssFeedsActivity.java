@@ -46,6 +46,8 @@ import org.androidannotations.annotations.OptionsItem;
 import org.androidannotations.annotations.UiThread;
 import org.androidannotations.annotations.ViewById;
 import org.transdroid.R;
+import org.transdroid.core.app.cache.RssItemStore;
+import org.transdroid.core.app.cache.StoredRssfeed;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.RssfeedSetting;
 import org.transdroid.core.app.settings.ServerSetting;
@@ -66,6 +68,7 @@ import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.IDaemonAdapter;
 import org.transdroid.daemon.task.DaemonTaskSuccessResult;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -77,11 +80,14 @@ public class RssFeedsActivity extends AppCompatActivity {
 
     protected static final int RSS_FEEDS_LOCAL = 0;
     protected static final int RSS_FEEDS_REMOTE = 1;
+    private static final long MIN_RETRIEVE_INTERVAL = 10 * 60 * 1000; // 10 minutes
     // Settings and local data
     @Bean
     protected Log log;
     @Bean
     protected ApplicationSettings applicationSettings;
+    @Bean
+    protected RssItemStore rssItemStore;
     @FragmentById(R.id.rssfeeds_fragment)
     protected RssFeedsFragment fragmentLocalFeeds;
     @FragmentById(R.id.rssitems_fragment)
@@ -157,17 +163,22 @@ public class RssFeedsActivity extends AppCompatActivity {
     }
 
     /**
-     * Reload the RSS feed settings and start loading all the feeds. To be called from contained fragments.
+     * Reload the RSS feed settings and start loading all the feeds. To be called from contained fragments. Feeds are
+     * shown from the local item store first and only retrieved again if these were not retrieved recently.
+     *
+     * @param forceRetrieve True if all feeds should be retrieved from the network, even if they were stored only recently
      */
-    public void refreshFeeds() {
+    public void refreshFeeds(boolean forceRetrieve) {
         List<RssfeedLoader> loaders = new ArrayList<>();
         // For each RSS feed setting the user created, start a loader that retrieved the RSS feed (via a background
         // thread) and, on success, determines the new items in the feed
-        for (RssfeedSetting setting : applicationSettings.getRssfeedSettings()) {
+        List<RssfeedSetting> settings = applicationSettings.getRssfeedSettings();
+        for (RssfeedSetting setting : settings) {
             RssfeedLoader loader = new RssfeedLoader(setting);
             loaders.add(loader);
-            loadRssfeed(loader);
+            loadRssfeed(loader, forceRetrieve);
         }
+        removeUnusedRssfeeds(settings);
 
         fragmentLocalFeeds.update(loaders);
     }
@@ -178,20 +189,50 @@ public class RssFeedsActivity extends AppCompatActivity {
      * @param loader The RSS feed loader for which to retrieve the contents
      */
     @Background
-    protected void loadRssfeed(RssfeedLoader loader) {
+    protected void loadRssfeed(RssfeedLoader loader, boolean forceRetrieve) {
+        RssfeedSetting setting = loader.getSetting();
+        StoredRssfeed stored = rssItemStore.read(setting);
+        if (stored != null) {
+            // Show the stored items directly, while the feed is refreshed
+            handleRssfeedResult(loader, stored.getChannel(), false);
+            if (!forceRetrieve && System.currentTimeMillis() - stored.getRetrievedAt() < MIN_RETRIEVE_INTERVAL) {
+                return;
+            }
+        }
         try {
-            // Load and parse the feed
-            RssParser parser =
-                    new RssParser(loader.getSetting().getUrl(), loader.getSetting().getExcludeFilter(), loader.getSetting().getIncludeFilter());
+            // Load and parse the feed, which may be answered with just a 'not modified' if we stored it before
+            RssParser parser = new RssParser(setting.getUrl(), setting.getExcludeFilter(), setting.getIncludeFilter());
+            if (stored != null) {
+                parser.setConditional(stored.getEtag(), stored.getLastModified());
+            }
             parser.parse();
-            handleRssfeedResult(loader, parser.getChannel(), false);
+            if (parser.isNotModified() && stored != null) {
+                rssItemStore.markRetrieved(setting);
+                return;
+            }
+            if (parser.getChannel() == null) {
+                throw new IOException("Not an RSS feed");
+            }
+            handleRssfeedResult(loader, rssItemStore.merge(setting, parser.getChannel(), parser.getEtag(), parser.getLastModified()), false);
         } catch (Exception e) {
-            // Catch any error that may occurred and register this failure
-            handleRssfeedResult(loader, null, true);
-            log.i(this, "RSS feed " + loader.getSetting().getUrl() + " error: " + e.toString());
+            // Catch any error that may occurred and register this failure, unless we can show the stored items instead
+            if (stored == null) {
+                handleRssfeedResult(loader, null, true);
+            }
+            log.i(this, "RSS feed " + setting.getUrl() + " error: " + e.toString());
         }
     }
 
+    @Background
+    protected void removeUnusedRssfeeds(List<RssfeedSetting> settings) {
+        rssItemStore.removeUnused(settings);
+    }
+
+    @Background
+    protected void markRssfeedSeen(RssfeedSetting setting) {
+        rssItemStore.markSeen(setting);
+    }
+
     /**
      * Stores the retrieved RSS feed content channel into the loader and updates the RSS feed in the feeds list fragment.
      *
@@ -226,6 +267,7 @@ public class RssFeedsActivity extends AppCompatActivity {
                     lastViewedItemUrl = loader.getChannel().getItems().get(0).getTheLink();
                 }
                 applicationSettings.setRssfeedLastViewer(loader.getSetting().getOrder(), new Date(), lastViewedItemUrl);
+                markRssfeedSeen(loader.getSetting());
             }
             fragmentItems.update(loader.getChannel(), loader.hasError(), loader.getSetting().requiresExternalAuthentication());
 
@@ -249,6 +291,7 @@ public class RssFeedsActivity extends AppCompatActivity {
                     lastViewedItemUrl = loader.getChannel().getItems().get(0).getTheLink();
                 }
                 applicationSettings.setRssfeedLastViewer(loader.getSetting().getOrder(), new Date(), lastViewedItemUrl);
+                markRssfeedSeen(loader.getSetting());
             }
 
             String name = loader.getChannel().getTitle();
@@ -86,12 +86,12 @@ public class RssFeedsFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        this.refreshScreen();
+        getRssActivity().refreshFeeds(false);
     }
 
     @OptionsItem(R.id.action_refresh)
     protected void refreshScreen() {
-        getRssActivity().refreshFeeds();
+        getRssActivity().refreshFeeds(true);
     }
 
     @ItemClick(R.id.rssfeeds_list)
@@ -22,7 +22,6 @@ import org.transdroid.core.rssparser.Item;
 
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 
 /**
  * A container class that holds RSS feed settings and, after they have been retrieved, the contents as {@link Channel}, the number of new items and an
@@ -55,32 +54,20 @@ public class RssfeedLoader {
             Date pubDate = channel.getItems().get(0).getPubdate();
             usePublishDate = pubDate != null && pubDate.getTime() > 0;
         }
-        newCount = 0;
         if (usePublishDate) {
-            // Count the number of new items, based on the date that this RSS feed was last viewed by the user
-            List<Item> items = channel.getItems();
             // Reverse-order sort the items on their published date
-            Collections.sort(items, (lhs, rhs) ->
-                    -lhs.getPubdate().compareTo(rhs.getPubdate()));
-            for (Item item : items) {
-                if (item.getPubdate() == null || setting.getLastViewed() == null || item.getPubdate().after(setting.getLastViewed())) {
-                    newCount++;
-                    item.setIsNew(true);
-                } else {
-                    item.setIsNew(false);
-                }
-            }
-        } else {
-            // Use the url of the last RSS item the last time the feed was viewed by the user to count new items
-            boolean isNew = true;
-            for (Item item : channel.getItems()) {
-                if (item.getTheLink() != null && setting.getLastViewedItemUrl() != null && item.getTheLink().equals(setting.getLastViewedItemUrl())) {
-                    isNew = false;
+            Collections.sort(channel.getItems(), (lhs, rhs) -> {
+                if (lhs.getPubdate() == null || rhs.getPubdate() == null) {
+                    return lhs.getPubdate() == null ? (rhs.getPubdate() == null ? 0 : -1) : 1;
                 }
-                if (isNew) {
-                    newCount++;
-                }
-                item.setIsNew(isNew);
+                return -lhs.getPubdate().compareTo(rhs.getPubdate());
+            });
+        }
+        // The items were marked as new by the RssItemStore, based on whether the user saw these before
+        newCount = 0;
+        for (Item item : channel.getItems()) {
+            if (item.isNew()) {
+                newCount++;
             }
         }
     }
@@ -22,19 +22,25 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.TextUtils;
 
 import androidx.preference.Preference;
 import androidx.preference.Preference.OnPreferenceClickListener;
 
+import com.afollestad.materialdialogs.MaterialDialog;
+
 import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EActivity;
 import org.androidannotations.annotations.OptionsItem;
 import org.transdroid.R;
+import org.transdroid.core.app.cache.DataUsageStore;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.SettingsPersistence;
 import org.transdroid.core.gui.log.ErrorLogSender;
+import org.transdroid.core.gui.log.StartupTrace;
 import org.transdroid.core.gui.navigation.DialogHelper;
 import org.transdroid.core.gui.navigation.NavigationHelper;
+import org.transdroid.daemon.util.TaskMetrics;
 
 @EActivity
 public class HelpSettingsActivity extends PreferenceCompatActivity {
@@ -48,8 +54,12 @@ public class HelpSettingsActivity extends PreferenceCompatActivity {
     @Bean
     protected ApplicationSettings applicationSettings;
     @Bean
+    protected DataUsageStore dataUsageStore;
+    @Bean
     protected ErrorLogSender errorLogSender;
     @Bean
+    protected StartupTrace startupTrace;
+    @Bean
     protected SettingsPersistence settingsPersistence;
     private OnPreferenceClickListener onSendLogClick = new OnPreferenceClickListener() {
         @Override
@@ -58,6 +68,20 @@ public class HelpSettingsActivity extends PreferenceCompatActivity {
             return true;
         }
     };
+    private OnPreferenceClickListener onDiagnosticsClick = preference -> {
+        StringBuilder report = new StringBuilder();
+        for (String part : new String[]{startupTrace.getReport(), dataUsageStore.getReport(), TaskMetrics.getReport()}) {
+            if (!TextUtils.isEmpty(part)) {
+                report.append(report.length() == 0 ? "" : "\n").append(part);
+            }
+        }
+        new MaterialDialog.Builder(this)
+                .title(R.string.pref_diagnostics)
+                .content(report.length() == 0 ? getString(R.string.pref_diagnostics_empty) : report.toString())
+                .positiveText(android.R.string.ok)
+                .show();
+        return true;
+    };
     private OnPreferenceClickListener onInstallHelpClick = preference -> {
         startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(INSTALLHELP_URI)));
         return true;
@@ -82,6 +106,7 @@ public class HelpSettingsActivity extends PreferenceCompatActivity {
 
         // Handle outgoing links and preference changes
         findPreference("system_sendlog").setOnPreferenceClickListener(onSendLogClick);
+        findPreference("system_diagnostics").setOnPreferenceClickListener(onDiagnosticsClick);
         findPreference("system_installhelp").setOnPreferenceClickListener(onInstallHelpClick);
         findPreference("system_changelog").setOnPreferenceClickListener(onChangeLogClick);
         findPreference("system_about").setTitle(getString(R.string.pref_about, getString(R.string.app_name)));
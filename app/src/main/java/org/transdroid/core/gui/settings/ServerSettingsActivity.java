@@ -71,6 +71,7 @@ public class ServerSettingsActivity extends KeyBoundPreferencesActivity {
         initTextPreference("server_localport");
         folder = initTextPreference("server_folder");
         initTextPreference("server_timeout");
+        initTextPreference("server_maxconnections");
         initBooleanPreference("server_alarmfinished", true);
         initBooleanPreference("server_alarmnew");
         excludeFilter = initTextPreference("server_exclude");
@@ -24,6 +24,7 @@ public class Item implements Parcelable {
     private int id;
     private String title;
     private String link;
+    private String guid;
     private String description;
     private Date pubDate;
     private String enclosureUrl;
@@ -41,6 +42,7 @@ public class Item implements Parcelable {
         id = in.readInt();
         title = in.readString();
         link = in.readString();
+        guid = in.readString();
         description = in.readString();
         long pubDateIn = in.readLong();
         pubDate = pubDateIn == -1 ? null : new Date(pubDateIn);
@@ -82,6 +84,14 @@ public class Item implements Parcelable {
         this.link = link;
     }
 
+    public String getGuid() {
+        return this.guid;
+    }
+
+    public void setGuid(String guid) {
+        this.guid = guid;
+    }
+
     public Date getPubdate() {
         return this.pubDate;
     }
@@ -156,6 +166,7 @@ public class Item implements Parcelable {
         out.writeInt(id);
         out.writeString(title);
         out.writeString(link);
+        out.writeString(guid);
         out.writeString(description);
         out.writeLong(pubDate == null ? -1 : pubDate.getTime());
         out.writeString(enclosureUrl);
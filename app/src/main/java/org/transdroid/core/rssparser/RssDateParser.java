@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.rssparser;
+
+import java.util.Date;
+
+/**
+ * Parses the dates as used in RSS feeds, which should be RFC 822 dates (such as 'Sat, 07 Sep 2002 09:42:31 GMT') but
+ * often are RFC 3339 dates (such as '2002-09-07T09:42:31+02:00') instead. Dates are parsed by scanning the characters
+ * directly, without any intermediate objects. As dates within a feed all use the same format, the format that matched
+ * last is tried first; one parser should therefore be used per feed (and it is not thread-safe).
+ */
+public class RssDateParser {
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final int INVALID_ZONE = Integer.MIN_VALUE;
+    private static final int FORMAT_RFC822 = 0;
+    private static final int FORMAT_RFC3339 = 1;
+    private static final int FORMAT_LEGACY = 2;
+    private static final int FORMATS = 3;
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final String[] ZONE_NAMES = {"GMT", "UT", "UTC", "Z", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST",
+            "PDT", "WET", "WEST", "BST", "CET", "CEST", "EET", "EEST", "JST"};
+    private static final int[] ZONE_OFFSETS = {0, 0, 0, 0, -5 * 60, -4 * 60, -6 * 60, -5 * 60, -7 * 60, -6 * 60, -8 * 60,
+            -7 * 60, 0, 60, 60, 60, 2 * 60, 2 * 60, 3 * 60, 9 * 60};
+
+    private int lastFormat = FORMAT_RFC822;
+    private String value;
+    private int pos;
+    private int length;
+
+    /**
+     * Parses a date as found in an RSS feed.
+     *
+     * @param value The (trimmed) text of a date element
+     * @return The parsed date, or null if it was empty or not in any supported format
+     */
+    public Date parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < FORMATS; i++) {
+            int format = (lastFormat + i) % FORMATS;
+            long time = parse(format, value);
+            if (time != INVALID) {
+                lastFormat = format;
+                return new Date(time);
+            }
+        }
+        return null;
+    }
+
+    private long parse(int format, String value) {
+        this.value = value;
+        this.pos = 0;
+        this.length = value.length();
+        try {
+            switch (format) {
+                case FORMAT_RFC822:
+                    return parseRfc822();
+                case FORMAT_RFC3339:
+                    return parseRfc3339();
+                default:
+                    return parseLegacy();
+            }
+        } finally {
+            this.value = null;
+        }
+    }
+
+    private long parseRfc822() {
+        // Optional day of week, such as 'Sat,'
+        if (pos < length && Character.isLetter(value.charAt(pos))) {
+            skipLetters();
+            skip(',');
+            skipSpaces();
+        }
+        int day = readNumber(1, 2);
+        skipSeparators();
+        int month = readMonth();
+        skipSeparators();
+        int yearStart = pos;
+        int year = readNumber(2, 4);
+        if (day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        if (pos - yearStart == 2) {
+            year += year < 50 ? 2000 : 1900;
+        } else if (pos - yearStart == 3) {
+            year += 1900;
+        }
+        skipSpaces();
+        int hour = 0, minute = 0, second = 0;
+        if (pos < length && isDigit(value.charAt(pos))) {
+            hour = readNumber(1, 2);
+            if (!skip(':')) {
+                return INVALID;
+            }
+            minute = readNumber(2, 2);
+            if (skip(':')) {
+                second = readNumber(2, 2);
+            }
+        }
+        skipSpaces();
+        int offset = readZone();
+        skipSpaces();
+        if (offset == INVALID_ZONE || (pos < length && value.charAt(pos) != '(')) {
+            // Not a time zone or unexpected trailing text (other than a comment such as '(PDT)')
+            return INVALID;
+        }
+        return toMillis(year, month, day, hour, minute, second, 0, offset);
+    }
+
+    private long parseRfc3339() {
+        int year = readNumber(4, 4);
+        if (year < 0 || !skip('-')) {
+            return INVALID;
+        }
+        int month = readNumber(2, 2);
+        if (month < 0 || !skip('-')) {
+            return INVALID;
+        }
+        int day = readNumber(2, 2);
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        int offset = 0;
+        if (pos < length && (value.charAt(pos) == 'T' || value.charAt(pos) == 't' || value.charAt(pos) == ' ')) {
+            pos++;
+            hour = readNumber(2, 2);
+            if (!skip(':')) {
+                return INVALID;
+            }
+            minute = readNumber(2, 2);
+            if (skip(':')) {
+                second = readNumber(2, 2);
+                if (skip('.') || skip(',')) {
+                    int fractionStart = pos;
+                    while (pos < length && isDigit(value.charAt(pos))) {
+                        if (pos - fractionStart < 3) {
+                            millis = millis * 10 + (value.charAt(pos) - '0');
+                        }
+                        pos++;
+                    }
+                    for (int i = pos - fractionStart; i < 3; i++) {
+                        millis *= 10;
+                    }
+                }
+            }
+            offset = readZone();
+        }
+        if (offset == INVALID_ZONE || pos != length) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, hour, minute, second, millis, offset);
+    }
+
+    @SuppressWarnings("deprecation")
+    private long parseLegacy() {
+        // Last resort, for the odd formats that the platform parser does understand
+        try {
+            return Date.parse(value);
+        } catch (IllegalArgumentException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Reads a time zone as offset in minutes, which is 0 if there is no time zone at all.
+     */
+    private int readZone() {
+        if (pos >= length || value.charAt(pos) == '(') {
+            return 0;
+        }
+        char c = value.charAt(pos);
+        if (c == '+' || c == '-') {
+            pos++;
+            int hours = readNumber(2, 2);
+            skip(':');
+            int minutes = pos < length && isDigit(value.charAt(pos)) ? readNumber(2, 2) : 0;
+            if (hours < 0 || minutes < 0) {
+                return INVALID_ZONE;
+            }
+            return (c == '-' ? -1 : 1) * (hours * 60 + minutes);
+        }
+        int start = pos;
+        skipLetters();
+        int zoneLength = pos - start;
+        for (int i = 0; i < ZONE_NAMES.length; i++) {
+            if (ZONE_NAMES[i].length() == zoneLength && value.regionMatches(true, start, ZONE_NAMES[i], 0, zoneLength)) {
+                return ZONE_OFFSETS[i];
+            }
+        }
+        if (zoneLength == 1) {
+            // Military time zones are to be treated as unknown, i.e. as UTC (RFC 2822, section 4.3)
+            return 0;
+        }
+        return INVALID_ZONE;
+    }
+
+    private int readMonth() {
+        int start = pos;
+        skipLetters();
+        if (pos - start < 3) {
+            return -1;
+        }
+        for (int i = 0; i < 12; i++) {
+            if (value.regionMatches(true, start, MONTHS, i * 3, 3)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a positive number of at least min and at most max digits, or returns -1 if there are not enough digits.
+     */
+    private int readNumber(int min, int max) {
+        int number = 0;
+        int start = pos;
+        while (pos < length && pos - start < max && isDigit(value.charAt(pos))) {
+            number = number * 10 + (value.charAt(pos) - '0');
+            pos++;
+        }
+        return pos - start < min ? -1 : number;
+    }
+
+    private boolean skip(char c) {
+        if (pos < length && value.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (pos < length && value.charAt(pos) == ' ') {
+            pos++;
+        }
+    }
+
+    private void skipSeparators() {
+        while (pos < length && (value.charAt(pos) == ' ' || value.charAt(pos) == '-')) {
+            pos++;
+        }
+    }
+
+    private void skipLetters() {
+        while (pos < length && Character.isLetter(value.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long toMillis(int year, int month, int day, int hour, int minute, int second, int millis, int offset) {
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 24 || minute < 0 || minute > 59
+                || second < 0 || second > 60) {
+            return INVALID;
+        }
+        // Days since the epoch, from the civil date (see http://howardhinnant.github.io/date_algorithms.html)
+        int y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+        return ((((days * 24 + hour) * 60 + minute - offset) * 60) + Math.min(second, 59)) * 1000 + millis;
+    }
+
+}
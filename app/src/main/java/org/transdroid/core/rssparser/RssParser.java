@@ -6,18 +6,28 @@ package org.transdroid.core.rssparser;
 
 import android.text.TextUtils;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.transdroid.daemon.util.DataUsage;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.PlainTcpSocketFactory;
 import org.transdroid.daemon.util.TlsSniSocketFactory;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -25,8 +35,10 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.IOException;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -34,13 +46,54 @@ import javax.xml.parsers.SAXParserFactory;
 
 public class RssParser extends DefaultHandler {
 
+    private static final int MAX_CONNECTIONS_TOTAL = 8;
+    private static final int MAX_CONNECTIONS_PER_HOST = 2;
+    private static DefaultHttpClient httpclient;
+
+    private static final int TAG_OTHER = 0;
+    private static final int TAG_CHANNEL = 1;
+    private static final int TAG_ITEM = 2;
+    private static final int TAG_IMAGE = 3;
+    private static final int TAG_ENCLOSURE = 4;
+    private static final int TAG_TITLE = 5;
+    private static final int TAG_LINK = 6;
+    private static final int TAG_DESCRIPTION = 7;
+    private static final int TAG_PUBDATE = 8;
+    private static final int TAG_CATEGORY = 9;
+    private static final int TAG_GUID = 10;
+    private static final Map<String, Integer> TAGS = new HashMap<>();
+
+    static {
+        // Tags are matched case-insensitively, but the usual spelling is found directly
+        TAGS.put("channel", TAG_CHANNEL);
+        TAGS.put("item", TAG_ITEM);
+        TAGS.put("image", TAG_IMAGE);
+        TAGS.put("enclosure", TAG_ENCLOSURE);
+        TAGS.put("title", TAG_TITLE);
+        TAGS.put("link", TAG_LINK);
+        TAGS.put("description", TAG_DESCRIPTION);
+        TAGS.put("pubdate", TAG_PUBDATE);
+        TAGS.put("pubDate", TAG_PUBDATE);
+        TAGS.put("category", TAG_CATEGORY);
+        TAGS.put("guid", TAG_GUID);
+    }
+
     private final String urlString;
     private final String[] excludeFilters;
     private final String[] includeFilters;
+    private final RssDateParser dateParser = new RssDateParser();
     private Channel channel;
     private StringBuilder text;
     private Item item;
     private boolean imageStatus;
+    private String etag;
+    private String lastModified;
+    private boolean notModified;
+    private Date stopAtDate;
+    private String stopAtUrl;
+    private int matchedItems;
+    private boolean usePublishDate;
+    private boolean stoppedEarly;
 
     /**
      * The constructor for the RSS parser; call {@link #parse()} to synchronously create an HTTP connection and parse
@@ -80,6 +133,71 @@ public class RssParser extends DefaultHandler {
         return this.channel;
     }
 
+    /**
+     * Makes the next {@link #parse()} a conditional request, using the validators that the server returned when the feed
+     * was last retrieved. If the feed did not change since, the server may then answer without sending the feed contents
+     * at all, which is reported by {@link #isNotModified()}.
+     *
+     * @param etag         The ETag header as returned by {@link #getEtag()} on the last retrieval, or null if unknown
+     * @param lastModified The Last-Modified header as returned by {@link #getLastModified()}, or null if unknown
+     */
+    public void setConditional(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns the ETag header of the last retrieved feed contents, which may be used for a next conditional request.
+     *
+     * @return The ETag as send by the server, or null if it sent none
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Returns the Last-Modified header of the last retrieved feed contents, which may be used for a next conditional
+     * request.
+     *
+     * @return The Last-Modified date as send by the server, or null if it sent none
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Whether the server indicated that the feed did not change since it was last retrieved, in which case nothing was
+     * parsed and {@link #getChannel()} will return null.
+     *
+     * @return True if the conditional request was answered with 304 Not Modified; false otherwise
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Makes the next {@link #parse()} stop reading the feed as soon as it reaches the item that was seen last, such that
+     * the resulting channel only contains the new items at the top of the feed. Like when counting unread items, the
+     * publish date is used if the (first) items have one, and otherwise the item link.
+     *
+     * @param lastViewedDate    The date the feed was last viewed; items published before this are not read any more
+     * @param lastViewedItemUrl The link of the newest item when the feed was last viewed, at which reading stops
+     */
+    public void setStopAt(Date lastViewedDate, String lastViewedItemUrl) {
+        this.stopAtDate = lastViewedDate;
+        this.stopAtUrl = lastViewedItemUrl;
+    }
+
+    /**
+     * Whether the last {@link #parse()} stopped reading the feed at the last seen item, as set with
+     * {@link #setStopAt(Date, String)}, rather than at the end of the feed.
+     *
+     * @return True if parsing ended at the last seen item; false otherwise
+     */
+    public boolean hasStoppedEarly() {
+        return stoppedEarly;
+    }
+
     /**
      * Initialises an HTTP connection, retrieves the content and parses the RSS feed as standard XML.
      *
@@ -89,25 +207,75 @@ public class RssParser extends DefaultHandler {
      */
     public void parse() throws ParserConfigurationException, SAXException, IOException {
 
-        DefaultHttpClient httpclient = initialise();
-        HttpResponse result = httpclient.execute(new HttpGet(urlString));
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        if (spf != null) {
-            SAXParser sp = spf.newSAXParser();
-            sp.parse(result.getEntity().getContent(), this);
+        HttpGet request = new HttpGet(urlString);
+        if (etag != null) {
+            request.addHeader("If-None-Match", etag);
         }
-
-        // Apply filters
-        if (channel != null && (includeFilters != null || excludeFilters != null)) {
-            Iterator<Item> i = channel.getItems().iterator();
-            while (i.hasNext()) {
-                if (!matchesFilters(i.next()))
-                    i.remove();
+        if (lastModified != null) {
+            request.addHeader("If-Modified-Since", lastModified);
+        }
+        // Every feed gets its own cookies, such that no (session) cookie of one feed is ever sent to another
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ClientContext.COOKIE_STORE, new BasicCookieStore());
+        HttpResponse result = getHttpClient().execute(request, context);
+        HttpEntity entity = result.getEntity();
+        stoppedEarly = false;
+        try {
+            notModified = result.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED;
+            if (notModified) {
+                // The feed did not change since it was last retrieved, so there is nothing to parse
+                return;
+            }
+            Header etagHeader = result.getFirstHeader("ETag");
+            Header lastModifiedHeader = result.getFirstHeader("Last-Modified");
+            etag = etagHeader == null ? null : etagHeader.getValue();
+            lastModified = lastModifiedHeader == null ? null : lastModifiedHeader.getValue();
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            if (spf != null) {
+                SAXParser sp = spf.newSAXParser();
+                sp.parse(entity.getContent(), this);
+            }
+        } catch (StopParsingException e) {
+            // Reached the last seen item: the rest of the feed is not of interest, so do not even download it
+            stoppedEarly = true;
+            request.abort();
+        } finally {
+            // Otherwise release the connection back to the shared client
+            if (entity != null && !stoppedEarly) {
+                try {
+                    entity.consumeContent();
+                } catch (IOException e) {
+                    // Do not hide any earlier exception; just make sure the broken connection is not reused
+                    request.abort();
+                }
             }
         }
 
     }
 
+    /**
+     * Called when an item is parsed completely, to apply the filters and see if parsing can stop at this item.
+     */
+    private void completeItem(Item completed) throws StopParsingException {
+        List<Item> items = this.channel.getItems();
+        if ((includeFilters != null || excludeFilters != null) && !matchesFilters(completed)) {
+            items.remove(items.size() - 1);
+            return;
+        }
+        if (stopAtDate == null && stopAtUrl == null) {
+            return;
+        }
+        if (matchedItems++ == 0) {
+            usePublishDate = completed.getPubdate() != null && completed.getPubdate().getTime() > 0;
+        }
+        if ((usePublishDate && stopAtDate != null && completed.getPubdate() != null && completed.getPubdate().before(stopAtDate))
+                || (!usePublishDate && stopAtUrl != null && stopAtUrl.equals(completed.getTheLink()))) {
+            // This was seen before already, as are all items after it
+            items.remove(items.size() - 1);
+            throw new StopParsingException();
+        }
+    }
+
     private boolean matchesFilters(Item next) {
         String title = next.getTitle().toUpperCase();
         if (includeFilters != null) {
@@ -130,20 +298,34 @@ public class RssParser extends DefaultHandler {
         return true;
     }
 
-    private DefaultHttpClient initialise() {
+    /**
+     * Returns the HTTP client that is shared by all feed retrievals, such that connections to the same host are reused and
+     * the number of concurrent connections per host is limited when many feeds are retrieved at once.
+     */
+    private static synchronized DefaultHttpClient getHttpClient() {
+        if (httpclient == null) {
+            httpclient = initialise();
+        }
+        return httpclient;
+    }
+
+    private static DefaultHttpClient initialise() {
 
         SchemeRegistry registry = new SchemeRegistry();
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+        registry.register(new Scheme("http", new PlainTcpSocketFactory(), 80));
         registry.register(new Scheme("https", new TlsSniSocketFactory(), 443));
 
         HttpParams httpparams = new BasicHttpParams();
         HttpConnectionParams.setConnectionTimeout(httpparams, 5000);
         HttpConnectionParams.setSoTimeout(httpparams, 5000);
         HttpProtocolParams.setUserAgent(httpparams, HttpHelper.userAgent);
+        ConnManagerParams.setMaxTotalConnections(httpparams, MAX_CONNECTIONS_TOTAL);
+        ConnManagerParams.setMaxConnectionsPerRoute(httpparams, new ConnPerRouteBean(MAX_CONNECTIONS_PER_HOST));
         DefaultHttpClient httpclient = new DefaultHttpClient(new ThreadSafeClientConnManager(httpparams, registry),
                 httpparams);
 
         httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
+        httpclient.addResponseInterceptor(DataUsage.createResponseInterceptor(DataUsage.Feature.Rss));
         httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
 
         return httpclient;
@@ -163,36 +345,35 @@ public class RssParser extends DefaultHandler {
     @Override
     public final void startElement(String uri, String localName, String qName, Attributes attributes) {
 
-        /** First lets check for the channel */
-        if (localName.equalsIgnoreCase("channel")) {
-            this.channel = new Channel();
-        }
-
-        /** Now lets check for an item */
-        if (localName.equalsIgnoreCase("item") && (this.channel != null)) {
-            this.item = createNewItem();
-            this.channel.addItem(this.item);
-        }
-
-        /** Now lets check for an image */
-        if (localName.equalsIgnoreCase("image") && (this.channel != null)) {
-            this.imageStatus = true;
-        }
-
-        /** Checking for a enclosure */
-        if (localName.equalsIgnoreCase("enclosure")) {
-            /** Lets check we are in an item */
-            if (this.item != null && attributes != null && attributes.getLength() > 0) {
-                if (attributes.getValue("url") != null) {
-                    this.item.setEnclosureUrl(attributes.getValue("url").trim());
+        switch (getTag(localName)) {
+            case TAG_CHANNEL:
+                this.channel = new Channel();
+                break;
+            case TAG_ITEM:
+                if (this.channel != null) {
+                    this.item = createNewItem();
+                    this.channel.addItem(this.item);
                 }
-                if (attributes.getValue("type") != null) {
-                    this.item.setEnclosureType(attributes.getValue("type"));
+                break;
+            case TAG_IMAGE:
+                if (this.channel != null) {
+                    this.imageStatus = true;
                 }
-                if (attributes.getValue("length") != null) {
-                    this.item.setEnclosureLength(Long.parseLong(attributes.getValue("length")));
+                break;
+            case TAG_ENCLOSURE:
+                /** Lets check we are in an item */
+                if (this.item != null && attributes != null && attributes.getLength() > 0) {
+                    if (attributes.getValue("url") != null) {
+                        this.item.setEnclosureUrl(attributes.getValue("url").trim());
+                    }
+                    if (attributes.getValue("type") != null) {
+                        this.item.setEnclosureType(attributes.getValue("type"));
+                    }
+                    if (attributes.getValue("length") != null) {
+                        this.item.setEnclosureLength(Long.parseLong(attributes.getValue("length")));
+                    }
                 }
-            }
+                break;
         }
 
     }
@@ -200,84 +381,88 @@ public class RssParser extends DefaultHandler {
     /**
      * This is where we actually parse for the elements contents
      */
-    public final void endElement(String uri, String localName, String qName) {
+    public final void endElement(String uri, String localName, String qName) throws SAXException {
         /** Check we have an RSS Feed */
         if (this.channel == null) {
+            this.text.setLength(0);
             return;
         }
 
-        /** Check are at the end of an item */
-        if (localName.equalsIgnoreCase("item")) {
-            this.item = null;
-        }
-
-        /** Check we are at the end of an image */
-        if (localName.equalsIgnoreCase("image"))
-            this.imageStatus = false;
-
-        /** Now we need to parse which title we are in */
-        if (localName.equalsIgnoreCase("title")) {
-            /** We are an item, so we set the item title */
-            if (this.item != null) {
-                this.item.setTitle(this.text.toString().trim());
-                /** We are in an image */
-            } else {
-                this.channel.setTitle(this.text.toString().trim());
-            }
-        }
-
-        /** Now we are checking for a link */
-        if (localName.equalsIgnoreCase("link")) {
-            /** Check we are in an item **/
-            if (this.item != null) {
-                this.item.setLink(this.text.toString().trim());
-                /** Check we are in an image */
-            } else if (this.imageStatus) {
-                this.channel.setImage(this.text.toString().trim());
-                /** Check we are in a channel */
-            } else {
-                this.channel.setLink(this.text.toString().trim());
-            }
-        }
-
-        /** Checking for a description */
-        if (localName.equalsIgnoreCase("description")) {
-            /** Lets check we are in an item */
-            if (this.item != null) {
-                this.item.setDescription(this.text.toString().trim());
-                /** Lets check we are in the channel */
-            } else {
-                this.channel.setDescription(this.text.toString().trim());
-            }
-        }
+        // Materialise the element text only once
+        String raw = this.text.toString();
+        String value = raw.trim();
+        this.text.setLength(0);
 
-        /** Checking for a pubdate */
-        if (localName.equalsIgnoreCase("pubDate")) {
-            /** Lets check we are in an item */
-            if (this.item != null) {
-                try {
-                    this.item.setPubdate(new Date(Date.parse(this.text.toString().trim())));
-                } catch (Exception e) {
-                    // Date is malformed (not parsable by Date.parse)
+        switch (getTag(localName)) {
+            case TAG_ITEM:
+                /** Check are at the end of an item */
+                if (this.item != null) {
+                    completeItem(this.item);
                 }
-                /** Lets check we are in the channel */
-            } else {
-                try {
-                    this.channel.setPubDate(new Date(Date.parse(this.text.toString().trim())));
-                } catch (Exception e) {
-                    // Date is malformed (not parsable by Date.parse)
+                this.item = null;
+                break;
+            case TAG_IMAGE:
+                this.imageStatus = false;
+                break;
+            case TAG_TITLE:
+                if (this.item != null) {
+                    this.item.setTitle(value);
+                } else {
+                    this.channel.setTitle(value);
                 }
-            }
-        }
-
-        /** Check for the category */
-        if (localName.equalsIgnoreCase("category") && (this.item != null)) {
-            this.channel.addCategory(this.text.toString().trim());
+                break;
+            case TAG_LINK:
+                if (this.item != null) {
+                    this.item.setLink(value);
+                } else if (this.imageStatus) {
+                    this.channel.setImage(value);
+                } else {
+                    this.channel.setLink(value);
+                }
+                break;
+            case TAG_DESCRIPTION:
+                if (this.item != null) {
+                    this.item.setDescription(value);
+                } else {
+                    this.channel.setDescription(value);
+                }
+                break;
+            case TAG_PUBDATE:
+                Date date = dateParser.parse(value);
+                if (date != null) {
+                    if (this.item != null) {
+                        this.item.setPubdate(date);
+                    } else {
+                        this.channel.setPubDate(date);
+                    }
+                }
+                break;
+            case TAG_GUID:
+                if (this.item != null) {
+                    this.item.setGuid(value);
+                }
+                break;
+            case TAG_CATEGORY:
+                if (this.item != null) {
+                    this.channel.addCategory(value);
+                }
+                break;
         }
 
-        addAdditionalData(localName, this.item, this.text.toString());
+        addAdditionalData(localName, this.item, raw);
+    }
 
-        this.text.setLength(0);
+    /**
+     * Looks up the known tag id of an element name, which may have any case.
+     *
+     * @return The id of the tag, or {@link #TAG_OTHER} if it is not a tag the parser handles itself
+     */
+    private static int getTag(String localName) {
+        Integer tag = TAGS.get(localName);
+        if (tag == null) {
+            tag = TAGS.get(localName.toLowerCase(Locale.US));
+        }
+        return tag == null ? TAG_OTHER : tag;
     }
 
     /**
@@ -296,4 +481,10 @@ public class RssParser extends DefaultHandler {
         this.text.append(ch, start, length);
     }
 
+    private static class StopParsingException extends SAXException {
+        StopParsingException() {
+            super("Reached the last seen item");
+        }
+    }
+
 }
@@ -22,6 +22,7 @@ import android.content.SharedPreferences;
 
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.OS;
 
 /**
@@ -69,6 +70,7 @@ public class DediseedboxSettings extends SeedboxSettingsImpl implements SeedboxS
                 "ftp://" + user + "@" + server + "/",
                 pass,
                 6,
+                DaemonSettings.DEFAULT_MAX_CONNECTIONS,
                 prefs.getBoolean("seedbox_dediseedbox_alarmfinished_" + order, true),
                 prefs.getBoolean("seedbox_dediseedbox_alarmnew_" + order, false),
                 prefs.getString("seedbox_dediseedbox_alarmexclude_" + order, null),
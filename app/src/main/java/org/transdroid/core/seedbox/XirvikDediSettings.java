@@ -24,6 +24,7 @@ import androidx.preference.PreferenceManager;
 
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.OS;
 
 /**
@@ -73,6 +74,7 @@ public class XirvikDediSettings extends SeedboxSettingsImpl implements SeedboxSe
                 "ftp://" + user + "@" + server + "/",
                 pass,
                 6,
+                DaemonSettings.DEFAULT_MAX_CONNECTIONS,
                 prefs.getBoolean("seedbox_xirvikdedi_alarmfinished_" + order, true),
                 prefs.getBoolean("seedbox_xirvikdedi_alarmnew_" + order, false),
                 prefs.getString("seedbox_xirvikdedi_alarmexclude_" + order, null),
@@ -24,6 +24,7 @@ import androidx.preference.PreferenceManager;
 
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.OS;
 
 /**
@@ -72,6 +73,7 @@ public class XirvikSemiSettings extends SeedboxSettingsImpl implements SeedboxSe
                 "ftp://" + user + "@" + server + "/downloads",
                 pass,
                 6,
+                DaemonSettings.DEFAULT_MAX_CONNECTIONS,
                 prefs.getBoolean("seedbox_xirviksemi_alarmfinished_" + order, true),
                 prefs.getBoolean("seedbox_xirviksemi_alarmnew_" + order, false),
                 prefs.getString("seedbox_xirviksemi_alarmexclude_" + order, null),
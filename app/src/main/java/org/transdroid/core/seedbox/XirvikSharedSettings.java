@@ -24,6 +24,7 @@ import androidx.preference.PreferenceManager;
 
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.OS;
 
 /**
@@ -74,6 +75,7 @@ public class XirvikSharedSettings extends SeedboxSettingsImpl implements Seedbox
                 "ftp://" + user + "@" + server + "/downloads",
                 pass,
                 6,
+                DaemonSettings.DEFAULT_MAX_CONNECTIONS,
                 prefs.getBoolean("seedbox_xirvikshared_alarmfinished_" + order, true),
                 prefs.getBoolean("seedbox_xirvikshared_alarmnew_" + order, false),
                 prefs.getString("seedbox_xirvikshared_alarmexclude_" + order, null),
@@ -21,21 +21,28 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
 import android.net.wifi.WifiManager;
+import android.os.Build;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.core.net.ConnectivityManagerCompat;
 
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.EBean.Scope;
 import org.androidannotations.annotations.SystemService;
 import org.transdroid.R;
+import org.transdroid.daemon.util.DataUsage;
 
 @EBean(scope = Scope.Singleton)
-public class ConnectivityHelper {
+public class ConnectivityHelper implements DataUsage.NetworkCheck {
 
     private static final int REQUEST_LOCATION_PERMISSION = 0;
+    private static final int METERED_REFRESH_FACTOR = 4;
+    private static final long METERED_REFRESH_MINIMUM = 30 * 1000;
 
     @SystemService
     protected ConnectivityManager connectivityManager;
@@ -48,6 +55,51 @@ public class ConnectivityHelper {
                 && connectivityManager.getActiveNetworkInfo().isConnected();
     }
 
+    /**
+     * Returns whether the active network is metered, i.e. the user may pay for the data usage, such as on most mobile
+     * connections.
+     */
+    public boolean isNetworkMetered() {
+        return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    @Override
+    public boolean isActiveNetworkMetered() {
+        return isNetworkMetered();
+    }
+
+    /**
+     * Returns the interval at which to automatically refresh the data from servers, which is lowered when the active
+     * network is metered.
+     *
+     * @param interval The refresh interval as set by the user, in milliseconds, or 0 if not refreshing automatically
+     * @return The refresh interval to use, in milliseconds
+     */
+    public long adjustRefreshInterval(long interval) {
+        if (interval <= 0 || !isNetworkMetered()) {
+            return interval;
+        }
+        return Math.max(interval * METERED_REFRESH_FACTOR, METERED_REFRESH_MINIMUM);
+    }
+
+    /**
+     * Returns an identifier of the currently active network, which changes whenever the device switches networks, such
+     * as from mobile data to a Wi-Fi network or (dis)connects to a VPN.
+     *
+     * @return The network identifier, or null if there is no active network
+     */
+    public String getNetworkIdentity() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivityManager.getActiveNetwork();
+            return network == null ? null : network.toString();
+        }
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            return null;
+        }
+        return info.getType() + ":" + info.getSubtype() + ":" + info.getExtraInfo();
+    }
+
     public String getConnectedNetworkName() {
         if (wifiManager != null && wifiManager.getConnectionInfo() != null && wifiManager.getConnectionInfo().getSSID() != null) {
             return wifiManager.getConnectionInfo().getSSID().replace("\"", "");
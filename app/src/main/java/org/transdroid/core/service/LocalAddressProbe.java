@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.service;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.SystemService;
+import org.transdroid.core.app.settings.ServerSetting;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.util.DnsCache;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides whether a server that has a local address and local network configured should be reached via that local
+ * address or via its normal (remote) address, when the name of the connected Wi-Fi network is not known, such as without
+ * location permission, on a VPN or when tethered. Only the local address is probed, and used if it can be reached
+ * within a short time. When it can, this is remembered for the currently active network, until the device switches
+ * networks; when it cannot, the normal address is used without trying the local address again for a minute, so creating
+ * adapters does not block every time.
+ */
+@EBean(scope = Scope.Singleton)
+public class LocalAddressProbe {
+
+    private static final int LOCAL_TIMEOUT = 1000; // 1 second
+    private static final long LOCAL_RETRY_INTERVAL = 60 * 1000; // 1 minute
+
+    @Bean
+    protected Log log;
+    @Bean
+    protected ConnectivityHelper connectivityHelper;
+    @SystemService
+    protected ConnectivityManager connectivityManager;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Choice> choices = new HashMap<>();
+    private final Set<String> probing = new HashSet<>();
+    private boolean networkCallbackRegistered = false;
+
+    /**
+     * Returns whether the local address of a server should be used on the currently active network. When this is not
+     * yet known, the local address is tried, which blocks for at most a second; on the main thread the remote address is
+     * returned directly instead, while the local address is tried in the background for later connections.
+     *
+     * @param server The server, which should have a local address configured
+     * @return True if the server's local address should be used, false if its normal address should be used
+     */
+    public boolean shouldUseLocal(ServerSetting server) {
+        String key = getKey(server);
+        if (key == null) {
+            // Not connected at all
+            return false;
+        }
+        Boolean known = getChoice(key);
+        if (known != null) {
+            return known;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            probeInBackground(server, key);
+            return false;
+        }
+        return probe(server, key);
+    }
+
+    /**
+     * Returns the choice for the local or remote address of a server on the currently active network, if it is known.
+     *
+     * @param server The server, which should have a local address configured
+     * @return True if the local address should be used, false if not, or null if this was not determined yet
+     */
+    public Boolean getKnownChoice(ServerSetting server) {
+        String key = getKey(server);
+        return key == null ? null : getChoice(key);
+    }
+
+    private Boolean getChoice(String key) {
+        synchronized (choices) {
+            Choice choice = choices.get(key);
+            if (choice == null || SystemClock.elapsedRealtime() >= choice.validUntil) {
+                return null;
+            }
+            return choice.useLocal;
+        }
+    }
+
+    private String getKey(ServerSetting server) {
+        String network = connectivityHelper.getNetworkIdentity();
+        if (network == null) {
+            return null;
+        }
+        return network + "|" + server.getLocalAddress() + ":" + server.getLocalPort() + "|" + server.getAddress() + ":"
+                + server.getPort();
+    }
+
+    private void probeInBackground(final ServerSetting server, final String key) {
+        synchronized (probing) {
+            if (!probing.add(key)) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            try {
+                probe(server, key);
+            } finally {
+                synchronized (probing) {
+                    probing.remove(key);
+                }
+            }
+        });
+    }
+
+    private boolean probe(ServerSetting server, String key) {
+        registerNetworkCallback();
+        // The local address is preferred, as long as it can be reached; otherwise the remote address is used, whether
+        // that can be reached or not, which is up to the adapter (and its circuit breaker) to find out
+        boolean useLocal = canConnect(server.getLocalAddress(), server.getLocalPort(), LOCAL_TIMEOUT);
+        log.d(this, server.getName() + ": Using " + (useLocal ? "local" : "remote") + " address on this network");
+        synchronized (choices) {
+            choices.put(key, new Choice(useLocal,
+                    useLocal ? Long.MAX_VALUE : SystemClock.elapsedRealtime() + LOCAL_RETRY_INTERVAL));
+        }
+        return useLocal;
+    }
+
+    private boolean canConnect(String host, int port, int timeout) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(DnsCache.resolve(host), port), timeout);
+            return true;
+        } catch (IOException e) {
+            DnsCache.invalidate(host);
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Makes sure that the remembered choices are forgotten when the device switches networks, such that both addresses
+     * are tried again. On Android versions without network callbacks, the changed network identity suffices.
+     */
+    private synchronized void registerNetworkCallback() {
+        if (networkCallbackRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        networkCallbackRegistered = true;
+        ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                clearChoices();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                clearChoices();
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } else {
+            connectivityManager.registerNetworkCallback(new NetworkRequest.Builder().build(), callback);
+        }
+    }
+
+    private void clearChoices() {
+        synchronized (choices) {
+            choices.clear();
+        }
+    }
+
+    private static class Choice {
+
+        private final boolean useLocal;
+        private final long validUntil;
+
+        Choice(boolean useLocal, long validUntil) {
+            this.useLocal = useLocal;
+            this.validUntil = validUntil;
+        }
+
+    }
+
+}
@@ -24,6 +24,7 @@ import com.evernote.android.job.Job;
 import com.evernote.android.job.JobManager;
 import com.evernote.android.job.JobRequest;
 
+import org.transdroid.core.app.cache.DataUsageStore_;
 import org.transdroid.core.app.settings.NotificationSettings;
 import org.transdroid.core.app.settings.NotificationSettings_;
 import org.transdroid.core.gui.log.Log_;
@@ -36,7 +37,13 @@ public class RssCheckerJob extends Job {
 
     public static void schedule(Context context) {
         NotificationSettings notificationSettings = NotificationSettings_.getInstance_(context);
-        if (notificationSettings.isEnabledForRss()) {
+        if (notificationSettings.isEnabledForRss() && notificationSettings.isEnabledForTorrents()) {
+            // The feeds are checked in the same background pass as the servers, so this job is not needed
+            NotificationChannels.ensureRssCheckerChannel(context, notificationSettings);
+            Log_.getInstance_(context).d(TAG, "RSS feeds are checked within the server checker job");
+            JobManager.instance().cancelAllForTag(TAG);
+            scheduledJobId = null;
+        } else if (notificationSettings.isEnabledForRss()) {
             Log_.getInstance_(context).d(TAG, "Schedule rss checker job");
             NotificationChannels.ensureRssCheckerChannel(context, notificationSettings);
             scheduledJobId = new JobRequest.Builder(RssCheckerJob.TAG)
@@ -54,7 +61,11 @@ public class RssCheckerJob extends Job {
     @NonNull
     @Override
     protected Result onRunJob(@NonNull Params params) {
-        return RssCheckerJobRunner_.getInstance_(getContext()).run();
+        try {
+            return RssCheckerJobRunner_.getInstance_(getContext()).run();
+        } finally {
+            DataUsageStore_.getInstance_(getContext()).flush();
+        }
     }
 
 }
@@ -32,20 +32,31 @@ import org.androidannotations.annotations.SystemService;
 import org.transdroid.R;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.NotificationSettings;
+import org.transdroid.core.app.settings.RssfeedLastCheck;
 import org.transdroid.core.app.settings.RssfeedSetting;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.rss.RssFeedsActivity_;
-import org.transdroid.core.rssparser.Item;
 import org.transdroid.core.rssparser.RssParser;
 import org.transdroid.daemon.util.Collections2;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @EBean
 public class RssCheckerJobRunner {
 
+    private static final int MAX_PARALLEL_FEEDS = 4;
+    private static final long JOB_DEADLINE = 2 * 60 * 1000; // 2 minutes
+
     @RootContext
     protected Context context;
     @Bean
@@ -67,52 +78,43 @@ public class RssCheckerJobRunner {
             return Job.Result.RESCHEDULE;
         }
 
-        // Check every RSS feed for new items
-        int unread = 0;
-        Set<String> hasUnread = new LinkedHashSet<>();
+        List<RssfeedSetting> feeds = new ArrayList<>();
         for (RssfeedSetting feed : applicationSettings.getRssfeedSettings()) {
-            try {
-
-                if (!feed.shouldAlarmOnNewItems()) {
-                    log.d(this, "Skip checker for " + feed.getName() + " as alarms are disabled");
-                    continue;
-                }
-
-                log.d(this, "Try to parse " + feed.getName() + " (" + feed.getUrl() + ")");
-                RssParser parser = new RssParser(feed.getUrl(), feed.getExcludeFilter(), feed.getIncludeFilter());
-                parser.parse();
-                if (parser.getChannel() == null) {
-                    continue;
-                }
+            if (!feed.shouldAlarmOnNewItems()) {
+                log.d(this, "Skip checker for " + feed.getName() + " as alarms are disabled");
+                continue;
+            }
+            feeds.add(feed);
+        }
+        if (feeds.isEmpty()) {
+            return Job.Result.SUCCESS;
+        }
 
-                // Find the last item that is newer than the last viewed date
-                boolean usePublishDate = false;
-                if (parser.getChannel().getItems().size() > 0) {
-                    Date pubDate = parser.getChannel().getItems().get(0).getPubdate();
-                    usePublishDate = pubDate != null && pubDate.getTime() > 0;
-                }
-                for (Item item : parser.getChannel().getItems()) {
-                    if (usePublishDate
-                            && item.getPubdate() != null
-                            && item.getPubdate().before(feed.getLastViewed())) {
-                        break;
-                    } else if (!usePublishDate
-                            && item.getTheLink() != null
-                            && feed.getLastViewedItemUrl() != null
-                            && item.getTheLink().equals(feed.getLastViewedItemUrl())) {
-                        break;
-                    } else {
-                        unread++;
-                        hasUnread.add(feed.getName());
+        // Check every RSS feed for new items, in parallel so a slow feed does not delay the others
+        List<Callable<Integer>> checks = new ArrayList<>();
+        for (final RssfeedSetting feed : feeds) {
+            checks.add(() -> check(feed));
+        }
+        int unread = 0;
+        Set<String> hasUnread = new LinkedHashSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(feeds.size(), MAX_PARALLEL_FEEDS));
+        try {
+            List<Future<Integer>> results = executor.invokeAll(checks, JOB_DEADLINE, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < feeds.size(); i++) {
+                try {
+                    Integer feedUnread = results.get(i).get();
+                    if (feedUnread != null && feedUnread > 0) {
+                        unread += feedUnread;
+                        hasUnread.add(feeds.get(i).getName());
                     }
+                } catch (ExecutionException | CancellationException e) {
+                    // Ignore RSS feeds that could not be retrieved or parsed in time
                 }
-
-                log.d(this,
-                        feed.getName() + " has " + (hasUnread.contains(feed.getName()) ? "" : "no ") + "unread items");
-
-            } catch (Exception e) {
-                // Ignore RSS feeds that could not be retrieved or parsed
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
 
         if (unread == 0) {
@@ -143,4 +145,39 @@ public class RssCheckerJobRunner {
         return Job.Result.SUCCESS;
     }
 
+    /**
+     * Retrieves a single RSS feed and counts the items that are newer than the last viewed item. If the feed did not
+     * change since the last check (and was not viewed since), the unread count of that last check is used instead.
+     *
+     * @param feed The RSS feed to check
+     * @return The number of unread items, or null if the feed could not be retrieved or parsed
+     */
+    private Integer check(RssfeedSetting feed) throws Exception {
+
+        log.d(this, "Try to parse " + feed.getName() + " (" + feed.getUrl() + ")");
+        RssfeedLastCheck lastCheck = applicationSettings.getRssfeedLastCheck(feed);
+        RssParser parser = new RssParser(feed.getUrl(), feed.getExcludeFilter(), feed.getIncludeFilter());
+        if (lastCheck != null && lastCheck.appliesTo(feed)) {
+            parser.setConditional(lastCheck.getEtag(), lastCheck.getLastModified());
+        }
+        // Only the items newer than the last viewed item are of interest, so stop parsing there
+        parser.setStopAt(feed.getLastViewed(), feed.getLastViewedItemUrl());
+        parser.parse();
+        if (parser.isNotModified() && lastCheck != null) {
+            log.d(this, feed.getName() + " did not change since the last check");
+            return lastCheck.getUnread();
+        }
+        if (parser.getChannel() == null) {
+            return null;
+        }
+
+        // All (filtered) items up to the last viewed item are new
+        int unread = parser.getChannel().getItems().size();
+        applicationSettings.setRssfeedLastCheck(feed,
+                new RssfeedLastCheck(feed, parser.getEtag(), parser.getLastModified(), unread));
+
+        log.d(this, feed.getName() + " has " + (unread > 0 ? "" : "no ") + "unread items");
+        return unread;
+    }
+
 }
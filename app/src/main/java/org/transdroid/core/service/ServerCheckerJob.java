@@ -24,6 +24,7 @@ import com.evernote.android.job.Job;
 import com.evernote.android.job.JobManager;
 import com.evernote.android.job.JobRequest;
 
+import org.transdroid.core.app.cache.DataUsageStore_;
 import org.transdroid.core.app.settings.NotificationSettings;
 import org.transdroid.core.app.settings.NotificationSettings_;
 import org.transdroid.core.gui.log.Log_;
@@ -32,15 +33,19 @@ public class ServerCheckerJob extends Job {
 
     static final String TAG = "server_checker";
 
+    private static final long EXECUTION_WINDOW_MIN = 5 * 60 * 1000; // 5 minutes
+
     private static Integer scheduledJobId;
 
     public static void schedule(Context context) {
         NotificationSettings notificationSettings = NotificationSettings_.getInstance_(context);
         if (notificationSettings.isEnabledForTorrents()) {
-            Log_.getInstance_(context).d(TAG, "Schedule server checker job");
+            // The next check is planned based on what the last check saw, rather than at a fixed interval
+            long delay = ServerCheckerSchedule_.getInstance_(context).getNextCheckDelay();
+            Log_.getInstance_(context).d(TAG, "Schedule server checker job in " + (delay / 60000) + " minutes");
             NotificationChannels.ensureServerCheckerChannel(context, notificationSettings);
             scheduledJobId = new JobRequest.Builder(ServerCheckerJob.TAG)
-                    .setPeriodic(notificationSettings.getInvervalInMilliseconds())
+                    .setExecutionWindow(delay, delay + Math.max(EXECUTION_WINDOW_MIN, delay / 10))
                     .setRequiredNetworkType(JobRequest.NetworkType.CONNECTED)
                     .setUpdateCurrent(true)
                     .build()
@@ -54,7 +59,20 @@ public class ServerCheckerJob extends Job {
     @NonNull
     @Override
     protected Result onRunJob(@NonNull Params params) {
-        return ServerCheckerJobRunner_.getInstance_(getContext()).run();
+        try {
+            ServerCheckerJobRunner_.getInstance_(getContext()).run();
+            // Check the RSS feeds within the same wake up, if these are due
+            ServerCheckerSchedule schedule = ServerCheckerSchedule_.getInstance_(getContext());
+            if (schedule.isRssCheckDue()) {
+                RssCheckerJobRunner_.getInstance_(getContext()).run();
+                schedule.registerRssCheck();
+            }
+        } finally {
+            DataUsageStore_.getInstance_(getContext()).flush();
+            // This is a single job, so always plan the next one, also if this check was skipped or failed
+            schedule(getContext());
+        }
+        return Result.SUCCESS;
     }
 
 }
@@ -18,36 +18,60 @@ package org.transdroid.core.service;
 
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import androidx.core.app.NotificationCompat;
-import com.evernote.android.job.Job;
 import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.RootContext;
 import org.androidannotations.annotations.SystemService;
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.transdroid.R;
+import org.transdroid.core.app.cache.SnapshotCache;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.NotificationSettings;
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.gui.TorrentsActivity_;
 import org.transdroid.core.gui.log.Log;
+import org.transdroid.core.widget.ListWidgetConfig;
+import org.transdroid.core.widget.ListWidgetProvider_;
+import org.transdroid.core.widget.WidgetDataCache;
 import org.transdroid.daemon.IDaemonAdapter;
+import org.transdroid.daemon.Label;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.task.DaemonTaskResult;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+import org.transdroid.daemon.util.DataUsage;
 
+import java.nio.LongBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @EBean
 public class ServerCheckerJobRunner {
 
+    private static final int MAX_PARALLEL_SERVERS = 4;
+    private static final long SERVER_DEADLINE = 30 * 1000; // 30 seconds
+    private static final long JOB_DEADLINE = 2 * 60 * 1000; // 2 minutes
+
     @RootContext
     protected Context context;
     @Bean
@@ -58,168 +82,371 @@ public class ServerCheckerJobRunner {
     protected NotificationSettings notificationSettings;
     @Bean
     protected ApplicationSettings applicationSettings;
+    @Bean
+    protected ServerStatsStore serverStatsStore;
+    @Bean
+    protected ServerCheckerSchedule serverCheckerSchedule;
+    @Bean
+    protected SnapshotCache snapshotCache;
+    @Bean
+    protected WidgetDataCache widgetDataCache;
     @SystemService
     protected NotificationManager notificationManager;
 
-    Job.Result run() {
+    /**
+     * Checks all servers once. A check that is skipped (such as when not connected) is not retried by itself: like after
+     * any other check, the {@link ServerCheckerJob} plans the next check as the {@link ServerCheckerSchedule} says.
+     */
+    void run() {
 
         if (!connectivityHelper.shouldPerformBackgroundActions() || !notificationSettings.isEnabledForTorrents()) {
             log.d(this,
                     "Skip the server checker service, as background data is disabled, the service is disabled or we are not connected.");
-            return Job.Result.RESCHEDULE;
+            serverCheckerSchedule.registerSkipped();
+            return;
         }
 
-        int notifyBase = 10000;
+        // This is the one background pass that retrieves the servers' torrents: for the notifications, but also for the
+        // widgets that show a server, so these do not need to retrieve the same torrents themselves
+        Map<Integer, List<Integer>> widgets = getWidgetsPerServer();
+        List<ServerSetting> servers = new ArrayList<>();
         for (ServerSetting server : applicationSettings.getAllServerSettings()) {
-
             // No need to check if the server is not properly configured or none of the two types of notifications are
-            // enabled by the user for this specific server
+            // enabled by the user for this specific server, nor is it shown in a widget
             if (server.getType() == null || server.getAddress() == null || server.getAddress().equals("")
-                    || !(server.shouldAlarmOnFinishedDownload() || server.shouldAlarmOnNewTorrent()))
+                    || !(server.shouldAlarmOnFinishedDownload() || server.shouldAlarmOnNewTorrent() || widgets.containsKey(server.getOrder())))
                 continue;
+            servers.add(server);
+        }
+        if (servers.isEmpty()) {
+            serverCheckerSchedule.registerSkipped();
+            return;
+        }
 
-            // Get the statistics for the last time we checked this server
-            JSONArray lastStats = applicationSettings.getServerLastStats(server);
+        // Check the servers in parallel, so a slow or unreachable server does not delay the others
+        String connectedNetwork = connectivityHelper.getConnectedNetworkName();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(servers.size(), MAX_PARALLEL_SERVERS));
+        CompletionService<ServerCheckResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<ServerCheckResult>, ServerCheck> running = new HashMap<>();
+        for (ServerSetting server : servers) {
+            ServerCheck check = new ServerCheck(server, connectedNetwork);
+            running.put(completion.submit(check), check);
+        }
 
-            // Synchronously retrieve torrents listing
-            IDaemonAdapter adapter = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), context);
-            DaemonTaskResult result = RetrieveTask.create(adapter).execute(log);
-            if (!(result instanceof RetrieveTaskSuccessResult)) {
-                // Cannot retrieve torrents at this time
-                continue;
+        // Gather the results as they come in, until all servers responded or the deadlines passed
+        List<ServerCheckResult> results = new ArrayList<>();
+        long jobDeadline = SystemClock.elapsedRealtime() + JOB_DEADLINE;
+        try {
+            while (!running.isEmpty()) {
+                long now = SystemClock.elapsedRealtime();
+                long wait = jobDeadline - now;
+                if (wait <= 0) {
+                    log.d(this, running.size() + " servers did not respond before the checker deadline; skipped these");
+                    break;
+                }
+                Iterator<Map.Entry<Future<ServerCheckResult>, ServerCheck>> checks = running.entrySet().iterator();
+                while (checks.hasNext()) {
+                    Map.Entry<Future<ServerCheckResult>, ServerCheck> check = checks.next();
+                    long serverDeadline = check.getValue().getDeadline();
+                    if (serverDeadline <= now) {
+                        log.d(this, check.getValue().server.getName() + ": No response before the server deadline; skipped");
+                        check.getKey().cancel(true);
+                        checks.remove();
+                    } else {
+                        wait = Math.min(wait, serverDeadline - now);
+                    }
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+                Future<ServerCheckResult> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null || running.remove(done) == null) {
+                    // Some deadline passed or this server was already given up on
+                    continue;
+                }
+                try {
+                    ServerCheckResult result = done.get();
+                    if (result != null) {
+                        // Only now the result is collected it is stored; late checks are thrown away entirely, such
+                        // that their new and finished torrents are still notified the next time
+                        store(result);
+                        results.add(result);
+                    }
+                } catch (ExecutionException e) {
+                    log.e(this, "Server check failed: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<ServerCheckResult> unfinished : running.keySet()) {
+                unfinished.cancel(true);
             }
-            List<Torrent> retrieved = ((RetrieveTaskSuccessResult) result).getTorrents();
-            log.d(this, server.getName() + ": Retrieved torrent listing");
+            executor.shutdownNow();
+        }
 
-            // Preload filters to match torrent names
-            String[] excludeFilters = null;
-            String[] includeFilters = null;
-            if (!TextUtils.isEmpty(server.getExcludeFilter())) {
-                excludeFilters = server.getExcludeFilter().split("\\|");
-                for (int i = 0; i < excludeFilters.length; i++) {
-                    excludeFilters[i] = excludeFilters[i].toUpperCase();
+        // Notify on new and now-done torrents, for all servers at once
+        boolean downloading = false;
+        int nearestEta = -1;
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        for (ServerCheckResult result : results) {
+            notifyTorrents(result);
+            // The widgets of this server will show the torrents as just stored, rather than retrieving these again
+            List<Integer> serverWidgets = widgets.get(result.server.getOrder());
+            if (serverWidgets != null) {
+                for (int appWidgetId : serverWidgets) {
+                    appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetId, R.id.torrents_list);
                 }
             }
-            if (!TextUtils.isEmpty(server.getIncludeFilter())) {
-                includeFilters = server.getIncludeFilter().split("\\|");
-                for (int i = 0; i < includeFilters.length; i++) {
-                    includeFilters[i] = includeFilters[i].toUpperCase();
-                }
+            downloading |= result.downloading;
+            if (result.nearestEta >= 0 && (nearestEta < 0 || result.nearestEta < nearestEta)) {
+                nearestEta = result.nearestEta;
             }
+        }
+        if (results.isEmpty()) {
+            serverCheckerSchedule.registerSkipped();
+        } else {
+            serverCheckerSchedule.registerCheck(downloading, nearestEta);
+        }
+    }
 
-            // Check for differences between the last and the current stats
-            JSONArray currentStats = new JSONArray();
-            List<Torrent> newTorrents = new ArrayList<>();
-            List<Torrent> doneTorrents = new ArrayList<>();
-            for (Torrent torrent : retrieved) {
+    /**
+     * Retrieves the torrents of a single server and compares these with the torrents as seen the last time this server was
+     * checked.
+     *
+     * @param server           The server to check
+     * @param connectedNetwork The name of the network we are connected to now, to connect to the right server address
+     * @return The new and newly finished torrents, or null if the torrents could not be retrieved
+     */
+    private ServerCheckResult check(ServerSetting server, String connectedNetwork) {
 
-                // Remember this torrent for the next time
-                try {
-                    currentStats.put(new JSONObject().put("id", torrent.getUniqueID()).put("done",
-                            torrent.getPartDone() == 1F));
-                } catch (JSONException e) {
-                    // Can't build the JSON object; this should not happen and we can safely ignore it
-                }
+        // Get the statistics for the last time we checked this server
+        boolean legacyStats = false;
+        LongBuffer lastStats = serverStatsStore.read(server);
+        if (lastStats == null) {
+            lastStats = readLegacyStats(server);
+            legacyStats = lastStats != null;
+        }
 
-                // See if this torrent was done the last time we checked
-                if (lastStats != null) {
-                    Boolean wasDone = findLastDoneStat(lastStats, torrent);
-                    boolean shouldNotify = matchFilters(torrent.getName(), excludeFilters, includeFilters);
-                    if (server.shouldAlarmOnNewTorrent() && shouldNotify && wasDone == null) {
-                        // This torrent wasn't present earlier
-                        newTorrents.add(torrent);
-                        continue;
-                    }
-                    if (server.shouldAlarmOnFinishedDownload() && shouldNotify && torrent.getPartDone() == 1F && wasDone != null && !wasDone)
-                        // This torrent is now done, but wasn't before
-                        doneTorrents.add(torrent);
+        // Synchronously retrieve torrents listing
+        IDaemonAdapter adapter = server.getServerAdapter(connectedNetwork, context);
+        DataUsage.Feature previous = DataUsage.setFeature(DataUsage.Feature.Checker);
+        DaemonTaskResult result;
+        try {
+            result = RetrieveTask.create(adapter).execute(log);
+        } finally {
+            DataUsage.setFeature(previous);
+        }
+        if (!(result instanceof RetrieveTaskSuccessResult)) {
+            // Cannot retrieve torrents at this time
+            return null;
+        }
+        List<Torrent> retrieved = ((RetrieveTaskSuccessResult) result).getTorrents();
+        log.d(this, server.getName() + ": Retrieved torrent listing");
+
+        // Preload filters to match torrent names
+        String[] excludeFilters = null;
+        String[] includeFilters = null;
+        if (!TextUtils.isEmpty(server.getExcludeFilter())) {
+            excludeFilters = server.getExcludeFilter().split("\\|");
+            for (int i = 0; i < excludeFilters.length; i++) {
+                excludeFilters[i] = excludeFilters[i].toUpperCase();
+            }
+        }
+        if (!TextUtils.isEmpty(server.getIncludeFilter())) {
+            includeFilters = server.getIncludeFilter().split("\\|");
+            for (int i = 0; i < includeFilters.length; i++) {
+                includeFilters[i] = includeFilters[i].toUpperCase();
+            }
+        }
+
+        // Build the (sorted) statistics of the current torrents, such that they can be compared to the last statistics
+        // in a single pass over both, and remember in which order these were retrieved
+        // Also see when the first of the downloading torrents should be done, to plan the next check
+        int count = retrieved.size();
+        long[] currentStats = new long[count];
+        Integer[] order = new Integer[count];
+        boolean downloading = false;
+        int nearestEta = -1;
+        for (int i = 0; i < count; i++) {
+            Torrent torrent = retrieved.get(i);
+            currentStats[i] = ServerStatsStore.toEntry(torrent.getUniqueID(), torrent.getPartDone() == 1F);
+            order[i] = i;
+            if (torrent.isDownloading(false)) {
+                downloading = true;
+                if (torrent.getEta() > 0 && (nearestEta < 0 || torrent.getEta() < nearestEta)) {
+                    nearestEta = torrent.getEta();
                 }
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(currentStats[a], currentStats[b]));
 
+        // Check for differences between the last and the current stats
+        List<Torrent> newTorrents = new ArrayList<>();
+        List<Torrent> doneTorrents = new ArrayList<>();
+        if (lastStats != null) {
+            Boolean[] wasDone = new Boolean[count];
+            int last = 0;
+            for (int i = 0; i < count; i++) {
+                long key = ServerStatsStore.getKey(currentStats[order[i]]);
+                while (last < lastStats.limit() && ServerStatsStore.getKey(lastStats.get(last)) < key) {
+                    last++;
+                }
+                if (last < lastStats.limit() && ServerStatsStore.getKey(lastStats.get(last)) == key) {
+                    wasDone[order[i]] = ServerStatsStore.isDone(lastStats.get(last));
+                }
             }
+            for (int i = 0; i < count; i++) {
+                Torrent torrent = retrieved.get(i);
+                boolean shouldNotify = matchFilters(torrent.getName(), excludeFilters, includeFilters);
+                if (server.shouldAlarmOnNewTorrent() && shouldNotify && wasDone[i] == null) {
+                    // This torrent wasn't present earlier
+                    newTorrents.add(torrent);
+                    continue;
+                }
+                if (server.shouldAlarmOnFinishedDownload() && shouldNotify && torrent.getPartDone() == 1F && wasDone[i] != null && !wasDone[i])
+                    // This torrent is now done, but wasn't before
+                    doneTorrents.add(torrent);
+            }
+        }
 
-            // Store the now-current statistics on torrents for the next time we check this server
-            applicationSettings.setServerLastStats(server, currentStats);
-
-            // Notify on new and now-done torrents for this server
-            log.d(this, server.getName() + ": " + newTorrents.size() + " new torrents, " + doneTorrents.size()
-                    + " newly finished torrents.");
-            Intent i = new Intent(context, TorrentsActivity_.class);
-            i.putExtra("org.transdroid.START_SERVER", server.getOrder());
-            // Should start the main activity directly into this server
-            PendingIntent pi = PendingIntent.getActivity(context, notifyBase + server.getOrder(), i,
-                    PendingIntent.FLAG_CANCEL_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            ArrayList<Torrent> affectedTorrents = new ArrayList<>(newTorrents.size() + doneTorrents.size());
-            affectedTorrents.addAll(newTorrents);
-            affectedTorrents.addAll(doneTorrents);
-
-            String title;
-            if (newTorrents.size() > 0 && doneTorrents.size() > 0) {
-                // Note: use the 'one' plural iif 1 new torrent was added and 1 was newly finished
-                title = context.getResources().getQuantityString(R.plurals.status_service_finished,
-                        newTorrents.size() + doneTorrents.size() == 2 ? 1 : 2, Integer.toString(newTorrents.size()),
-                        Integer.toString(doneTorrents.size()));
-            } else if (newTorrents.size() > 0) {
-                title = context.getResources().getQuantityString(R.plurals.status_service_added, newTorrents.size(),
-                        Integer.toString(newTorrents.size()));
-            } else if (doneTorrents.size() > 0) {
-                title = context.getResources().getQuantityString(R.plurals.status_service_finished, doneTorrents.size(),
-                        Integer.toString(doneTorrents.size()));
-            } else {
-                // No notification to show
+        // The now-current statistics on torrents are stored for the next time we check this server, see store()
+        Arrays.sort(currentStats);
+
+        log.d(this, server.getName() + ": " + newTorrents.size() + " new torrents, " + doneTorrents.size()
+                + " newly finished torrents.");
+        return new ServerCheckResult(server, retrieved, ((RetrieveTaskSuccessResult) result).getLabels(), currentStats,
+                legacyStats, newTorrents, doneTorrents, downloading, nearestEta);
+    }
+
+    /**
+     * Stores the torrents of a checked server: for the widgets that show this server and for the next app start, and the
+     * statistics to compare with the next time this server is checked.
+     */
+    private void store(ServerCheckResult result) {
+        snapshotCache.write(result.server, result.torrents, result.labels);
+        widgetDataCache.put(result.server, result.torrents);
+        serverStatsStore.write(result.server, result.stats);
+        if (result.legacyStats) {
+            applicationSettings.removeServerLastStats(result.server);
+        }
+    }
+
+    /**
+     * Looks up which list widgets are placed, and which server each of these shows.
+     *
+     * @return The IDs of the placed widgets, per server order number
+     */
+    private Map<Integer, List<Integer>> getWidgetsPerServer() {
+        Map<Integer, List<Integer>> widgets = new HashMap<>();
+        int[] appWidgetIds = AppWidgetManager.getInstance(context).getAppWidgetIds(new ComponentName(context, ListWidgetProvider_.class));
+        if (appWidgetIds == null) {
+            return widgets;
+        }
+        for (int appWidgetId : appWidgetIds) {
+            ListWidgetConfig config = applicationSettings.getWidgetConfig(appWidgetId);
+            if (config == null || config.getServerId() < 0) {
                 continue;
             }
-            StringBuilder forStringBuilder = new StringBuilder();
-            for (Torrent affected : affectedTorrents) {
-                forStringBuilder.append(affected.getName()).append(", ");
-            }
-            String forString = forStringBuilder.toString();
-            forString = forString.substring(0, forString.length() - 2);
-
-            // Build the basic notification
-            final NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotificationChannels.CHANNEL_SERVER_CHECKER)
-                    .setSmallIcon(R.drawable.ic_stat_notification)
-                    .setTicker(title)
-                    .setContentTitle(title).setContentText(forString)
-                    .setNumber(affectedTorrents.size())
-                    .setLights(notificationSettings.getDesiredLedColour(), 600, 1000)
-                    .setSound(notificationSettings.getSound())
-                    .setAutoCancel(true)
-                    .setContentIntent(pi);
-            if (notificationSettings.shouldVibrate())
-                builder.setVibrate(notificationSettings.getDefaultVibratePattern());
-
-            // Add at most 5 lines with the affected torrents
-            if (android.os.Build.VERSION.SDK_INT >= 16) {
-                final NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle(builder);
-                if (affectedTorrents.size() < 6) {
-                    for (Torrent affectedTorrent : affectedTorrents) {
-                        inbox.addLine(affectedTorrent.getName());
-                    }
-                } else {
-                    for (int j = 0; j < 4; j++) {
-                        inbox.addLine(affectedTorrents.get(j).getName());
-                    }
-                    inbox.addLine(context.getString(R.string.status_service_andothers, affectedTorrents.get(5).getName()));
-                }
-                builder.setStyle(inbox);
+            List<Integer> serverWidgets = widgets.get(config.getServerId());
+            if (serverWidgets == null) {
+                serverWidgets = new ArrayList<>();
+                widgets.put(config.getServerId(), serverWidgets);
             }
-            notificationManager.notify(notifyBase + server.getOrder(), builder.build());
+            serverWidgets.add(appWidgetId);
+        }
+        return widgets;
+    }
+
+    private void notifyTorrents(ServerCheckResult result) {
 
+        ServerSetting server = result.server;
+        List<Torrent> newTorrents = result.newTorrents;
+        List<Torrent> doneTorrents = result.doneTorrents;
+        int notifyBase = 10000;
+        Intent i = new Intent(context, TorrentsActivity_.class);
+        i.putExtra("org.transdroid.START_SERVER", server.getOrder());
+        // Should start the main activity directly into this server
+        PendingIntent pi = PendingIntent.getActivity(context, notifyBase + server.getOrder(), i,
+                PendingIntent.FLAG_CANCEL_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        ArrayList<Torrent> affectedTorrents = new ArrayList<>(newTorrents.size() + doneTorrents.size());
+        affectedTorrents.addAll(newTorrents);
+        affectedTorrents.addAll(doneTorrents);
+
+        String title;
+        if (newTorrents.size() > 0 && doneTorrents.size() > 0) {
+            // Note: use the 'one' plural iif 1 new torrent was added and 1 was newly finished
+            title = context.getResources().getQuantityString(R.plurals.status_service_finished,
+                    newTorrents.size() + doneTorrents.size() == 2 ? 1 : 2, Integer.toString(newTorrents.size()),
+                    Integer.toString(doneTorrents.size()));
+        } else if (newTorrents.size() > 0) {
+            title = context.getResources().getQuantityString(R.plurals.status_service_added, newTorrents.size(),
+                    Integer.toString(newTorrents.size()));
+        } else if (doneTorrents.size() > 0) {
+            title = context.getResources().getQuantityString(R.plurals.status_service_finished, doneTorrents.size(),
+                    Integer.toString(doneTorrents.size()));
+        } else {
+            // No notification to show
+            return;
+        }
+        StringBuilder forStringBuilder = new StringBuilder();
+        for (Torrent affected : affectedTorrents) {
+            forStringBuilder.append(affected.getName()).append(", ");
         }
+        String forString = forStringBuilder.toString();
+        forString = forString.substring(0, forString.length() - 2);
+
+        // Build the basic notification
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotificationChannels.CHANNEL_SERVER_CHECKER)
+                .setSmallIcon(R.drawable.ic_stat_notification)
+                .setTicker(title)
+                .setContentTitle(title).setContentText(forString)
+                .setNumber(affectedTorrents.size())
+                .setLights(notificationSettings.getDesiredLedColour(), 600, 1000)
+                .setSound(notificationSettings.getSound())
+                .setAutoCancel(true)
+                .setContentIntent(pi);
+        if (notificationSettings.shouldVibrate())
+            builder.setVibrate(notificationSettings.getDefaultVibratePattern());
+
+        // Add at most 5 lines with the affected torrents
+        if (android.os.Build.VERSION.SDK_INT >= 16) {
+            final NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle(builder);
+            if (affectedTorrents.size() < 6) {
+                for (Torrent affectedTorrent : affectedTorrents) {
+                    inbox.addLine(affectedTorrent.getName());
+                }
+            } else {
+                for (int j = 0; j < 4; j++) {
+                    inbox.addLine(affectedTorrents.get(j).getName());
+                }
+                inbox.addLine(context.getString(R.string.status_service_andothers, affectedTorrents.get(5).getName()));
+            }
+            builder.setStyle(inbox);
+        }
+        notificationManager.notify(notifyBase + server.getOrder(), builder.build());
 
-        return Job.Result.SUCCESS;
     }
 
-    private Boolean findLastDoneStat(JSONArray lastStats, Torrent torrent) {
-        for (int i = 0; i < lastStats.length(); i++) {
-            try {
-                if (lastStats.getJSONObject(i).getString("id").equals(torrent.getUniqueID()))
-                    return lastStats.getJSONObject(i).getBoolean("done");
-            } catch (JSONException e) {
-                return null;
+    /**
+     * Reads the statistics as stored in the preferences by earlier versions, so no notifications are missed or
+     * duplicated on the first check after an upgrade.
+     */
+    private LongBuffer readLegacyStats(ServerSetting server) {
+        JSONArray legacy = applicationSettings.getServerLastStats(server);
+        if (legacy == null)
+            return null;
+        long[] entries = new long[legacy.length()];
+        try {
+            for (int i = 0; i < legacy.length(); i++) {
+                entries[i] = ServerStatsStore.toEntry(legacy.getJSONObject(i).getString("id"),
+                        legacy.getJSONObject(i).getBoolean("done"));
             }
+        } catch (JSONException e) {
+            return null;
         }
-        return null;
+        Arrays.sort(entries);
+        return LongBuffer.wrap(entries);
     }
 
     private boolean matchFilters(String name, String[] excludeFilters, String[] includeFilters) {
@@ -244,4 +471,63 @@ public class ServerCheckerJobRunner {
         return true;
     }
 
+    /**
+     * A check of a single server, as run on the executor, which knows its own deadline once it started.
+     */
+    private class ServerCheck implements Callable<ServerCheckResult> {
+
+        final ServerSetting server;
+        final String connectedNetwork;
+        private volatile long startedAt = -1;
+
+        ServerCheck(ServerSetting server, String connectedNetwork) {
+            this.server = server;
+            this.connectedNetwork = connectedNetwork;
+        }
+
+        @Override
+        public ServerCheckResult call() {
+            startedAt = SystemClock.elapsedRealtime();
+            return check(server, connectedNetwork);
+        }
+
+        long getDeadline() {
+            long started = startedAt;
+            if (started < 0) {
+                // Still waiting for a free thread
+                return Long.MAX_VALUE;
+            }
+            return started + Math.max(SERVER_DEADLINE, 2L * server.getTimeoutInMilliseconds());
+        }
+
+    }
+
+    private static final class ServerCheckResult {
+
+        final ServerSetting server;
+        final List<Torrent> torrents;
+        final List<Label> labels;
+        final long[] stats;
+        final boolean legacyStats;
+        final List<Torrent> newTorrents;
+        final List<Torrent> doneTorrents;
+        final boolean downloading;
+        final int nearestEta;
+
+        ServerCheckResult(ServerSetting server, List<Torrent> torrents, List<Label> labels, long[] stats,
+                          boolean legacyStats, List<Torrent> newTorrents, List<Torrent> doneTorrents, boolean downloading,
+                          int nearestEta) {
+            this.server = server;
+            this.torrents = torrents;
+            this.labels = labels;
+            this.stats = stats;
+            this.legacyStats = legacyStats;
+            this.newTorrents = newTorrents;
+            this.doneTorrents = doneTorrents;
+            this.downloading = downloading;
+            this.nearestEta = nearestEta;
+        }
+
+    }
+
 }
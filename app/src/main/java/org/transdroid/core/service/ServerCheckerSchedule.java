@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.app.settings.NotificationSettings;
+
+/**
+ * Decides when the background server checker should run next, based on what it saw the last time. If torrents are
+ * downloading, the next check is planned shortly after the first of these should be done, so the 'finished'
+ * notification is timely. If nothing is downloading at all, checks are spread out further with every idle check. The
+ * user's notification interval is the normal interval; only while downloading it may be shortened, and never on a
+ * metered network. The RSS feeds are checked within the same pass, at the normal interval.
+ */
+@EBean(scope = Scope.Singleton)
+public class ServerCheckerSchedule {
+
+    private static final long MIN_INTERVAL = 15 * 60 * 1000; // 15 minutes
+    private static final long MIN_DELAY = 60 * 1000; // 1 minute
+    private static final long MAX_INTERVAL = 24 * 60 * 60 * 1000; // 24 hours
+    private static final long ETA_MARGIN = 2 * 60 * 1000; // 2 minutes
+    private static final int MAX_IDLE_DOUBLINGS = 2;
+    private static final String PREF_NEXT_CHECK = "system_checker_nextcheck";
+    private static final String PREF_IDLE_CHECKS = "system_checker_idlechecks";
+    private static final String PREF_LAST_RSS_CHECK = "system_checker_lastrsscheck";
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected NotificationSettings notificationSettings;
+    @Bean
+    protected ConnectivityHelper connectivityHelper;
+
+    /**
+     * Calculates the interval until the next check.
+     *
+     * @param userInterval The notification interval as set by the user, in milliseconds
+     * @param downloading  Whether any torrent was downloading during the last check
+     * @param nearestEta   The lowest ETA of the downloading torrents, in seconds, or -1 if none of these has an ETA
+     * @param idleChecks   The number of successive checks before this one in which nothing was downloading
+     * @param metered      Whether we are now connected to a metered network
+     * @return The interval until the next check, in milliseconds
+     */
+    static long calculateInterval(long userInterval, boolean downloading, int nearestEta, int idleChecks, boolean metered) {
+        if (downloading) {
+            if (nearestEta < 0 || metered) {
+                return userInterval;
+            }
+            // Check again just after the first download should be done, but not more often than allowed
+            return Math.max(MIN_INTERVAL, Math.min(userInterval, nearestEta * 1000L + ETA_MARGIN));
+        }
+        // Nothing is downloading, so only new torrents can be notified on: back off
+        long interval = userInterval << Math.min(idleChecks, MAX_IDLE_DOUBLINGS);
+        return Math.max(userInterval, Math.min(interval, MAX_INTERVAL));
+    }
+
+    /**
+     * Registers the outcome of a server check, to plan the next check.
+     *
+     * @param downloading Whether any torrent on any server was downloading
+     * @param nearestEta  The lowest ETA of the downloading torrents, in seconds, or -1 if none of these has an ETA
+     */
+    public void registerCheck(boolean downloading, int nearestEta) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int idleChecks = prefs.getInt(PREF_IDLE_CHECKS, 0);
+        long interval = calculateInterval(notificationSettings.getInvervalInMilliseconds(), downloading, nearestEta, idleChecks,
+                connectivityHelper.isNetworkMetered());
+        prefs.edit()
+                .putLong(PREF_NEXT_CHECK, System.currentTimeMillis() + interval)
+                .putInt(PREF_IDLE_CHECKS, downloading ? 0 : idleChecks + 1)
+                .apply();
+    }
+
+    /**
+     * Registers that the servers could not be checked (for example because there is no connection), such that the next
+     * check is planned after the normal interval.
+     */
+    public void registerSkipped() {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(PREF_NEXT_CHECK, System.currentTimeMillis() + notificationSettings.getInvervalInMilliseconds())
+                .apply();
+    }
+
+    /**
+     * Returns the time until the next planned check. If no check was planned yet this is the normal interval, and if
+     * the planned check is overdue (the job was not scheduled), the check will be done shortly.
+     *
+     * @return The time until the next check, in milliseconds
+     */
+    public long getNextCheckDelay() {
+        long userInterval = notificationSettings.getInvervalInMilliseconds();
+        long nextCheck = PreferenceManager.getDefaultSharedPreferences(context).getLong(PREF_NEXT_CHECK, -1);
+        if (nextCheck < 0) {
+            return userInterval;
+        }
+        long delay = nextCheck - System.currentTimeMillis();
+        if (notificationSettings.isEnabledForRss()) {
+            // RSS feeds are checked in the same pass, which should be at their normal interval
+            delay = Math.min(delay, getRssCheckDelay());
+        }
+        return Math.max(MIN_DELAY, Math.min(delay, userInterval << MAX_IDLE_DOUBLINGS));
+    }
+
+    /**
+     * Whether the RSS feeds should be checked in this background pass, which is the case if these were last checked
+     * (about) the normal interval ago.
+     */
+    public boolean isRssCheckDue() {
+        return notificationSettings.isEnabledForRss() && getRssCheckDelay() < MIN_INTERVAL / 2;
+    }
+
+    /**
+     * Registers that the RSS feeds were checked just now.
+     */
+    public void registerRssCheck() {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(PREF_LAST_RSS_CHECK, System.currentTimeMillis())
+                .apply();
+    }
+
+    private long getRssCheckDelay() {
+        long lastCheck = PreferenceManager.getDefaultSharedPreferences(context).getLong(PREF_LAST_RSS_CHECK, 0);
+        return lastCheck + notificationSettings.getInvervalInMilliseconds() - System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.service;
+
+import android.content.Context;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.app.settings.ServerSetting;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.util.BinaryHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Stores which torrents the background server checker saw on a server the last time, and whether these were done. Every
+ * torrent is stored as one 64-bit entry: a hash of its unique id with the lowest bit replaced by its done state. Entries
+ * are written sorted, such that the last and current torrents can be compared in a single pass, and read back directly
+ * from a memory-mapped file.
+ */
+@EBean(scope = Scope.Singleton)
+public class ServerStatsStore {
+
+    private static final int STATS_MAGIC = 0x54445354; // TDST
+    private static final int STATS_VERSION = 1;
+    private static final long DONE_BIT = 1L;
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+
+    /**
+     * Builds the stored entry for some torrent.
+     *
+     * @param uniqueId The torrent's unique id, as reported by the server
+     * @param done     Whether the torrent is done downloading
+     * @return The 64-bit entry to store for this torrent
+     */
+    public static long toEntry(String uniqueId, boolean done) {
+        // The lowest bit of the hash is used for the done state
+        return (BinaryHelper.hash64(uniqueId) & ~DONE_BIT) | (done ? DONE_BIT : 0L);
+    }
+
+    /**
+     * Returns the part of an entry that identifies the torrent, to compare entries without their done state.
+     */
+    public static long getKey(long entry) {
+        return entry & ~DONE_BIT;
+    }
+
+    public static boolean isDone(long entry) {
+        return (entry & DONE_BIT) == DONE_BIT;
+    }
+
+    /**
+     * Reads the entries of the torrents that were seen on some server the last time it was checked.
+     *
+     * @param server The server to read the stored entries for
+     * @return The sorted entries, or null if the server was not checked before
+     */
+    public LongBuffer read(ServerSetting server) {
+        String identifier = server.getUniqueIdentifier();
+        if (identifier == null) {
+            return null;
+        }
+        File file = getStatsFile(identifier);
+        try {
+            ByteBuffer in = BinaryHelper.mapReadOnly(file);
+            if (in == null) {
+                return null;
+            }
+            if (in.getInt() != STATS_MAGIC || in.getInt() != STATS_VERSION || !identifier.equals(BinaryHelper.readString(in))) {
+                // Old format or a hash collision with another server: ignore
+                return null;
+            }
+            int count = in.getInt();
+            LongBuffer entries = in.slice().asLongBuffer();
+            if (entries.remaining() < count) {
+                throw new IOException("File is truncated");
+            }
+            entries.limit(count);
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            log.e(this, "Cannot read server stats " + file.toString() + ": " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the entries of the torrents that are now seen on some server, replacing the earlier stored entries.
+     *
+     * @param server  The server that was checked
+     * @param entries The entries of all torrents on the server, which must be sorted
+     */
+    public void write(ServerSetting server, final long[] entries) {
+        final String identifier = server.getUniqueIdentifier();
+        if (identifier == null) {
+            return;
+        }
+        File file = getStatsFile(identifier);
+        try {
+            BinaryHelper.writeAtomically(file, out -> {
+                out.writeInt(STATS_MAGIC);
+                out.writeInt(STATS_VERSION);
+                BinaryHelper.writeString(out, identifier);
+                out.writeInt(entries.length);
+                for (long entry : entries) {
+                    out.writeLong(entry);
+                }
+            });
+        } catch (IOException e) {
+            log.e(this, "Cannot write server stats " + file.toString() + ": " + e.toString());
+        }
+    }
+
+    private File getStatsFile(String identifier) {
+        return new File(new File(context.getFilesDir(), "serverstats"), Integer.toHexString(identifier.hashCode()) + ".bin");
+    }
+
+}
@@ -58,6 +58,7 @@ import org.transdroid.daemon.TorrentsSortBy;
 import org.transdroid.daemon.task.DaemonTaskResult;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+import org.transdroid.daemon.util.DataUsage;
 import org.transdroid.daemon.util.FileSizeConverter;
 
 import java.util.ArrayList;
@@ -208,7 +209,13 @@ public class ListWidgetConfigActivity extends AppCompatActivity {
         // Create a connection object and retrieve the live torrents
         IDaemonAdapter connection =
                 ((ServerSetting) serverSpinner.getSelectedItem()).getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
-        DaemonTaskResult result = RetrieveTask.create(connection).execute(log);
+        DataUsage.Feature previous = DataUsage.setFeature(DataUsage.Feature.Widget);
+        DaemonTaskResult result;
+        try {
+            result = RetrieveTask.create(connection).execute(log);
+        } finally {
+            DataUsage.setFeature(previous);
+        }
         if (result instanceof RetrieveTaskSuccessResult) {
             // Success; show the active torrents in the widget preview
             onTorrentsRetrieved(((RetrieveTaskSuccessResult) result).getTorrents(), ((RetrieveTaskSuccessResult) result).getLabels());
@@ -39,6 +39,9 @@ import org.transdroid.core.gui.log.Log_;
 import org.transdroid.core.service.ControlService;
 import org.transdroid.core.service.ControlService_;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * The provider of a list-style Transdroid widget, which controls the general loading and (touch) event handling. The list rows' remote views are
  * loaded in the accompanying {@link ListWidgetViewsService}.
@@ -54,9 +57,24 @@ public class ListWidgetProvider extends AppWidgetProvider {
     public static final String EXTRA_SERVER = "extra_server";
     public static final String EXTRA_REFRESH = "extra_refresh";
 
+    private static final Set<Integer> refreshRequests = new HashSet<>();
+
     @Bean
     protected ApplicationSettings applicationSettings;
 
+    /**
+     * Returns whether the user asked to refresh some widget (and forgets about the request), in which case the torrents
+     * should be retrieved from the server rather than shown as recently retrieved by the background sync pass.
+     *
+     * @param appWidgetId The ID of the widget that is being updated
+     * @return True if the widget is updated because the user asked so; false otherwise
+     */
+    static boolean consumeRefreshRequest(int appWidgetId) {
+        synchronized (refreshRequests) {
+            return refreshRequests.remove(appWidgetId);
+        }
+    }
+
     /**
      * Loads and sets up the layout for some specific app widget given the user's widget settings. Note that the views for the list view rows are
      * loaded separately in the {@link WidgetViewsFactory}.
@@ -151,6 +169,9 @@ public class ListWidgetProvider extends AppWidgetProvider {
         // Refresh a specific app widget
         if (intent.hasExtra(EXTRA_REFRESH)) {
             // Manually requested a refresh for the app widget of which the ID was supplied
+            synchronized (refreshRequests) {
+                refreshRequests.add(appWidgetId);
+            }
             RemoteViews views = buildRemoteViews(context, appWidgetId, applicationSettings.getWidgetConfig(appWidgetId));
             if (views != null) {
                 AppWidgetManager.getInstance(context).updateAppWidget(appWidgetId, views);
@@ -29,23 +29,14 @@ import org.transdroid.R;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.ApplicationSettings_;
 import org.transdroid.core.app.settings.ServerSetting;
-import org.transdroid.core.app.settings.SystemSettings;
 import org.transdroid.core.app.settings.SystemSettings_;
 import org.transdroid.core.gui.lists.LocalTorrent;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.log.Log_;
-import org.transdroid.core.service.ConnectivityHelper_;
-import org.transdroid.daemon.Daemon;
-import org.transdroid.daemon.IDaemonAdapter;
 import org.transdroid.daemon.Torrent;
-import org.transdroid.daemon.TorrentsComparator;
-import org.transdroid.daemon.task.DaemonTaskResult;
-import org.transdroid.daemon.task.RetrieveTask;
-import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+import org.transdroid.daemon.TorrentsAggregate;
 import org.transdroid.daemon.util.FileSizeConverter;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -72,6 +63,8 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
     private final int appWidgetId;
     private final Log log;
     private List<Torrent> torrents = null;
+    private RemoteViews[] rows = null;
+    private boolean rowsDarkTheme = false;
     private ListWidgetConfig config = null;
 
     public WidgetViewsFactory(Context applicationContext, Intent intent) {
@@ -100,60 +93,40 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
         if (server == null) {
             // TODO: Show error text some how in the remote view, perhaps via the EmptyView's text?
             log.e(context, "The server for which this widget was created no longer exists");
-            if (torrents != null) {
-                torrents.clear();
-            }
+            torrents = null;
+            rows = null;
             return;
         }
 
-        // Load the torrents; synchronously
-        IDaemonAdapter connection =
-                server.getServerAdapter(ConnectivityHelper_.getInstance_(context).getConnectedNetworkName(),
-                        context);
-        DaemonTaskResult result = RetrieveTask.create(connection).execute(log);
-        if (!(result instanceof RetrieveTaskSuccessResult)) {
+        // Use the torrents as shared with the app, the background sync pass and the other widgets, unless the user
+        // explicitly asked for a refresh
+        boolean refreshRequested = ListWidgetProvider.consumeRefreshRequest(appWidgetId);
+        boolean dormantAsInactive = SystemSettings_.getInstance_(context).treatDormantAsInactive();
+        WidgetDataCache.WidgetView view =
+                WidgetDataCache_.getInstance_(context).getView(server, config, dormantAsInactive, refreshRequested);
+        if (view == null) {
             // TODO: Show error text somehow in the remote view, perhaps via the EmptyView's text?
-            log.e(context, "The torrents could not be retrieved at this time; probably a connection issue");
-            if (torrents != null) {
-                torrents.clear();
-            }
+            torrents = null;
+            rows = null;
             return;
         }
-
-        // We have data; filter, sort and store it to use later when getViewAt gets called
-        SystemSettings systemSettings = SystemSettings_.getInstance_(context);
-        ArrayList<Torrent> filteredTorrents = new ArrayList<>();
-        List<Torrent> allTorrents = ((RetrieveTaskSuccessResult) result).getTorrents();
-        for (Torrent torrent : allTorrents) {
-            if (config.getStatusType().getFilterItem(context)
-                    .matches(torrent, systemSettings.treatDormantAsInactive())) {
-                filteredTorrents.add(torrent);
-            }
-        }
-        if (filteredTorrents.size() > 0) {
-            // Only sort when there are actually torrents left after filtering
-            Daemon serverType = filteredTorrents.get(0).getDaemon();
-            Collections.sort(filteredTorrents,
-                    new TorrentsComparator(serverType, config.getSortBy(), config.shouldReserveSort()));
+        if (view.getTorrents() != torrents || config.shouldUseDarkTheme() != rowsDarkTheme) {
+            // New data or another theme: the earlier built rows are no longer valid
+            torrents = view.getTorrents();
+            rowsDarkTheme = config.shouldUseDarkTheme();
+            rows = new RemoteViews[torrents.size()];
         }
-        torrents = filteredTorrents;
+        TorrentsAggregate aggregate = view.getAggregate();
 
         // If the user asked to show the server status statistics, we need to update the widget remote views again
         RemoteViews rv = ListWidgetProvider.buildRemoteViews(context, appWidgetId, config);
         if (config.shouldShowStatusView()) {
 
             // Update the server status count and speeds in the 'action bar'
-            int downcount = 0, upcount = 0, downspeed = 0, upspeed = 0;
-            for (Torrent torrent : torrents) {
-                if (torrent.isDownloading(systemSettings.treatDormantAsInactive())) {
-                    downcount++;
-                    upcount++;
-                } else if (torrent.isSeeding(systemSettings.treatDormantAsInactive())) {
-                    upcount++;
-                }
-                downspeed += torrent.getRateDownload();
-                upspeed += torrent.getRateUpload();
-            }
+            int downcount = aggregate.getDownloadingCount();
+            int upcount = aggregate.getActiveCount();
+            long downspeed = aggregate.getRateDownload();
+            long upspeed = aggregate.getRateUpload();
             rv.setViewVisibility(R.id.navigation_view, View.GONE);
             rv.setViewVisibility(R.id.serverstatus_view, View.VISIBLE);
             rv.setTextViewText(R.id.downcount_text, Integer.toString(downcount));
@@ -170,6 +143,11 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
     @Override
     public RemoteViews getViewAt(int position) {
 
+        // Rows are only built once for the same data, as the list is often redrawn without any data change
+        if (rows != null && position < rows.length && rows[position] != null) {
+            return rows[position];
+        }
+
         // Load the dark or light widget list item layout xml
         RemoteViews rv = new RemoteViews(context.getPackageName(),
                 config.shouldUseDarkTheme() ? R.layout.list_item_widget_dark : R.layout.list_item_widget);
@@ -204,6 +182,9 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
         startIntent.putExtra(ListWidgetProvider.EXTRA_SERVER, config.getServerId());
         startIntent.putExtra(ListWidgetProvider.EXTRA_TORRENT, torrent);
         rv.setOnClickFillInIntent(R.id.widget_line_layout, startIntent);
+        if (rows != null && position < rows.length) {
+            rows[position] = rv;
+        }
 
         return rv;
 
@@ -216,10 +197,8 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public void onDestroy() {
-        if (torrents != null) {
-            torrents.clear();
-        }
         torrents = null;
+        rows = null;
     }
 
     @Override
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.widget;
+
+import android.content.Context;
+
+import org.androidannotations.annotations.Bean;
+import org.androidannotations.annotations.EBean;
+import org.androidannotations.annotations.EBean.Scope;
+import org.androidannotations.annotations.RootContext;
+import org.transdroid.core.app.cache.DataUsageStore_;
+import org.transdroid.core.app.cache.SnapshotCache;
+import org.transdroid.core.app.cache.TorrentsSnapshot;
+import org.transdroid.core.app.settings.ServerSetting;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.core.gui.navigation.NavigationFilter;
+import org.transdroid.core.service.ConnectivityHelper;
+import org.transdroid.daemon.IDaemonAdapter;
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentsAggregate;
+import org.transdroid.daemon.TorrentsComparator;
+import org.transdroid.daemon.task.DaemonTaskResult;
+import org.transdroid.daemon.task.RetrieveTask;
+import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+import org.transdroid.daemon.util.DataUsage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory cache of the torrents per server, as shown by the list widgets. All widgets that show the same server share
+ * one retrieval, and all widgets that also show the same filter and sort order share one filtered and sorted view. The
+ * cache is also fed with the torrents as retrieved by the app itself and by the background sync pass, such that widgets
+ * only retrieve the torrents themselves when these are older than a few minutes, or when the user asks for a refresh.
+ */
+@EBean(scope = Scope.Singleton)
+public class WidgetDataCache {
+
+    private static final long MAX_AGE = 10 * 60 * 1000; // 10 minutes
+
+    @RootContext
+    protected Context context;
+    @Bean
+    protected Log log;
+    @Bean
+    protected ConnectivityHelper connectivityHelper;
+    @Bean
+    protected SnapshotCache snapshotCache;
+    private final Map<String, ServerData> servers = new HashMap<>();
+    private final Map<String, Object> retrieveLocks = new HashMap<>();
+
+    /**
+     * Stores the torrents as just retrieved from some server (outside of the widgets), such that widgets can show these
+     * without retrieving them again.
+     *
+     * @param server   The server the torrents were retrieved from
+     * @param torrents The full, unfiltered list of torrents
+     */
+    public void put(ServerSetting server, List<Torrent> torrents) {
+        String identifier = server.getUniqueIdentifier();
+        if (identifier == null || torrents == null) {
+            return;
+        }
+        synchronized (servers) {
+            servers.put(identifier, new ServerData(torrents, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Returns the filtered and sorted torrents to show in a widget. The torrents are only retrieved from the server if
+     * no (other) widget, the app or the background sync pass retrieved them recently, or if a refresh is forced; when
+     * another widget is already retrieving the same server, this waits for and then uses that result. When the
+     * torrents cannot be retrieved, the last known torrents are returned instead.
+     *
+     * @param server            The server that the widget shows
+     * @param config            The widget configuration, which determines the filter and sort order
+     * @param dormantAsInactive Whether dormant torrents should be treated as inactive when filtering
+     * @param forceRetrieve     Whether the torrents should be retrieved, even if recently retrieved torrents are known
+     * @return The view on the server torrents to show, or null if no torrents could be retrieved or are known
+     */
+    public WidgetView getView(ServerSetting server, ListWidgetConfig config, boolean dormantAsInactive, boolean forceRetrieve) {
+        String identifier = server.getUniqueIdentifier();
+        if (identifier == null) {
+            // Cannot share data with other widgets of this server; always retrieve directly
+            List<Torrent> torrents = retrieve(server);
+            return torrents == null ? null : buildView(torrents, config, dormantAsInactive);
+        }
+        ServerData data = getServerData(server, identifier, forceRetrieve);
+        return data == null ? null : data.getView(this, config, dormantAsInactive);
+    }
+
+    private ServerData getServerData(ServerSetting server, String identifier, boolean forceRetrieve) {
+        long requestedAt = System.currentTimeMillis();
+        Object lock;
+        synchronized (servers) {
+            ServerData data = servers.get(identifier);
+            if (!forceRetrieve && data != null && data.isFresh()) {
+                return data;
+            }
+            lock = retrieveLocks.get(identifier);
+            if (lock == null) {
+                lock = new Object();
+                retrieveLocks.put(identifier, lock);
+            }
+        }
+        synchronized (lock) {
+            // Another widget may have retrieved the torrents while we were waiting
+            ServerData known = getKnown(server, identifier);
+            if (known != null && (forceRetrieve ? known.retrievedAt >= requestedAt : known.isFresh())) {
+                return known;
+            }
+            List<Torrent> torrents = retrieve(server);
+            if (torrents == null) {
+                if (known != null) {
+                    log.e(this, "The torrents could not be retrieved at this time; showing the torrents as retrieved at " + known.retrievedAt);
+                } else {
+                    log.e(this, "The torrents could not be retrieved at this time; probably a connection issue");
+                }
+                return known;
+            }
+            ServerData data = new ServerData(torrents, System.currentTimeMillis());
+            synchronized (servers) {
+                servers.put(identifier, data);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Returns the last known torrents of a server, which might be stale, from memory or else from the on-disk snapshot.
+     */
+    private ServerData getKnown(ServerSetting server, String identifier) {
+        synchronized (servers) {
+            ServerData data = servers.get(identifier);
+            if (data != null) {
+                return data;
+            }
+        }
+        TorrentsSnapshot snapshot = snapshotCache.read(server);
+        if (snapshot == null) {
+            return null;
+        }
+        ServerData data = new ServerData(snapshot.getTorrents(), snapshot.getRetrievedAt().getTime());
+        synchronized (servers) {
+            if (!servers.containsKey(identifier)) {
+                servers.put(identifier, data);
+            }
+            return servers.get(identifier);
+        }
+    }
+
+    private List<Torrent> retrieve(ServerSetting server) {
+        IDaemonAdapter connection = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), context);
+        DataUsage.Feature previous = DataUsage.setFeature(DataUsage.Feature.Widget);
+        DaemonTaskResult result;
+        try {
+            result = RetrieveTask.create(connection).execute(log);
+        } finally {
+            DataUsage.setFeature(previous);
+            DataUsageStore_.getInstance_(context).flush();
+        }
+        if (!(result instanceof RetrieveTaskSuccessResult)) {
+            return null;
+        }
+        List<Torrent> torrents = ((RetrieveTaskSuccessResult) result).getTorrents();
+        snapshotCache.write(server, torrents, ((RetrieveTaskSuccessResult) result).getLabels());
+        return torrents;
+    }
+
+    private WidgetView buildView(List<Torrent> allTorrents, ListWidgetConfig config, boolean dormantAsInactive) {
+        // The statistics of the shown torrents are aggregated while filtering, so the list is only walked once
+        TorrentsAggregate aggregate = new TorrentsAggregate(dormantAsInactive);
+        ArrayList<Torrent> filteredTorrents = new ArrayList<>();
+        NavigationFilter statusFilter = config.getStatusType().getFilterItem(context);
+        for (Torrent torrent : allTorrents) {
+            if (statusFilter.matches(torrent, dormantAsInactive)) {
+                filteredTorrents.add(torrent);
+                aggregate.add(torrent);
+            }
+        }
+        if (filteredTorrents.size() > 0) {
+            // Only sort when there are actually torrents left after filtering
+            Collections.sort(filteredTorrents,
+                    new TorrentsComparator(filteredTorrents.get(0).getDaemon(), config.getSortBy(), config.shouldReserveSort()));
+        }
+        return new WidgetView(Collections.unmodifiableList(filteredTorrents), aggregate);
+    }
+
+    /**
+     * The torrents of one server as retrieved at some moment, with the filtered and sorted views on them that were
+     * requested by widgets so far.
+     */
+    private static class ServerData {
+
+        private final List<Torrent> torrents;
+        private final long retrievedAt;
+        private final Map<String, WidgetView> views = new HashMap<>();
+
+        ServerData(List<Torrent> torrents, long retrievedAt) {
+            this.torrents = torrents;
+            this.retrievedAt = retrievedAt;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - retrievedAt < MAX_AGE;
+        }
+
+        synchronized WidgetView getView(WidgetDataCache cache, ListWidgetConfig config, boolean dormantAsInactive) {
+            String key = config.getStatusType().name() + "/" + config.getSortBy().name() + "/" + config.shouldReserveSort()
+                    + "/" + dormantAsInactive;
+            WidgetView view = views.get(key);
+            if (view == null) {
+                view = cache.buildView(torrents, config, dormantAsInactive);
+                views.put(key, view);
+            }
+            return view;
+        }
+
+    }
+
+    /**
+     * The filtered and sorted torrents of a server as shown by one or more widgets, with the statistics over these
+     * torrents. Views are never changed once built; a new retrieval results in new views.
+     */
+    public static class WidgetView {
+
+        private final List<Torrent> torrents;
+        private final TorrentsAggregate aggregate;
+
+        WidgetView(List<Torrent> torrents, TorrentsAggregate aggregate) {
+            this.torrents = torrents;
+            this.aggregate = aggregate;
+        }
+
+        public List<Torrent> getTorrents() {
+            return torrents;
+        }
+
+        public TorrentsAggregate getAggregate() {
+            return aggregate;
+        }
+
+    }
+
+}
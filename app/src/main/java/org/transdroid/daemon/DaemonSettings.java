@@ -26,6 +26,11 @@ import org.transdroid.core.app.settings.ServerSetting;
  */
 public final class DaemonSettings {
 
+    /**
+     * The number of requests that are executed on a server at the same time, unless configured otherwise
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
     final private String name;
     final private Daemon type;
     final private String address;
@@ -44,6 +49,7 @@ public final class DaemonSettings {
     final private String ftpUrl;
     final private String ftpPassword;
     final private int timeout;
+    final private int maxConnections;
     final private boolean alarmOnFinishedDownload;
     final private boolean alarmOnNewTorrent;
     final private String idString;
@@ -51,7 +57,7 @@ public final class DaemonSettings {
 
     protected DaemonSettings() {
         this(null, null, null, 0, false, false, null, null, false, null, null, null, null,
-                null, null, null, null, 0, false, false, null, false);
+                null, null, null, null, 0, DEFAULT_MAX_CONNECTIONS, false, false, null, false);
     }
 
     /**
@@ -70,13 +76,14 @@ public final class DaemonSettings {
      * @param downloadDir       The default download directory (which may also be used as base directory for file paths)
      * @param ftpUrl            The partial URL to connect to when requesting FTP-style transfers
      * @param timeout           The number of seconds to wait before timing out a connection attempt
+     * @param maxConnections    The number of requests that may be executed on the server at the same time
      * @param idString          The (numeric) identifier for this server settings (used as postfix on stored preferenced)
      * @param isAutoGenerated   Whether this setting was generated rather than manually inputed by the user
      */
     public DaemonSettings(String name, Daemon type, String address, int port, boolean ssl,
                           boolean sslTrustAll, String sslTrustKey, String folder, boolean useAuthentication,
                           String username, String password, String extraPass, String authToken, OS os, String downloadDir, String ftpUrl, String ftpPassword, int timeout,
-                          boolean alarmOnFinishedDownload, boolean alarmOnNewTorrent, String idString, boolean isAutoGenerated) {
+                          int maxConnections, boolean alarmOnFinishedDownload, boolean alarmOnNewTorrent, String idString, boolean isAutoGenerated) {
         this.name = name;
         this.type = type;
         this.address = address;
@@ -95,6 +102,7 @@ public final class DaemonSettings {
         this.ftpUrl = ftpUrl;
         this.ftpPassword = ftpPassword;
         this.timeout = timeout;
+        this.maxConnections = maxConnections;
         this.alarmOnFinishedDownload = alarmOnFinishedDownload;
         this.alarmOnNewTorrent = alarmOnNewTorrent;
         this.idString = idString;
@@ -173,6 +181,14 @@ public final class DaemonSettings {
         return timeout * 1000;
     }
 
+    /**
+     * Returns the number of (keep-alive) connections that may be opened to the server at the same time, which also limits
+     * the number of requests that are executed on it at the same time.
+     */
+    public int getMaxConnections() {
+        return Math.max(1, maxConnections);
+    }
+
     public boolean shouldAlarmOnFinishedDownload() {
         return alarmOnFinishedDownload;
     }
@@ -201,6 +217,7 @@ public final class DaemonSettings {
         if (sslTrustAll != that.sslTrustAll) return false;
         if (useAuthentication != that.useAuthentication) return false;
         if (timeout != that.timeout) return false;
+        if (maxConnections != that.maxConnections) return false;
         if (alarmOnFinishedDownload != that.alarmOnFinishedDownload) return false;
         if (alarmOnNewTorrent != that.alarmOnNewTorrent) return false;
         if (isAutoGenerated != that.isAutoGenerated) return false;
@@ -240,6 +257,7 @@ public final class DaemonSettings {
         result = 31 * result + (ftpUrl != null ? ftpUrl.hashCode() : 0);
         result = 31 * result + (ftpPassword != null ? ftpPassword.hashCode() : 0);
         result = 31 * result + timeout;
+        result = 31 * result + maxConnections;
         result = 31 * result + (alarmOnFinishedDownload ? 1 : 0);
         result = 31 * result + (alarmOnNewTorrent ? 1 : 0);
         result = 31 * result + (idString != null ? idString.hashCode() : 0);
@@ -20,6 +20,11 @@ package org.transdroid.daemon;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import org.transdroid.daemon.util.BinaryHelper;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -485,6 +490,79 @@ public final class Torrent implements Parcelable, Comparable<Torrent>, Finishabl
         dest.writeString(daemon.name());
     }
 
+    /**
+     * Writes this torrent in a compact binary form, which can be read back using {@link #readFrom(ByteBuffer)}.
+     *
+     * @param out The output to write the torrent fields to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(id);
+        BinaryHelper.writeString(out, hash);
+        BinaryHelper.writeString(out, name);
+        out.writeInt(statusCode.getCode());
+        BinaryHelper.writeString(out, locationDir);
+
+        out.writeInt(rateDownload);
+        out.writeInt(rateUpload);
+        out.writeInt(seedersConnected);
+        out.writeInt(seedersKnown);
+        out.writeInt(leechersConnected);
+        out.writeInt(leechersKnown);
+        out.writeInt(eta);
+
+        out.writeLong(downloadedEver);
+        out.writeLong(uploadedEver);
+        out.writeLong(totalSize);
+        out.writeFloat(partDone);
+        out.writeFloat(available);
+        BinaryHelper.writeString(out, label);
+        out.writeBoolean(sequentialDownload);
+        out.writeBoolean(firstLastPieceDownload);
+
+        out.writeLong((dateAdded == null) ? -1 : dateAdded.getTime());
+        out.writeLong((dateDone == null) ? -1 : dateDone.getTime());
+        BinaryHelper.writeString(out, error);
+        BinaryHelper.writeString(out, daemon.name());
+    }
+
+    /**
+     * Reads a torrent as written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The buffer to read from, positioned at the start of the torrent
+     * @return The torrent as it was written
+     * @throws IOException Thrown when the buffer does not hold a valid torrent
+     */
+    public static Torrent readFrom(ByteBuffer in) throws IOException {
+        Builder builder = new Builder()
+                .setId(in.getLong())
+                .setHash(BinaryHelper.readString(in))
+                .setName(BinaryHelper.readString(in))
+                .setStatusCode(TorrentStatus.getStatus(in.getInt()))
+                .setLocationDir(BinaryHelper.readString(in))
+                .setRateDownload(in.getInt())
+                .setRateUpload(in.getInt())
+                .setSeedersConnected(in.getInt())
+                .setSeedersKnown(in.getInt())
+                .setLeechersConnected(in.getInt())
+                .setLeechersKnown(in.getInt())
+                .setEta(in.getInt())
+                .setDownloadedEver(in.getLong())
+                .setUploadedEver(in.getLong())
+                .setTotalSize(in.getLong())
+                .setPartDone(in.getFloat())
+                .setAvailable(in.getFloat())
+                .setLabel(BinaryHelper.readString(in))
+                .setSequentialDownload(in.get() != 0)
+                .setFirstLastPieceDownload(in.get() != 0);
+        long lDateAdded = in.getLong();
+        builder.setDateAdded((lDateAdded == -1) ? null : new Date(lDateAdded));
+        long lDateDone = in.getLong();
+        builder.setRealDateDone((lDateDone == -1) ? null : new Date(lDateDone));
+        builder.setError(BinaryHelper.readString(in));
+        builder.setDaemon(Daemon.valueOf(BinaryHelper.readString(in)));
+        return builder.createTorrent();
+    }
+
     public static class Builder {
 
         private long id;
@@ -0,0 +1,274 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregated statistics over a list of torrents: counts per transfer state and per label as well as the total transfer
+ * rates. All figures are computed in a single pass over the torrents list. When a new
+ * list is supplied via {@link #update(List, boolean)}, only the torrents that were added, removed or changed since the
+ * last update are applied to the totals, in place, so that an update only allocates for torrents that are new.
+ */
+public class TorrentsAggregate {
+
+    private final Map<String, Contribution> contributions = new HashMap<>();
+    private final Map<String, int[]> labelCounts = new HashMap<>();
+    private boolean dormantAsInactive = false;
+    private int generation = 0;
+    private int downloadingCount = 0;
+    private int seedingCount = 0;
+    private int unlabeledCount = 0;
+    private long rateDownload = 0;
+    private long rateUpload = 0;
+
+    public TorrentsAggregate() {
+    }
+
+    /**
+     * Creates an empty aggregate, to which torrents can be added one by one.
+     *
+     * @param dormantAsInactive Whether to treat dormant (0KB/s) torrent as inactive state torrents
+     */
+    public TorrentsAggregate(boolean dormantAsInactive) {
+        this.dormantAsInactive = dormantAsInactive;
+    }
+
+    /**
+     * Builds a fresh aggregate for some list of torrents.
+     *
+     * @param torrents          The torrents to aggregate
+     * @param dormantAsInactive Whether to treat dormant (0KB/s) torrent as inactive state torrents
+     * @return The aggregate with all statistics computed
+     */
+    public static TorrentsAggregate of(Collection<Torrent> torrents, boolean dormantAsInactive) {
+        TorrentsAggregate aggregate = new TorrentsAggregate(dormantAsInactive);
+        for (Torrent torrent : torrents) {
+            aggregate.add(torrent);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Replaces the aggregated list of torrents with a newly retrieved list. Torrents are matched on their unique id;
+     * unchanged torrents do not touch the totals, while changed, new and no longer existing torrents are applied as
+     * difference.
+     *
+     * @param torrents          The full, newly retrieved list of torrents
+     * @param dormantAsInactive Whether to treat dormant (0KB/s) torrent as inactive state torrents; when this differs
+     *                          from the last update, all statistics are recomputed
+     */
+    public synchronized void update(List<Torrent> torrents, boolean dormantAsInactive) {
+        if (dormantAsInactive != this.dormantAsInactive) {
+            clear();
+            this.dormantAsInactive = dormantAsInactive;
+        }
+        // Torrents that are not in the new list keep the previous generation, so they can be removed afterwards
+        generation++;
+        for (Torrent torrent : torrents) {
+            set(torrent).generation = generation;
+        }
+        for (Iterator<Contribution> all = contributions.values().iterator(); all.hasNext(); ) {
+            Contribution contribution = all.next();
+            if (contribution.generation != generation) {
+                apply(contribution, -1);
+                all.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds a single (new or updated) torrent to the aggregate, replacing any earlier figures for this same torrent.
+     *
+     * @param torrent The torrent to add or update
+     */
+    public synchronized void add(Torrent torrent) {
+        set(torrent).generation = generation;
+    }
+
+    private Contribution set(Torrent torrent) {
+        String id = torrent.getUniqueID();
+        Contribution contribution = contributions.get(id);
+        if (contribution == null) {
+            contribution = new Contribution();
+            contributions.put(id, contribution);
+        } else if (contribution.matches(torrent, dormantAsInactive)) {
+            return contribution;
+        } else {
+            apply(contribution, -1);
+        }
+        contribution.set(torrent, dormantAsInactive);
+        apply(contribution, 1);
+        return contribution;
+    }
+
+    /**
+     * Removes a single torrent from the aggregate, if it was part of it.
+     *
+     * @param torrent The torrent to remove
+     */
+    public synchronized void remove(Torrent torrent) {
+        Contribution last = contributions.remove(torrent.getUniqueID());
+        if (last != null) {
+            apply(last, -1);
+        }
+    }
+
+    /**
+     * Removes all torrents and resets all statistics.
+     */
+    public synchronized void clear() {
+        contributions.clear();
+        labelCounts.clear();
+        downloadingCount = seedingCount = unlabeledCount = 0;
+        rateDownload = rateUpload = 0;
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        if (contribution.downloading) {
+            downloadingCount += sign;
+        } else if (contribution.seeding) {
+            seedingCount += sign;
+        }
+        rateDownload += sign * contribution.rateDownload;
+        rateUpload += sign * contribution.rateUpload;
+        if (contribution.label == null || contribution.label.isEmpty()) {
+            unlabeledCount += sign;
+        } else {
+            count(labelCounts, contribution.label, sign);
+        }
+    }
+
+    private static void count(Map<String, int[]> counts, String key, int sign) {
+        int[] count = counts.get(key);
+        if (count == null) {
+            count = new int[1];
+            counts.put(key, count);
+        }
+        count[0] += sign;
+        if (count[0] <= 0) {
+            counts.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of torrents that are (actively, if dormant torrents are treated as inactive) downloading.
+     */
+    public synchronized int getDownloadingCount() {
+        return downloadingCount;
+    }
+
+    /**
+     * Returns the number of torrents that are (actively, if dormant torrents are treated as inactive) seeding.
+     */
+    public synchronized int getSeedingCount() {
+        return seedingCount;
+    }
+
+    /**
+     * Returns the number of torrents that are either downloading or seeding.
+     */
+    public synchronized int getActiveCount() {
+        return downloadingCount + seedingCount;
+    }
+
+    public synchronized long getRateDownload() {
+        return rateDownload;
+    }
+
+    public synchronized long getRateUpload() {
+        return rateUpload;
+    }
+
+    /**
+     * Returns the number of torrents with a specific label.
+     *
+     * @param label The label name, or null or empty to count the torrents without any label
+     * @return The number of torrents with this label
+     */
+    public synchronized int getLabelCount(String label) {
+        if (label == null || label.isEmpty()) {
+            return unlabeledCount;
+        }
+        int[] count = labelCounts.get(label);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Builds the list of labels (with torrent counts) that are in use by the aggregated torrents, optionally
+     * supplemented with the names of known labels that are not used by any torrent.
+     *
+     * @param knownLabels The label names as known to the server, or null if the server does not report these
+     * @return A list of labels with their torrent counts
+     */
+    public synchronized List<Label> getLabels(Collection<String> knownLabels) {
+        List<Label> labels = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : labelCounts.entrySet()) {
+            labels.add(new Label(entry.getKey(), entry.getValue()[0]));
+        }
+        if (knownLabels != null) {
+            for (String label : knownLabels) {
+                if (label != null && !labelCounts.containsKey(label)) {
+                    labels.add(new Label(label, 0));
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * The figures that a single torrent contributes to the aggregate, as recorded at the last update that changed them.
+     */
+    private static final class Contribution {
+
+        int generation;
+        boolean downloading;
+        boolean seeding;
+        String label;
+        int rateDownload;
+        int rateUpload;
+
+        void set(Torrent torrent, boolean dormantAsInactive) {
+            this.downloading = torrent.isDownloading(dormantAsInactive);
+            this.seeding = torrent.isSeeding(dormantAsInactive);
+            this.label = torrent.getLabelName();
+            this.rateDownload = torrent.getRateDownload();
+            this.rateUpload = torrent.getRateUpload();
+        }
+
+        /**
+         * Returns whether the torrent still contributes exactly these figures.
+         */
+        boolean matches(Torrent torrent, boolean dormantAsInactive) {
+            return downloading == torrent.isDownloading(dormantAsInactive)
+                    && seeding == torrent.isSeeding(dormantAsInactive) && rateDownload == torrent.getRateDownload()
+                    && rateUpload == torrent.getRateUpload() && same(label, torrent.getLabelName());
+        }
+
+        private static boolean same(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+    }
+
+}
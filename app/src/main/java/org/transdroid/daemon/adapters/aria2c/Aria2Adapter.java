@@ -18,13 +18,9 @@
 package org.transdroid.daemon.adapters.aria2c;
 
 import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import net.iharder.Base64;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -56,7 +52,10 @@ import org.transdroid.daemon.task.ResumeTask;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetTransferRatesTask;
-import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.HttpTransport;
+import org.transdroid.daemon.util.HttpTransports;
+import org.transdroid.daemon.util.StringPool;
+import org.transdroid.daemon.util.TaskMetrics;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -78,18 +77,17 @@ public class Aria2Adapter implements IDaemonAdapter {
     private static final String LOG_NAME = "Aria2 daemon";
 
     private DaemonSettings settings;
-    private DefaultHttpClient httpclient;
+    private HttpTransport transport;
 
     public Aria2Adapter(DaemonSettings settings) {
         this.settings = settings;
     }
 
-    private synchronized void initialise() throws DaemonException {
-        if (httpclient == null) {
-            httpclient = HttpHelper.createStandardHttpClient(settings, !TextUtils.isEmpty(settings.getUsername()));
-            httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
-            httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+    private synchronized HttpTransport initialise() throws DaemonException {
+        if (transport == null) {
+            transport = HttpTransports.forServer(settings, !TextUtils.isEmpty(settings.getUsername()));
         }
+        return transport;
     }
 
     @Override
@@ -116,9 +114,11 @@ public class Aria2Adapter implements IDaemonAdapter {
 
                     List<Torrent> torrents = new ArrayList<>();
                     JSONArray lists = makeRequestForArray(log, params.toString());
+                    long parseStart = SystemClock.elapsedRealtime();
                     for (int i = 0; i < lists.length(); i++) {
                         torrents.addAll(parseJsonRetrieveTorrents(lists.getJSONObject(i).getJSONArray("result")));
                     }
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - parseStart);
                     return new RetrieveTaskSuccessResult((RetrieveTask) task, torrents, null);
 
                 case GetTorrentDetails:
@@ -128,8 +128,10 @@ public class Aria2Adapter implements IDaemonAdapter {
                     params.put(new JSONArray().put("bittorrent").put("errorCode"));
 
                     JSONObject dinfo = makeRequest(log, buildRequest("aria2.tellStatus", params).toString());
-                    return new GetTorrentDetailsTaskSuccessResult((GetTorrentDetailsTask) task,
-                            parseJsonTorrentDetails(dinfo.getJSONObject("result")));
+                    long dparseStart = SystemClock.elapsedRealtime();
+                    TorrentDetails details = parseJsonTorrentDetails(dinfo.getJSONObject("result"));
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - dparseStart);
+                    return new GetTorrentDetailsTaskSuccessResult((GetTorrentDetailsTask) task, details);
 
                 case GetFileList:
 
@@ -137,8 +139,10 @@ public class Aria2Adapter implements IDaemonAdapter {
                     params.put(task.getTargetTorrent().getUniqueID()); // torrent_id
 
                     JSONObject finfo = makeRequest(log, buildRequest("aria2.getFiles", params).toString());
-                    return new GetFileListTaskSuccessResult((GetFileListTask) task,
-                            parseJsonFileListing(finfo.getJSONArray("result"), task.getTargetTorrent()));
+                    long fparseStart = SystemClock.elapsedRealtime();
+                    List<TorrentFile> files = parseJsonFileListing(finfo.getJSONArray("result"), task.getTargetTorrent());
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - fparseStart);
+                    return new GetFileListTaskSuccessResult((GetFileListTask) task, files);
 
                 case AddByFile:
 
@@ -265,53 +269,54 @@ public class Aria2Adapter implements IDaemonAdapter {
 
     }
 
-    private synchronized JSONObject makeRequest(Log log, String data) throws DaemonException {
+    private JSONObject makeRequest(Log log, String data) throws DaemonException {
         String raw = makeRawRequest(log, data);
+        long parseStart = SystemClock.elapsedRealtime();
         try {
             return new JSONObject(raw);
         } catch (JSONException e) {
             log.d(LOG_NAME, "Error: " + e.toString());
             throw new DaemonException(ExceptionType.UnexpectedResponse, e.toString());
+        } finally {
+            TaskMetrics.recordParse(SystemClock.elapsedRealtime() - parseStart);
         }
     }
 
-    private synchronized JSONArray makeRequestForArray(Log log, String data) throws DaemonException {
+    private JSONArray makeRequestForArray(Log log, String data) throws DaemonException {
         String raw = makeRawRequest(log, data);
+        long parseStart = SystemClock.elapsedRealtime();
         try {
             return new JSONArray(raw);
         } catch (JSONException e) {
             log.d(LOG_NAME, "Error: " + e.toString());
             throw new DaemonException(ExceptionType.UnexpectedResponse, e.toString());
+        } finally {
+            TaskMetrics.recordParse(SystemClock.elapsedRealtime() - parseStart);
         }
     }
 
-    private synchronized String makeRawRequest(Log log, String data) throws DaemonException {
+    private String makeRawRequest(Log log, String data) throws DaemonException {
 
         try {
-            // Initialise the HTTP client
-            initialise();
+            // Get the (shared) HTTP transport to the server
+            HttpTransport transport = initialise();
 
             // Set POST URL and data
             String url =
                     (settings.getSsl() ? "https://" : "http://") + settings.getAddress() + ":" + settings.getPort() +
                             (settings.getFolder() == null ? "" : settings.getFolder()) + "/jsonrpc";
-            HttpPost httppost = new HttpPost(url);
-            httppost.setEntity(new StringEntity(data));
-            httppost.setHeader("Content-Type", "application/json");
-            httppost.setHeader("Accept", "application/json");
+            HttpTransport.Request request = HttpTransport.Request.post(url, data, "application/json");
+            request.setHeader("Accept", "application/json");
 
             // Execute
-            HttpResponse response = httpclient.execute(httppost);
+            HttpTransport.Response response = transport.execute(request);
 
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
+            if (!response.hasBody()) {
                 throw new DaemonException(ExceptionType.UnexpectedResponse, "No HTTP entity in response object.");
             }
 
             // Read JSON response
-            InputStream instream = entity.getContent();
-            String result = HttpHelper.convertStreamToString(instream);
-            instream.close();
+            String result = response.getBodyString();
 
             log.d(LOG_NAME, "Success: " +
                     (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" :
@@ -329,6 +334,7 @@ public class Aria2Adapter implements IDaemonAdapter {
 
         // Parse response
         ArrayList<Torrent> torrents = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
         for (int j = 0; j < response.length(); j++) {
 
             // Add the parsed torrent to the list
@@ -367,7 +373,7 @@ public class Aria2Adapter implements IDaemonAdapter {
                     tor.getString("gid"),
                     name,
                     status,
-                    tor.getString("dir"),
+                    pool.get(tor.getString("dir")),
                     downloadSpeed,
                     tor.getInt("uploadSpeed"),
                     tor.getInt("connections"),
@@ -434,10 +440,11 @@ public class Aria2Adapter implements IDaemonAdapter {
         if (response.has("bittorrent")) {
             JSONObject bittorrent = response.getJSONObject("bittorrent");
             JSONArray announceList = bittorrent.getJSONArray("announceList");
+            StringPool pool = StringPool.forServer(settings);
             for (int i = 0; i < announceList.length(); i++) {
                 JSONArray announceUrlList = announceList.getJSONArray(i);
                 for (int j = 0; j < announceUrlList.length(); j++) {
-                    trackers.add(announceUrlList.getString(j));
+                    trackers.add(pool.get(announceUrlList.getString(j)));
                 }
             }
         }
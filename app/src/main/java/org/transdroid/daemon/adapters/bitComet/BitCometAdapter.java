@@ -53,6 +53,7 @@ import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 import org.transdroid.multipart.BitCometFilePart;
 import org.transdroid.multipart.Utf8StringPart;
 import org.xmlpull.v1.XmlPullParser;
@@ -581,6 +582,7 @@ public class BitCometAdapter implements IDaemonAdapter {
             float progress = 0;
             String label = "";
             Date dateAdded = new Date();
+            StringPool pool = StringPool.forServer(settings);
 
             // Start pulling
             int next = xpp.nextTag();
@@ -695,7 +697,7 @@ public class BitCometAdapter implements IDaemonAdapter {
                                 dateAdded = new Date(Long.parseLong(xpp.getText()));
                                 break;
                             case "comment":
-                                label = xpp.getText().trim();
+                                label = pool.get(xpp.getText().trim());
                                 break;
                         }
                     }
@@ -45,6 +45,7 @@ import org.transdroid.daemon.task.RemoveTask;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -183,6 +184,7 @@ public class BitfluAdapter implements IDaemonAdapter {
         ArrayList<Torrent> torrents = new ArrayList<>();
 
         if (results != null) {
+            String locationDir = StringPool.forServer(settings).get("/", settings.getOS().getPathSeperator());
             for (int i = 0; i < results.length(); i++) {
 
                 JSONObject tor = results.getJSONObject(i);
@@ -195,7 +197,7 @@ public class BitfluAdapter implements IDaemonAdapter {
                         tor.getString("key"),
                         tor.getString("name"),
                         convertBitfluStatus(tor),
-                        "/" + settings.getOS().getPathSeperator(),
+                        locationDir,
                         tor.getInt("speed_download"),
                         tor.getInt("speed_upload"),
                         tor.getInt("active_clients"),
@@ -64,7 +64,9 @@ import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTrackersTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
+import org.transdroid.daemon.util.AuthSessions;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -149,8 +151,9 @@ public class DelugeAdapter implements IDaemonAdapter {
     private DaemonSettings settings;
     private DefaultHttpClient httpclient;
     private Cookie sessionCookie;
-    private int version = -1;
+    private volatile int version = -1;
     private long lastAuthTime = -1;
+    private boolean sessionRestored = false;
 
     public DelugeAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -469,56 +472,19 @@ public class DelugeAdapter implements IDaemonAdapter {
 
     }
 
-    private synchronized JSONObject makeRequest(JSONObject data, Log log) throws DaemonException {
+    private JSONObject makeRequest(JSONObject data, Log log) throws DaemonException {
+        return makeRequest(data, log, true);
+    }
+
+    private JSONObject makeRequest(JSONObject data, Log log, boolean mayRetry) throws DaemonException {
 
         try {
 
             // Initialise the HTTP client
             initialise();
 
-            // Login first?
-            if (sessionCookie == null || System.currentTimeMillis() - lastAuthTime > MAX_SESSION_TIME) {
-
-                sessionCookie = null;
-                // Build login object
-                String extraPass = settings.getExtraPassword();
-                if (extraPass == null) {
-                    extraPass = "";
-                }
-                JSONObject loginRequest = new JSONObject();
-                loginRequest.put(RPC_METHOD, RPC_METHOD_AUTH_LOGIN);
-                loginRequest.put(RPC_PARAMS, (new JSONArray()).put(extraPass));
-                loginRequest.put(RPC_ID, 1);
-
-                // Set POST URL and data
-                HttpPost httppost = new HttpPost(buildWebUIUrl() + PATH_TO_RPC);
-                httppost.setHeader("content-type", "application/json");
-                StringEntity se = new StringEntity(loginRequest.toString());
-                httppost.setEntity(se);
-
-                // Execute
-                HttpResponse response = httpclient.execute(httppost);
-                InputStream instream = response.getEntity().getContent();
-
-                // Retrieve session ID
-                if (!httpclient.getCookieStore().getCookies().isEmpty()) {
-                    for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
-                        if (cookie.getName().equals(RPC_SESSION_ID)) {
-                            sessionCookie = cookie;
-                            lastAuthTime = System.currentTimeMillis();
-                            break;
-                        }
-                    }
-                }
-
-                // Still no session cookie?
-                if (sessionCookie == null) {
-                    // Set error message and cancel the action that was requested
-                    throw new DaemonException(ExceptionType.AuthenticationFailure, "Password error? Server time difference? No (valid) cookie in " +
-                            "response and JSON was: " + HttpHelper.convertStreamToString(instream));
-                }
-
-            }
+            // Login first, if needed (other requests wait for this login rather than each logging in)
+            Cookie session = ensureAuthenticated(log);
 
             // Regular action
 
@@ -537,7 +503,7 @@ public class DelugeAdapter implements IDaemonAdapter {
                 }
             }
             if (!cookiePresent) {
-                httpclient.getCookieStore().addCookie(sessionCookie);
+                httpclient.getCookieStore().addCookie(session);
             }
 
             // Execute
@@ -552,6 +518,12 @@ public class DelugeAdapter implements IDaemonAdapter {
                 JSONObject json = new JSONObject(result);
                 instream.close();
 
+                if (mayRetry && isNotAuthenticated(json) && dropRejectedSession(session)) {
+                    // The session as restored from an earlier run is no longer valid: log in again (once)
+                    log.d(LOG_NAME, "Restored session was rejected; logging in again");
+                    return makeRequest(data, log, false);
+                }
+
                 log.d(LOG_NAME, "Success: " + (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" : result));
 
                 // Return JSON object
@@ -562,6 +534,8 @@ public class DelugeAdapter implements IDaemonAdapter {
             // No result?
             throw new DaemonException(ExceptionType.UnexpectedResponse, "No HTTP entity in response object.");
 
+        } catch (DaemonException e) {
+            throw e;
         } catch (JSONException e) {
             log.d(LOG_NAME, "Error: " + e.toString());
             throw new DaemonException(ExceptionType.UnexpectedResponse, e.toString());
@@ -572,6 +546,85 @@ public class DelugeAdapter implements IDaemonAdapter {
 
     }
 
+    /**
+     * Logs in to the Deluge web interface if there is no (recent) session yet. Requests that are made at the same time
+     * wait for one login rather than each logging in themselves.
+     *
+     * @return The session cookie to use for the next request
+     */
+    private synchronized Cookie ensureAuthenticated(Log log) throws DaemonException, JSONException, IOException {
+
+        if (sessionCookie != null && System.currentTimeMillis() - lastAuthTime <= MAX_SESSION_TIME) {
+            return sessionCookie;
+        }
+
+        sessionCookie = null;
+        // Build login object
+        String extraPass = settings.getExtraPassword();
+        if (extraPass == null) {
+            extraPass = "";
+        }
+        JSONObject loginRequest = new JSONObject();
+        loginRequest.put(RPC_METHOD, RPC_METHOD_AUTH_LOGIN);
+        loginRequest.put(RPC_PARAMS, (new JSONArray()).put(extraPass));
+        loginRequest.put(RPC_ID, 1);
+
+        // Set POST URL and data
+        HttpPost httppost = new HttpPost(buildWebUIUrl() + PATH_TO_RPC);
+        httppost.setHeader("content-type", "application/json");
+        StringEntity se = new StringEntity(loginRequest.toString());
+        httppost.setEntity(se);
+
+        // Execute
+        HttpResponse response = httpclient.execute(httppost);
+        InputStream instream = response.getEntity().getContent();
+
+        // Retrieve session ID
+        if (!httpclient.getCookieStore().getCookies().isEmpty()) {
+            for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
+                if (cookie.getName().equals(RPC_SESSION_ID)) {
+                    sessionCookie = cookie;
+                    lastAuthTime = System.currentTimeMillis();
+                    sessionRestored = false;
+                    AuthSessions.saveCookie(settings, httpclient, RPC_SESSION_ID);
+                    break;
+                }
+            }
+        }
+
+        // Still no session cookie?
+        if (sessionCookie == null) {
+            // Set error message and cancel the action that was requested
+            throw new DaemonException(ExceptionType.AuthenticationFailure, "Password error? Server time difference? No (valid) cookie in " +
+                    "response and JSON was: " + HttpHelper.convertStreamToString(instream));
+        }
+        instream.close();
+        return sessionCookie;
+
+    }
+
+    /**
+     * Forgets a session that the server rejected, if it was restored from an earlier run. When several requests were
+     * rejected with the same session, only the first actually drops it.
+     *
+     * @param rejected The session cookie that the server rejected
+     * @return True if the request should be retried (with a new session), false if the rejection was unexpected
+     */
+    private synchronized boolean dropRejectedSession(Cookie rejected) {
+        if (sessionCookie != rejected) {
+            // Another request already dropped this session (and perhaps logged in again)
+            return true;
+        }
+        if (!sessionRestored) {
+            return false;
+        }
+        sessionRestored = false;
+        sessionCookie = null;
+        httpclient.getCookieStore().clear();
+        AuthSessions.clearCookie(settings, RPC_SESSION_ID);
+        return true;
+    }
+
     /**
      * Instantiates an HTTP client with proper credentials that can be used for all Transmission requests.
      *
@@ -582,9 +635,29 @@ public class DelugeAdapter implements IDaemonAdapter {
             httpclient = HttpHelper.createStandardHttpClient(settings, settings.getUsername() != null && !settings.getUsername().equals(""));
             httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
             httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+            // Reuse the session of an earlier run (or adapter instance), to not have to log in first
+            AuthSessions.Session session =
+                    AuthSessions.restoreCookie(settings, httpclient, RPC_SESSION_ID, MAX_SESSION_TIME);
+            if (session != null) {
+                for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
+                    if (cookie.getName().equals(RPC_SESSION_ID)) {
+                        sessionCookie = cookie;
+                        lastAuthTime = session.getCreatedAt();
+                        sessionRestored = true;
+                    }
+                }
+            }
         }
     }
 
+    /**
+     * Whether the server responded with an error that our session is not (or no longer) valid.
+     */
+    private boolean isNotAuthenticated(JSONObject response) {
+        JSONObject error = response.optJSONObject("error");
+        return error != null && error.optInt("code") == 1;
+    }
+
     /**
      * Build the URL of the Transmission web UI from the user settings.
      *
@@ -612,6 +685,8 @@ public class DelugeAdapter implements IDaemonAdapter {
         }
         JSONObject objects = response.getJSONObject(RPC_TORRENTS);
         JSONArray names = objects.names();
+        StringPool pool = StringPool.forServer(settings);
+        String separator = settings.getOS().getPathSeperator();
         if (names != null) {
             for (int j = 0; j < names.length(); j++) {
 
@@ -628,7 +703,7 @@ public class DelugeAdapter implements IDaemonAdapter {
                         names.getString(j),
                         tor.getString(RPC_NAME),
                         status,
-                        tor.getString(RPC_SAVEPATH) + settings.getOS().getPathSeperator(),
+                        pool.get(tor.getString(RPC_SAVEPATH), separator),
                         tor.getInt(RPC_RATEDOWNLOAD),
                         tor.getInt(RPC_RATEUPLOAD),
                         tor.getInt(RPC_NUMSEEDS),
@@ -641,10 +716,10 @@ public class DelugeAdapter implements IDaemonAdapter {
                         tor.getLong(RPC_TOTALSIZE),
                         ((float) tor.getDouble(RPC_PARTDONE)) / 100f, // Percentage to [0..1]
                         0f, // Not available
-                        tor.has(RPC_LABEL) ? tor.getString(RPC_LABEL) : null,
+                        tor.has(RPC_LABEL) ? pool.get(tor.getString(RPC_LABEL)) : null,
                         tor.has(RPC_TIMEADDED) ? new Date((long) (tor.getDouble(RPC_TIMEADDED) * 1000L)) : null,
                         null, // Not available
-                        error,
+                        pool.get(error),
                         settings.getType()));
                 // @formatter:on
             }
@@ -716,8 +791,9 @@ public class DelugeAdapter implements IDaemonAdapter {
         List<String> trackers = new ArrayList<>();
         JSONArray trackerObjects = response.getJSONArray(RPC_TRACKERS);
         if (trackerObjects != null && trackerObjects.length() > 0) {
+            StringPool pool = StringPool.forServer(settings);
             for (int i = 0; i < trackerObjects.length(); i++) {
-                trackers.add(trackerObjects.getJSONObject(i).getString("url"));
+                trackers.add(pool.get(trackerObjects.getJSONObject(i).getString("url")));
             }
         }
         List<String> errors = new ArrayList<>();
@@ -38,6 +38,7 @@ import org.transdroid.daemon.Priority;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentDetails;
 import org.transdroid.daemon.TorrentFile;
+import org.transdroid.daemon.TorrentsAggregate;
 import org.transdroid.daemon.task.AddByFileTask;
 import org.transdroid.daemon.task.AddByMagnetUrlTask;
 import org.transdroid.daemon.task.AddByUrlTask;
@@ -58,6 +59,8 @@ import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTrackersTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
+import org.transdroid.daemon.util.ServerCapabilities;
+import org.transdroid.daemon.util.StringPool;
 import org.xml.sax.SAXException;
 
 import java.io.BufferedInputStream;
@@ -75,7 +78,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -154,6 +156,7 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     private final boolean isVersion2;
 
     private int version = -1;
+    private Set<String> methods = null;
 
     public DelugeRpcAdapter(DaemonSettings settings, boolean isVersion2) {
         this.settings = settings;
@@ -204,6 +207,10 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
                             "supported by " + getType()));
             }
         } catch (DaemonException e) {
+            if (e.getType() == ExceptionType.UnexpectedResponse || e.getType() == ExceptionType.ParsingFailed) {
+                // The server (software or plugins) might have changed since we learned its capabilities
+                invalidateCapabilities();
+            }
             return new DaemonTaskFailureResult(task, e);
         }
     }
@@ -323,7 +330,7 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
         final List<String> labelNames = hasLabelPlugin ? (List<String>) client.sendRequest(RPC_METHOD_GET_LABELS) : new ArrayList<>();
 
         // Extract labels & counts from torrents.
-        final List<Label> labels = getLabels(labelNames, torrents);
+        final List<Label> labels = TorrentsAggregate.of(torrents, false).getLabels(labelNames);
 
         return new RetrieveTaskSuccessResult(task, torrents, labels);
     }
@@ -337,8 +344,9 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
         final List<Map<String, Object>> trackerResponses = (List<Map<String, Object>>) response.get(RPC_TRACKERS);
         final List<String> trackers = new ArrayList<>();
         if (trackerResponses != null) {
+            final StringPool pool = StringPool.forServer(settings);
             for (Map<String, Object> trackerResponse : trackerResponses) {
-                trackers.add((String) trackerResponse.get(RPC_URL));
+                trackers.add(pool.get((String) trackerResponse.get(RPC_URL)));
             }
         }
 
@@ -463,6 +471,8 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     @NonNull
     private List<Torrent> getTorrents(Collection<Map<String, Object>> torrentMaps) {
         final List<Torrent> torrents = new ArrayList<>();
+        final StringPool pool = StringPool.forServer(settings);
+        final String separator = settings.getOS().getPathSeperator();
         int id = 0;
         for (Map<String, Object> torrentMap : torrentMaps) {
             final Number timeAdded = (Number) torrentMap.get(RPC_TIMEADDED);
@@ -484,47 +494,18 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
             }
 
             torrents.add(new Torrent(id++, (String) torrentMap.get(RPC_HASH), (String) torrentMap.get(RPC_NAME), DelugeCommon.convertDelugeState(
-                    (String) torrentMap.get(RPC_STATUS)), torrentMap.get(RPC_SAVEPATH) + settings.getOS().getPathSeperator(), ((Number) torrentMap
+                    (String) torrentMap.get(RPC_STATUS)), pool.get(String.valueOf(torrentMap.get(RPC_SAVEPATH)), separator), ((Number) torrentMap
                     .get(RPC_RATEDOWNLOAD)).intValue(), ((Number) torrentMap.get(RPC_RATEUPLOAD)).intValue(), ((Number) torrentMap.get
                     (RPC_NUMSEEDS)).intValue(), ((Number) torrentMap.get(RPC_TOTALSEEDS)).intValue(), ((Number) torrentMap.get(RPC_NUMPEERS))
                     .intValue(), ((Number) torrentMap.get(RPC_TOTALPEERS)).intValue(), ((Number) torrentMap.get(RPC_ETA)).intValue(), ((Number)
                     torrentMap.get(RPC_DOWNLOADEDEVER)).longValue(), ((Number) torrentMap.get(RPC_UPLOADEDEVER)).longValue(), ((Number) torrentMap
                     .get(RPC_TOTALSIZE)).longValue(), ((Number) torrentMap.get(RPC_PARTDONE)).floatValue() / 100f, 0f, // Not available
-                    (String) torrentMap.get(RPC_LABEL), timeAddedDate, null, // Not available
-                    error, getType()));
+                    pool.get((String) torrentMap.get(RPC_LABEL)), timeAddedDate, null, // Not available
+                    pool.get(error), getType()));
         }
         return torrents;
     }
 
-    @NonNull
-    private List<Label> getLabels(List<String> labelsResponse, List<Torrent> torrents) {
-        // First get all labels that torrents and count them
-        final Map<String, MutableInt> labelCounters = new HashMap<>();
-        for (Torrent torrent : torrents) {
-            final String label = torrent.getLabelName();
-            if (label != null) {
-                final MutableInt count = labelCounters.get(label);
-                if (count == null) {
-                    labelCounters.put(label, new MutableInt(1));
-                } else {
-                    count.increment();
-                }
-            }
-        }
-        final List<Label> labels = new ArrayList<>();
-        for (Entry<String, MutableInt> entry : labelCounters.entrySet()) {
-            labels.add(new Label(entry.getKey(), entry.getValue().get()));
-        }
-
-        // Now get all labels and add labels that have no torrents.
-        for (String label : labelsResponse) {
-            if (!labelCounters.containsKey(label)) {
-                labels.add(new Label(label, 0));
-            }
-        }
-        return labels;
-    }
-
     @NonNull
     private ArrayList<TorrentFile> getTorrentFiles(DelugeRpcClient client, Torrent torrent) throws DaemonException {
         final ArrayList<TorrentFile> files = new ArrayList<>();
@@ -597,10 +578,21 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     }
 
     private void ensureVersion(DelugeRpcClient client) throws DaemonException {
+        if (version > 0) {
+            return;
+        }
+        version = ServerCapabilities.getInt(settings, ServerCapabilities.VERSION, -1);
         if (version > 0) {
             return;
         }
         version = DelugeCommon.getVersionString((String) client.sendRequest(RPC_METHOD_INFO));
+        ServerCapabilities.put(settings, ServerCapabilities.VERSION, version);
+    }
+
+    private void invalidateCapabilities() {
+        version = -1;
+        methods = null;
+        ServerCapabilities.invalidate(settings, ServerCapabilities.VERSION, ServerCapabilities.METHODS);
     }
 
     // Return an Object so it doesn't confuse our varargs sendRequest methods.
@@ -627,30 +619,17 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     }
 
     private boolean hasMethod(DelugeRpcClient client, String method) throws DaemonException {
-        //noinspection unchecked
-        final List<String> methods = (List<String>) client.sendRequest(RPC_METHOD_GET_METHOD_LIST);
-        return methods.contains(method);
-    }
-
-    /**
-     * Used to count torrents in labels.
-     */
-    private static class MutableInt {
-
-        int value;
-
-        MutableInt(int value) {
-            this.value = value;
-        }
-
-        void increment() {
-            ++value;
-        }
-
-        int get() {
-            return value;
+        if (methods == null) {
+            // The (long) list of methods only changes when plugins are (un)installed, so use it as stored earlier
+            List<String> known = ServerCapabilities.getList(settings, ServerCapabilities.METHODS);
+            if (known == null) {
+                //noinspection unchecked
+                known = (List<String>) client.sendRequest(RPC_METHOD_GET_METHOD_LIST);
+                ServerCapabilities.put(settings, ServerCapabilities.METHODS, known);
+            }
+            methods = new HashSet<>(known);
         }
-
+        return methods.contains(method);
     }
 
 }
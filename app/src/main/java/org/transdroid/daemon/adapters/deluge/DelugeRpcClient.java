@@ -22,6 +22,7 @@ import androidx.annotation.NonNull;
 import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.DaemonException.ExceptionType;
 import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.util.TaskMetrics;
 import org.transdroid.daemon.util.TlsSniSocketFactory;
 
 import java.io.ByteArrayOutputStream;
@@ -128,8 +129,8 @@ class DelugeRpcClient implements Closeable {
 
     @NonNull
     private Object readResponse() throws DaemonException, IOException {
-        final InputStream in = socket.getInputStream();
-        final InflaterInputStream inflater = new InflaterInputStream(in);
+        final InputStream in = TaskMetrics.countReceived(socket.getInputStream());
+        final InputStream inflater = TaskMetrics.countDecoded(new InflaterInputStream(in));
         final ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         final byte[] buffer;
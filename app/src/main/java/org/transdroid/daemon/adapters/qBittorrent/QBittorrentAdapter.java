@@ -43,6 +43,7 @@ import org.transdroid.daemon.Priority;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentDetails;
 import org.transdroid.daemon.TorrentFile;
+import org.transdroid.daemon.TorrentsAggregate;
 import org.transdroid.daemon.TorrentStatus;
 import org.transdroid.daemon.task.AddByFileTask;
 import org.transdroid.daemon.task.AddByMagnetUrlTask;
@@ -64,7 +65,10 @@ import org.transdroid.daemon.task.SetDownloadLocationTask;
 import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
+import org.transdroid.daemon.util.AuthSessions;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.ServerCapabilities;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -73,9 +77,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The daemon adapter for the qBittorrent torrent client.
@@ -85,11 +87,13 @@ import java.util.Map;
 public class QBittorrentAdapter implements IDaemonAdapter {
 
     private static final String LOG_NAME = "qBittorrent daemon";
+    private static final String SESSION_COOKIE = "SID";
 
     private DaemonSettings settings;
     private DefaultHttpClient httpclient;
     private int version = -1;
     private long lastAuthTime = -1;
+    private boolean sessionRestored = false;
     private int qbNoPriority = 0;
     private int qbLowPriority = 1;
     private int qbNormalPriority = 2;
@@ -99,11 +103,21 @@ public class QBittorrentAdapter implements IDaemonAdapter {
         this.settings = settings;
     }
 
-    private synchronized void ensureVersion(Log log) {
+    private synchronized void ensureVersion(Log log) throws DaemonException {
         // Still need to retrieve the API and qBittorrent version numbers from the server?
         if (version > 0)
             return;
 
+        // Known from an earlier run?
+        int knownVersion = ServerCapabilities.getInt(settings, ServerCapabilities.VERSION, -1);
+        if (knownVersion > 0) {
+            version = knownVersion;
+            if (version >= 30200) {
+                qbNormalPriority = 6;
+            }
+            return;
+        }
+
         // Since 4.1, API v2 is used. Since qBittorrent 3.2, API v1 is used. Otherwise we use unofficial legacy json endpoints.
         try {
             String versionText = "";
@@ -111,6 +125,9 @@ public class QBittorrentAdapter implements IDaemonAdapter {
                 // Try v2 API first, which returns version number in 'v4.1.9' format
                 versionText = makeRequest(log, "/api/v2/app/version").substring(1);
             } catch (Exception e1) {
+                if (isRejectedSession(e1)) {
+                    throw (DaemonException) e1;
+                }
                 // Try v1 API, which returns version number in 'v3.2.0' format
                 try {
                     versionText = makeRequest(log, "/version/qbittorrent").substring(1);
@@ -131,8 +148,13 @@ public class QBittorrentAdapter implements IDaemonAdapter {
             if (version >= 30200) {
               qbNormalPriority = 6;
             }
+            ServerCapabilities.put(settings, ServerCapabilities.VERSION, version);
 
         } catch (Exception e) {
+            if (isRejectedSession(e)) {
+                // Not an old version, but a restored session that is no longer valid
+                throw (DaemonException) e;
+            }
             // Unable to establish version number; assume an old version by setting it to version 1
             version = 10000;
             qbNormalPriority = 2;
@@ -195,6 +217,32 @@ public class QBittorrentAdapter implements IDaemonAdapter {
         if (!isAuthenticated()) {
             throw new DaemonException(ExceptionType.AuthenticationFailure, "Server rejected our login");
         }
+        sessionRestored = false;
+        AuthSessions.saveCookie(settings, httpclient, SESSION_COOKIE);
+    }
+
+    /**
+     * Whether some error is caused by the server rejecting the session cookie as restored from an earlier run.
+     */
+    private boolean isRejectedSession(Exception e) {
+        return sessionRestored && e instanceof DaemonException
+                && ((DaemonException) e).getType() == ExceptionType.AuthenticationFailure;
+    }
+
+    /**
+     * Forgets the server version, which is determined again with the next task, as the server (software) might have
+     * changed since it was last determined.
+     */
+    private synchronized void invalidateVersion() {
+        version = -1;
+        ServerCapabilities.invalidate(settings, ServerCapabilities.VERSION);
+    }
+
+    private synchronized void dropSession() {
+        sessionRestored = false;
+        lastAuthTime = -1;
+        httpclient.getCookieStore().clear();
+        AuthSessions.clearCookie(settings, SESSION_COOKIE);
     }
 
     private boolean isAuthenticated() {
@@ -203,7 +251,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
         }
         List<Cookie> cookies = httpclient.getCookieStore().getCookies();
         for (Cookie c : cookies) {
-            if (c.getName().equals("SID")) {
+            if (c.getName().equals(SESSION_COOKIE)) {
                 // And here it is!  Okay, no need authenticate again.
                 return true;
             }
@@ -245,7 +293,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
                     if (allLabelsResult == null) {
                         allLabelsResult = new JSONArray();
                     }
-                    final List<Label> labelList = parseJsonLabels(allLabelsResult, allTorrentsResult);
+                    final List<Label> labelList = parseJsonLabels(allLabelsResult, torrentsList);
                     return new RetrieveTaskSuccessResult((RetrieveTask) task, torrentsList, labelList);
 
                 case GetTorrentDetails:
@@ -522,8 +570,18 @@ public class QBittorrentAdapter implements IDaemonAdapter {
                             new DaemonException(ExceptionType.MethodUnsupported, task.getMethod() + " is not supported by " + getType()));
             }
         } catch (JSONException e) {
+            invalidateVersion();
             return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.ParsingFailed, e.toString()));
         } catch (DaemonException e) {
+            if (e.getType() == ExceptionType.ParsingFailed || e.getType() == ExceptionType.UnexpectedResponse) {
+                invalidateVersion();
+            }
+            if (isRejectedSession(e)) {
+                // The session as restored from an earlier run is no longer valid: log in again (once)
+                log.d(LOG_NAME, "Restored session was rejected; logging in again");
+                dropSession();
+                return executeTask(log, task);
+            }
             return new DaemonTaskFailureResult(task, e);
         }
     }
@@ -613,6 +671,13 @@ public class QBittorrentAdapter implements IDaemonAdapter {
     private synchronized void initialise() throws DaemonException {
         if (httpclient == null) {
             httpclient = HttpHelper.createStandardHttpClient(settings, true);
+            // Reuse the session of an earlier run (or adapter instance), to not have to log in first
+            AuthSessions.Session session =
+                    AuthSessions.restoreCookie(settings, httpclient, SESSION_COOKIE, MAX_SESSION_TIME);
+            if (session != null) {
+                lastAuthTime = session.getCreatedAt();
+                sessionRestored = true;
+            }
         }
     }
 
@@ -634,15 +699,16 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
         ArrayList<String> trackers = new ArrayList<>();
         ArrayList<String> errors = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
 
         // Parse response
         if (messages.length() > 0) {
             for (int i = 0; i < messages.length(); i++) {
                 JSONObject tor = messages.getJSONObject(i);
-                trackers.add(tor.getString("url"));
+                trackers.add(pool.get(tor.getString("url")));
                 String msg = tor.getString("msg");
                 if (msg != null && !msg.equals(""))
-                    errors.add(msg);
+                    errors.add(pool.get(msg));
             }
         }
 
@@ -658,26 +724,15 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
     }
 
-    private List<Label> parseJsonLabels(JSONArray allLabelsResponse, JSONArray allTorrentsResponse) throws JSONException {
+    private List<Label> parseJsonLabels(JSONArray allLabelsResponse, List<Torrent> torrents) throws JSONException {
 
-        // Collect used labels from torrents response
-        Map<String, Label> labels = new HashMap<>();
-        for (int i = 0; i < allTorrentsResponse.length(); i++) {
-            JSONObject tor = allTorrentsResponse.getJSONObject(i);
-            if (tor.has("category")) {
-                String label = tor.optString("category");
-                final Label labelObject = labels.get(label);
-                labels.put(label, new Label(label, (labelObject != null) ? labelObject.getCount() + 1 : 1));
-            }
-        }
-        // add unused labels
+        // Count used labels from the parsed torrents and add the unused labels
+        List<String> allLabels = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
         for (int i = 0; i < allLabelsResponse.length(); i++) {
-            String label = allLabelsResponse.getString(i);
-            if (!labels.containsKey(label)) {
-                labels.put(label, new Label(label, 0));
-            }
+            allLabels.add(pool.get(allLabelsResponse.getString(i)));
         }
-        return new ArrayList<>(labels.values());
+        return TorrentsAggregate.of(torrents, false).getLabels(allLabels);
 
     }
 
@@ -685,6 +740,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
         // Parse response
         ArrayList<Torrent> torrents = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
         for (int i = 0; i < response.length(); i++) {
             JSONObject tor = response.getJSONObject(i);
             double progress = tor.getDouble("progress");
@@ -704,7 +760,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
             if (version >= 30200) {
                 torrentBuilder
-                        .setLocationDir(tor.getString("save_path"))
+                        .setLocationDir(pool.get(tor.getString("save_path")))
                         .setLeechersConnected(tor.getInt("num_leechs"))
                         .setLeechersKnown(tor.getInt("num_complete") + tor.getInt("num_incomplete"))
                         .setSeedersConnected(tor.getInt("num_seeds"))
@@ -736,7 +792,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
                 String label = tor.optString("category");
                 if (!label.isEmpty()) {
-                    torrentBuilder.setLabel(label);
+                    torrentBuilder.setLabel(pool.get(label));
                 }
             } else {
                 int[] leechers = parsePeers(tor.getString("num_leechs"));
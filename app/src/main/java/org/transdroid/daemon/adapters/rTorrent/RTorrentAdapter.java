@@ -51,6 +51,8 @@ import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.ServerCapabilities;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -96,11 +98,18 @@ public class RTorrentAdapter implements IDaemonAdapter {
 
         try {
             // Ensure a version number is know to switch to the right methods
+            if (version == null) {
+                int knownVersion = ServerCapabilities.getInt(settings, ServerCapabilities.VERSION, -1);
+                if (knownVersion > 0) {
+                    version = knownVersion;
+                }
+            }
             if (version == null) {
                 try {
                     Object versionObject = makeRtorrentCall(log, "system.client_version", new String[0]);
                     String[] versionRaw = versionObject.toString().split("\\.");
                     version = (Integer.parseInt(versionRaw[0]) * 10000) + (Integer.parseInt(versionRaw[1]) * 100) + Integer.parseInt(versionRaw[2]);
+                    ServerCapabilities.put(settings, ServerCapabilities.VERSION, version);
                 } catch (Exception e) {
                     version = 10000;
                 }
@@ -314,6 +323,11 @@ public class RTorrentAdapter implements IDaemonAdapter {
                             task.getMethod() + " is not supported by " + getType()));
             }
         } catch (DaemonException e) {
+            if (e.getType() == ExceptionType.UnexpectedResponse || e.getType() == ExceptionType.ParsingFailed) {
+                // The server (software) might have changed since we learned its version
+                version = null;
+                ServerCapabilities.invalidate(settings, ServerCapabilities.VERSION);
+            }
             return new DaemonTaskFailureResult(task, e);
         } catch (FileNotFoundException e) {
             return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.FileAccessError, e.toString()));
@@ -395,12 +409,13 @@ public class RTorrentAdapter implements IDaemonAdapter {
             // Formatted as Object[][], see http://libtorrent.rakshasa.no/wiki/RTorrentCommands#Download
             List<Torrent> torrents = new ArrayList<>();
             Map<String, Integer> labels = new HashMap<>();
+            StringPool pool = StringPool.forServer(settings);
             Object[] responseList = (Object[]) response;
             for (int i = 0; i < responseList.length; i++) {
 
                 Object[] info = (Object[]) responseList[i];
                 String error = (String) info[18];
-                error = error.equals("") ? null : error;
+                error = error.equals("") ? null : pool.get(error);
 
                 // Determine the time added
                 Date added;
@@ -440,7 +455,7 @@ public class RTorrentAdapter implements IDaemonAdapter {
                 // Determine the label
                 String label = null;
                 try {
-                    label = URLDecoder.decode((String) info[21], "UTF-8");
+                    label = pool.get(URLDecoder.decode((String) info[21], "UTF-8"));
                     if (labels.containsKey(label)) {
                         labels.put(label, labels.get(label) + 1);
                     } else {
@@ -647,11 +662,12 @@ public class RTorrentAdapter implements IDaemonAdapter {
             // Parse a torrent's trackers from response
             // Formatted as Object[][], see http://libtorrent.rakshasa.no/wiki/RTorrentCommands#Download
             List<String> trackers = new ArrayList<>();
+            StringPool pool = StringPool.forServer(settings);
             Object[] responseList = (Object[]) response;
             try {
                 for (Object aResponseList : responseList) {
                     Object[] info = (Object[]) aResponseList;
-                    trackers.add((String) info[0]);
+                    trackers.add(pool.get((String) info[0]));
                 }
             } catch (Exception e) {
                 log.e(LOG_NAME, e.toString());
@@ -53,8 +53,10 @@ import org.transdroid.daemon.task.GetTorrentDetailsTaskSuccessResult;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetTransferRatesTask;
+import org.transdroid.daemon.util.AuthSessions;
 import org.transdroid.daemon.util.Collections2;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 import org.transdroid.multipart.Utf8StringPart;
 
 import java.io.File;
@@ -73,11 +75,13 @@ import java.util.List;
 public class SynologyAdapter implements IDaemonAdapter {
 
     private static final String LOG_NAME = "Synology daemon";
+    private static final String SESSION_SID = "sid";
 
     private DaemonSettings settings;
     private DefaultHttpClient httpClient;
 
     private String sid;
+    private boolean sessionRestored = false;
 
     public SynologyAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -86,6 +90,12 @@ public class SynologyAdapter implements IDaemonAdapter {
     private synchronized void initialise() throws DaemonException {
         if (httpClient == null) {
             httpClient = HttpHelper.createStandardHttpClient(settings, true);
+            // Reuse the session of an earlier run (or adapter instance), to not have to log in first
+            AuthSessions.Session session = AuthSessions.restore(settings, SESSION_SID, MAX_SESSION_TIME);
+            if (session != null) {
+                sid = session.getValue();
+                sessionRestored = true;
+            }
         }
     }
 
@@ -147,6 +157,14 @@ public class SynologyAdapter implements IDaemonAdapter {
                     return null;
             }
         } catch (DaemonException e) {
+            if (sessionRestored && e.getType() == ExceptionType.AuthenticationFailure) {
+                // The session as restored from an earlier run is no longer valid: log in again (once)
+                log.d(LOG_NAME, "Restored session was rejected; logging in again");
+                sessionRestored = false;
+                sid = null;
+                AuthSessions.clear(settings, SESSION_SID);
+                return executeTask(log, task);
+            }
             return new DaemonTaskFailureResult(task, e);
         }
     }
@@ -166,9 +184,12 @@ public class SynologyAdapter implements IDaemonAdapter {
     private String login(Log log) throws DaemonException {
         log.d(LOG_NAME, "login()");
         try {
-            return new SynoRequest("auth.cgi", "SYNO.API.Auth", "2")
+            String sid = new SynoRequest("auth.cgi", "SYNO.API.Auth", "2")
                     .get("&method=login&account=" + settings.getUsername() + "&passwd=" + settings.getPassword() +
                             "&session=DownloadStation&format=sid").getData(log).getString("sid");
+            sessionRestored = false;
+            AuthSessions.save(settings, SESSION_SID, sid);
+            return sid;
         } catch (JSONException e) {
             throw new DaemonException(ExceptionType.ParsingFailed, e.toString());
         }
@@ -300,6 +321,7 @@ public class SynologyAdapter implements IDaemonAdapter {
     private TorrentDetails torrentDetails(Log log, String torrentId) throws DaemonException {
         List<String> trackers = new ArrayList<>();
         List<String> errors = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
         try {
             JSONObject jsonTorrent = authGet(log, "SYNO.DownloadStation.Task", "1", "DownloadStation/task.cgi",
                     "&method=getinfo&id=" + torrentId + "&additional=tracker").getData(log).getJSONArray("tasks")
@@ -310,9 +332,9 @@ public class SynologyAdapter implements IDaemonAdapter {
                 for (int i = 0; i < tracker.length(); i++) {
                     JSONObject t = tracker.getJSONObject(i);
                     if ("Success".equals(t.getString("status"))) {
-                        trackers.add(t.getString("url"));
+                        trackers.add(pool.get(t.getString("url")));
                     } else {
-                        errors.add(t.getString("status"));
+                        errors.add(pool.get(t.getString("status")));
                     }
                 }
             }
@@ -342,13 +364,14 @@ public class SynologyAdapter implements IDaemonAdapter {
                 }
             }
         }
+        StringPool pool = StringPool.forServer(settings);
         // @formatter:off
         return new Torrent(
                 id,
                 jsonTorrent.getString("id"),
                 jsonTorrent.getString("title"),
                 torrentStatus(jsonTorrent.getString("status")),
-                detail.getString("destination"),
+                pool.get(detail.getString("destination")),
                 speed,
                 transfer.getInt("speed_upload"),
                 detail.getInt("connected_seeders"),
@@ -479,13 +502,24 @@ public class SynologyAdapter implements IDaemonAdapter {
             JSONObject json = getJson(log);
             try {
                 if (!json.getBoolean("success")) {
-                    throw new DaemonException(ExceptionType.UnexpectedResponse, json.getString("error"));
+                    throw new DaemonException(isSessionError(json) ? ExceptionType.AuthenticationFailure :
+                            ExceptionType.UnexpectedResponse, json.getString("error"));
                 }
             } catch (JSONException e) {
                 throw new DaemonException(ExceptionType.ParsingFailed, e.toString());
             }
         }
 
+        /**
+         * Whether the error response indicates that our session id is not (or no longer) valid.
+         */
+        private static boolean isSessionError(JSONObject json) {
+            JSONObject error = json.optJSONObject("error");
+            int code = error == null ? -1 : error.optInt("code");
+            // No permission, session timeout, session interrupted by another login or session id not found
+            return code == 105 || code == 106 || code == 107 || code == 119;
+        }
+
     }
 
     private class SynoRequest {
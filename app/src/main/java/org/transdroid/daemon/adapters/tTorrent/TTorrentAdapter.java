@@ -58,6 +58,7 @@ import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -283,15 +284,16 @@ public class TTorrentAdapter implements IDaemonAdapter {
 
         ArrayList<String> trackers = new ArrayList<>();
         ArrayList<String> errors = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
 
         // Parse response
         if (messages.length() > 0) {
             for (int i = 0; i < messages.length(); i++) {
                 JSONObject tor = messages.getJSONObject(i);
-                trackers.add(tor.getString("url"));
+                trackers.add(pool.get(tor.getString("url")));
                 String msg = tor.getString("msg");
                 if (msg != null && !msg.equals(""))
-                    errors.add(msg);
+                    errors.add(pool.get(msg));
             }
         }
 
@@ -17,13 +17,10 @@
  */
 package org.transdroid.daemon.adapters.transmission;
 
+import android.os.SystemClock;
+
 import net.iharder.Base64;
 import net.iharder.Base64.InputStream;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -61,7 +58,13 @@ import org.transdroid.daemon.task.SetAlternativeModeTask;
 import org.transdroid.daemon.task.SetDownloadLocationTask;
 import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
-import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.AuthSessions;
+import org.transdroid.daemon.util.DataUsage;
+import org.transdroid.daemon.util.HttpTransport;
+import org.transdroid.daemon.util.HttpTransports;
+import org.transdroid.daemon.util.ServerCapabilities;
+import org.transdroid.daemon.util.StringPool;
+import org.transdroid.daemon.util.TaskMetrics;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -71,7 +74,9 @@ import java.io.StringWriter;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The daemon adapter from the Transmission torrent client.
@@ -110,10 +115,18 @@ public class TransmissionAdapter implements IDaemonAdapter {
     private static final String RPC_FILE_COMPLETED = "bytesCompleted";
     private static final String RPC_FILESTAT_WANTED = "wanted";
     private static final String RPC_FILESTAT_PRIORITY = "priority";
-    private static String sessionToken;
+    private static final String SESSION_TOKEN = "token";
+    private static final long SESSION_TOKEN_MAX_AGE = 24 * 60 * 60 * 1000; // Valid until the daemon restarts
+    private static final long RECENTLY_ACTIVE_WINDOW = 45 * 1000; // Transmission returns the torrents active in the last 60s
+    private static final long FULL_RETRIEVE_INTERVAL = 5 * 60 * 1000;
+    private volatile String sessionToken;
     private DaemonSettings settings;
-    private DefaultHttpClient httpclient;
-    private long rpcVersion = -1;
+    private HttpTransport transport;
+    private volatile long rpcVersion = -1;
+    // The last retrieved torrents, such that only the recently active torrents need to be retrieved when saving data
+    private List<Torrent> lastTorrents = null;
+    private long lastRetrievedAt = 0;
+    private long lastFullRetrievedAt = 0;
 
     public TransmissionAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -124,11 +137,15 @@ public class TransmissionAdapter implements IDaemonAdapter {
 
         try {
 
-            // Get the server version
+            // Get the server version, if not known from an earlier request
+            if (rpcVersion <= -1) {
+                rpcVersion = ServerCapabilities.getInt(settings, ServerCapabilities.VERSION, -1);
+            }
             if (rpcVersion <= -1) {
                 // Get server session statistics
                 JSONObject response = makeRequest(log, buildRequestObject("session-get", new JSONObject()));
                 rpcVersion = response.getJSONObject("arguments").getInt("rpc-version");
+                ServerCapabilities.put(settings, ServerCapabilities.VERSION, (int) rpcVersion);
             }
 
             JSONObject request = new JSONObject();
@@ -146,16 +163,31 @@ public class TransmissionAdapter implements IDaemonAdapter {
                         fields.put(field);
                     }
                     request.put("fields", fields);
+                    // When saving data, only get the torrents that changed since the last retrieval, if still recent
+                    long requestedAt = SystemClock.elapsedRealtime();
+                    boolean recentlyActive = DataUsage.shouldSaveData() && canRetrieveRecentlyActive(requestedAt);
+                    if (recentlyActive) {
+                        request.put("ids", "recently-active");
+                    }
 
                     JSONObject result = makeRequest(log, buildRequestObject("torrent-get", request));
-                    return new RetrieveTaskSuccessResult((RetrieveTask) task,
-                            parseJsonRetrieveTorrents(result.getJSONObject("arguments")), null);
+                    JSONObject arguments = result.getJSONObject("arguments");
+                    long parseStart = SystemClock.elapsedRealtime();
+                    List<Torrent> torrents = mergeRetrievedTorrents(parseJsonRetrieveTorrents(arguments),
+                            recentlyActive ? arguments.optJSONArray("removed") : null, recentlyActive, requestedAt);
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - parseStart);
+                    return new RetrieveTaskSuccessResult((RetrieveTask) task, torrents, null);
 
                 case GetStats:
 
                     // Request the current server statistics
                     JSONObject stats = makeRequest(log, buildRequestObject("session-get", new JSONObject()))
                             .getJSONObject("arguments");
+                    if (stats.has("rpc-version") && stats.getInt("rpc-version") != rpcVersion) {
+                        // The server was updated since we learned its version
+                        rpcVersion = stats.getInt("rpc-version");
+                        ServerCapabilities.put(settings, ServerCapabilities.VERSION, (int) rpcVersion);
+                    }
                     return new GetStatsTaskSuccessResult((GetStatsTask) task, stats.getBoolean("alt-speed-enabled"),
                             rpcVersion >= 12 ? stats.getLong("download-dir-free-space") : -1);
 
@@ -170,8 +202,10 @@ public class TransmissionAdapter implements IDaemonAdapter {
                             buildTorrentRequestObject(task.getTargetTorrent().getUniqueID(), null, false);
                     buildDGet.put("fields", dfields);
                     JSONObject getDResult = makeRequest(log, buildRequestObject("torrent-get", buildDGet));
-                    return new GetTorrentDetailsTaskSuccessResult((GetTorrentDetailsTask) task,
-                            parseJsonTorrentDetails(getDResult.getJSONObject("arguments")));
+                    long dparseStart = SystemClock.elapsedRealtime();
+                    TorrentDetails details = parseJsonTorrentDetails(getDResult.getJSONObject("arguments"));
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - dparseStart);
+                    return new GetTorrentDetailsTaskSuccessResult((GetTorrentDetailsTask) task, details);
 
                 case GetFileList:
 
@@ -183,8 +217,11 @@ public class TransmissionAdapter implements IDaemonAdapter {
                     JSONObject buildGet = buildTorrentRequestObject(task.getTargetTorrent().getUniqueID(), null, false);
                     buildGet.put("fields", ffields);
                     JSONObject getResult = makeRequest(log, buildRequestObject("torrent-get", buildGet));
-                    return new GetFileListTaskSuccessResult((GetFileListTask) task,
-                            parseJsonFileList(getResult.getJSONObject("arguments"), task.getTargetTorrent()));
+                    long fparseStart = SystemClock.elapsedRealtime();
+                    List<TorrentFile> files =
+                            parseJsonFileList(getResult.getJSONObject("arguments"), task.getTargetTorrent());
+                    TaskMetrics.recordParse(SystemClock.elapsedRealtime() - fparseStart);
+                    return new GetFileListTaskSuccessResult((GetFileListTask) task, files);
 
                 case AddByFile:
 
@@ -355,8 +392,12 @@ public class TransmissionAdapter implements IDaemonAdapter {
                             task.getMethod() + " is not supported by " + getType()));
             }
         } catch (JSONException e) {
+            invalidateVersion();
             return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.ParsingFailed, e.toString()));
         } catch (DaemonException e) {
+            if (e.getType() == ExceptionType.ParsingFailed || e.getType() == ExceptionType.UnexpectedResponse) {
+                invalidateVersion();
+            }
             return new DaemonTaskFailureResult(task, e);
         } catch (FileNotFoundException e) {
             return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.FileAccessError, e.toString()));
@@ -365,6 +406,15 @@ public class TransmissionAdapter implements IDaemonAdapter {
         }
     }
 
+    /**
+     * Forgets the server version, which is requested again with the next task, as the server (software) might have
+     * changed since it was last requested.
+     */
+    private void invalidateVersion() {
+        rpcVersion = -1;
+        ServerCapabilities.invalidate(settings, ServerCapabilities.VERSION);
+    }
+
     private JSONObject buildTorrentRequestObject(String torrentID, String extraKey, boolean extraValue)
             throws JSONException {
         return buildTorrentRequestObject(Long.parseLong(torrentID), extraKey, extraValue);
@@ -397,60 +447,59 @@ public class TransmissionAdapter implements IDaemonAdapter {
         return request;
     }
 
-    private synchronized JSONObject makeRequest(Log log, JSONObject data) throws DaemonException {
+    private JSONObject makeRequest(Log log, JSONObject data) throws DaemonException {
 
         try {
 
-            // Initialise the HTTP client
-            initialise();
+            // Get the (shared) HTTP transport to the server
+            HttpTransport transport = initialise();
             final String sessionHeader = "X-Transmission-Session-Id";
 
             // Setup request using POST stream with URL and data
-            HttpPost httppost = new HttpPost(buildWebUIUrl());
-            StringEntity se = new StringEntity(data.toString(), "UTF-8");
-            httppost.setEntity(se);
+            HttpTransport.Request request = HttpTransport.Request.post(buildWebUIUrl(), data.toString(),
+                    "text/plain; charset=UTF-8");
 
             // Send the stored session token as a header
-            if (sessionToken != null) {
-                httppost.addHeader(sessionHeader, sessionToken);
+            String sentToken = sessionToken;
+            if (sentToken != null) {
+                request.setHeader(sessionHeader, sentToken);
             }
 
             // Execute
-            log.d(LOG_NAME, "Execute " + data.getString("method") + " request to " + httppost.getURI().toString());
-            HttpResponse response = httpclient.execute(httppost);
+            log.d(LOG_NAME, "Execute " + data.getString("method") + " request to " + request.getUrl());
+            HttpTransport.Response response = transport.execute(request);
 
             // Authentication error?
-            if (response.getStatusLine().getStatusCode() == 401) {
+            if (response.getStatusCode() == 401) {
                 throw new DaemonException(ExceptionType.AuthenticationFailure,
                         "401 HTTP response (username or password incorrect)");
             }
 
             // 409 error because of a session id?
-            if (response.getStatusLine().getStatusCode() == 409) {
+            if (response.getStatusCode() == 409) {
 
                 // Retry post, but this time with the new session token that was encapsulated in the 409 response
                 log.d(LOG_NAME, "Receive HTTP 409 with new session code; now try again for the actual request");
-                sessionToken = response.getFirstHeader(sessionHeader).getValue();
-                httppost.addHeader(sessionHeader, sessionToken);
+                String newToken = refreshSessionToken(sentToken, response.getHeader(sessionHeader));
+                request.setHeader(sessionHeader, newToken);
                 log.d(LOG_NAME,
                         "Retry to execute " + data.getString("method") + " request, now with " + sessionHeader + ": " +
-                                sessionToken);
-                response = httpclient.execute(httppost);
+                                newToken);
+                response = transport.execute(request);
 
             }
 
-            HttpEntity entity = response.getEntity();
-            if (entity != null) {
+            if (response.hasBody()) {
 
                 // Read JSON response
-                java.io.InputStream instream = entity.getContent();
-                String result = HttpHelper.convertStreamToString(instream);
+                long parseStart = SystemClock.elapsedRealtime();
+                String result = response.getBodyString();
                 log.d(LOG_NAME, "Received content response starting with " +
                         (result.length() > 100 ? result.substring(0, 100) + "..." : result));
-                JSONObject json = new JSONObject(result);
-                instream.close();
 
                 // Return the JSON object
+                JSONObject json = new JSONObject(result);
+                TaskMetrics.recordParse(SystemClock.elapsedRealtime() - parseStart);
                 return json;
             }
 
@@ -470,14 +519,39 @@ public class TransmissionAdapter implements IDaemonAdapter {
     }
 
     /**
-     * Instantiates an HTTP client with proper credentials that can be used for all Transmission requests.
+     * Replaces a session token that the server rejected with the new token that it sent. When several requests were
+     * rejected at the same time, the token is only replaced (and stored) once.
+     *
+     * @param rejected The token that was sent with the rejected request, or null if none was sent
+     * @param offered  The new token as sent by the server with the rejection
+     * @return The token to retry the request with
+     */
+    private synchronized String refreshSessionToken(String rejected, String offered) {
+        if (sessionToken != null && !sessionToken.equals(rejected)) {
+            // Another request already refreshed the token
+            return sessionToken;
+        }
+        sessionToken = offered;
+        AuthSessions.save(settings, SESSION_TOKEN, sessionToken);
+        return sessionToken;
+    }
+
+    /**
+     * Returns the HTTP transport with proper credentials that is used for all Transmission requests, restoring the last
+     * known session token on first use.
      *
      * @throws DaemonException On conflicting or missing settings
      */
-    private synchronized void initialise() throws DaemonException {
-        if(httpclient == null) {
-            httpclient = HttpHelper.createStandardHttpClient(settings, true);
+    private synchronized HttpTransport initialise() throws DaemonException {
+        if (transport == null) {
+            transport = HttpTransports.forServer(settings, true);
+            // Reuse the last known session token; if it is no longer valid the server tells us the new one
+            AuthSessions.Session session = AuthSessions.restore(settings, SESSION_TOKEN, SESSION_TOKEN_MAX_AGE);
+            if (session != null) {
+                sessionToken = session.getValue();
+            }
         }
+        return transport;
     }
 
     /**
@@ -499,10 +573,51 @@ public class TransmissionAdapter implements IDaemonAdapter {
                 folder + "/rpc";
     }
 
+    private synchronized boolean canRetrieveRecentlyActive(long now) {
+        return rpcVersion >= 7 && lastTorrents != null && now - lastRetrievedAt < RECENTLY_ACTIVE_WINDOW
+                && now - lastFullRetrievedAt < FULL_RETRIEVE_INTERVAL;
+    }
+
+    /**
+     * Remembers the retrieved torrents for the next retrieval; when only the recently active torrents were retrieved,
+     * these are first merged into the previously retrieved torrents.
+     *
+     * @param retrieved      The torrents as parsed from the server response
+     * @param removed        The ids of the torrents that were removed recently, or null if not known
+     * @param recentlyActive Whether only the recently active torrents were retrieved
+     * @param requestedAt    The moment the torrents were requested
+     * @return The full list of torrents
+     */
+    private synchronized List<Torrent> mergeRetrievedTorrents(ArrayList<Torrent> retrieved, JSONArray removed,
+                                                              boolean recentlyActive, long requestedAt) throws JSONException {
+        if (recentlyActive && lastTorrents != null) {
+            Map<String, Torrent> merged = new LinkedHashMap<>();
+            for (Torrent torrent : lastTorrents) {
+                merged.put(torrent.getUniqueID(), torrent);
+            }
+            for (Torrent torrent : retrieved) {
+                merged.put(torrent.getUniqueID(), torrent);
+            }
+            if (removed != null) {
+                for (int i = 0; i < removed.length(); i++) {
+                    merged.remove("" + removed.getLong(i));
+                }
+            }
+            retrieved = new ArrayList<>(merged.values());
+        } else {
+            lastFullRetrievedAt = requestedAt;
+        }
+        lastTorrents = new ArrayList<>(retrieved);
+        lastRetrievedAt = requestedAt;
+        return retrieved;
+    }
+
     private ArrayList<Torrent> parseJsonRetrieveTorrents(JSONObject response) throws JSONException {
 
         // Parse response
         ArrayList<Torrent> torrents = new ArrayList<>();
+        StringPool pool = StringPool.forServer(settings);
+        String separator = settings.getOS().getPathSeperator();
         JSONArray rarray = response.getJSONArray("torrents");
         for (int i = 0; i < rarray.length(); i++) {
             JSONObject tor = rarray.getJSONObject(i);
@@ -518,9 +633,7 @@ public class TransmissionAdapter implements IDaemonAdapter {
                 errorString = errorString.equals("") ? commentString : errorString + "\n" + commentString;
             }
             String locationDir = tor.getString(RPC_DOWNLOADDIR);
-            if (!locationDir.endsWith(settings.getOS().getPathSeperator())) {
-                locationDir += settings.getOS().getPathSeperator();
-            }
+            locationDir = locationDir.endsWith(separator) ? pool.get(locationDir) : pool.get(locationDir, separator);
             // @formatter:off
             torrents.add(new Torrent(
                     tor.getInt(RPC_ID),
@@ -545,7 +658,7 @@ public class TransmissionAdapter implements IDaemonAdapter {
                     null,
                     new Date(tor.getLong(RPC_DATEADDED) * 1000L),
                     new Date(tor.getLong(RPC_DATEDONE) * 1000L),
-                    errorString, settings.getType()));
+                    pool.get(errorString), settings.getType()));
             // @formatter:on
         }
 
@@ -643,8 +756,9 @@ public class TransmissionAdapter implements IDaemonAdapter {
         if (rarray.length() > 0) {
             JSONArray trackersList = rarray.getJSONObject(0).getJSONArray("trackers");
             List<String> trackers = new ArrayList<>();
+            StringPool pool = StringPool.forServer(settings);
             for (int i = 0; i < trackersList.length(); i++) {
-                trackers.add(trackersList.getJSONObject(i).getString("announce"));
+                trackers.add(pool.get(trackersList.getJSONObject(i).getString("announce")));
             }
             JSONArray trackerStatsList = rarray.getJSONObject(0).getJSONArray("trackerStats");
             List<String> errors = new ArrayList<>();
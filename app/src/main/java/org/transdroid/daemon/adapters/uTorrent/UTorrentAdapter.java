@@ -62,7 +62,9 @@ import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTrackersTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.task.StartTask;
+import org.transdroid.daemon.util.AuthSessions;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -114,6 +116,8 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
     private static final int RPC_FILESIZE_IDX = 1;
     private static final int RPC_FILEDOWNLOADED_IDX = 2;
     private static final int RPC_FILEPRIORITY_IDX = 3;
+    private static final String SESSION_TOKEN = "token";
+    private static final String SESSION_COOKIE = "GUID";
     private String authtoken;
     private static ArrayList<RemoteRssChannel> remoteRssChannels = new ArrayList<>();
     private DaemonSettings settings;
@@ -421,6 +425,10 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
             String result = HttpHelper.convertStreamToString(instream);
             authtoken = result.replaceAll("<.*?>", "").trim();
 
+            // The token is only valid together with the GUID cookie that was set with it; store both to reuse them
+            AuthSessions.save(settings, SESSION_TOKEN, authtoken);
+            AuthSessions.saveCookie(settings, httpclient, SESSION_COOKIE);
+
         }
 
     }
@@ -455,6 +463,12 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
     private synchronized void initialise() throws DaemonException {
         if(httpclient == null) {
             httpclient = HttpHelper.createStandardHttpClient(settings, true);
+            // Reuse the last known token; if it is no longer valid the request is retried with a new token
+            AuthSessions.Session session = AuthSessions.restore(settings, SESSION_TOKEN, MAX_SESSION_TIME);
+            if (session != null) {
+                authtoken = session.getValue();
+                AuthSessions.restoreCookie(settings, httpclient, SESSION_COOKIE, MAX_SESSION_TIME);
+            }
         }
     }
 
@@ -537,6 +551,7 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
         // Parse response
         ArrayList<Torrent> torrents = new ArrayList<>();
         boolean createPaths = !(settings.getDownloadDir() == null || settings.getDownloadDir().equals(""));
+        StringPool pool = StringPool.forServer(settings);
         for (int i = 0; i < results.length(); i++) {
             JSONArray tor = results.getJSONArray(i);
             String name = tor.getString(RPC_NAME_IDX);
@@ -546,10 +561,11 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
             // Guess the torrent's directory based on the user-specific default download dir and the torrent name
             String dir = null;
             if (createPaths) {
-                dir = settings.getDownloadDir();
                 if (name.length() < 4 || name.charAt(name.length() - 4) != '.') {
                     // Assume this is a directory rather than a single-file torrent
-                    dir += name + settings.getOS().getPathSeperator();
+                    dir = settings.getDownloadDir() + name + settings.getOS().getPathSeperator();
+                } else {
+                    dir = pool.get(settings.getDownloadDir());
                 }
             }
             // Add the parsed torrent to the list
@@ -566,7 +582,7 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
                     tor.getLong(RPC_UPLOADED_IDX), tor.getLong(RPC_SIZE_IDX),
                     ((float) tor.getLong(RPC_PARTDONE)) / 1000f, // Integer in promille
                     Math.min(available, 1f), // Can be > 100% if multiple peers have 100%
-                    tor.getString(RPC_LABEL_IDX).trim(), addedOnDate, completedOnDate,
+                    pool.get(tor.getString(RPC_LABEL_IDX).trim()), addedOnDate, completedOnDate,
                     // uTorrent doesn't give the error message, so just remind that there is some error
                     status == TorrentStatus.Error ? "See GUI for error message" : null, settings.getType()));
         }
@@ -582,10 +598,11 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
 
             JSONObject tor = results.getJSONObject(0);
             List<String> trackers = new ArrayList<>();
+            StringPool pool = StringPool.forServer(settings);
             for (String tracker : tor.getString("trackers").split("\\r\\n")) {
                 // Ignore any blank lines
                 if (!tracker.trim().equals("")) {
-                    trackers.add(tracker.trim());
+                    trackers.add(pool.get(tracker.trim()));
                 }
             }
             // uTorrent doesn't support tracker error messages in the web UI
@@ -42,6 +42,7 @@ import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
+import org.transdroid.daemon.util.StringPool;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -357,6 +358,7 @@ public class VuzeAdapter implements IDaemonAdapter {
         List<Torrent> torrents = new ArrayList<>();
 
         // Parse torrent list from Vuze response, which is a map list of ENTRYs
+        StringPool pool = StringPool.forServer(settings);
         for (String key : response.keySet()) {
 
             /**
@@ -384,7 +386,7 @@ public class VuzeAdapter implements IDaemonAdapter {
             int scrapeSeedCount = ((Long) scrapeinfo.get("seed_count")).intValue();
             int scrapeNonSeedCount = ((Long) scrapeinfo.get("non_seed_count")).intValue();
             String error = (String) info.get("error_state_details");
-            error = error != null && error.equals("") ? null : error;
+            error = error != null && error.equals("") ? null : pool.get(error);
             int announceSeedCount = ((Long) announceinfo.get("seed_count")).intValue();
             int announceNonSeedCount = ((Long) announceinfo.get("non_seed_count")).intValue();
             int rateDownload = ((Long) statsinfo.get("download_average")).intValue();
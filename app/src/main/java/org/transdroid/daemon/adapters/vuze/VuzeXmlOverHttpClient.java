@@ -27,7 +27,6 @@ import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.scheme.SocketFactory;
@@ -40,6 +39,8 @@ import org.apache.http.params.HttpProtocolParams;
 import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.DaemonException.ExceptionType;
 import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.util.PlainTcpSocketFactory;
+import org.transdroid.daemon.util.TaskMetrics;
 import org.transdroid.daemon.util.TlsSniSocketFactory;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -122,10 +123,12 @@ public class VuzeXmlOverHttpClient {
         } else {
             httpsSocketFactory = new TlsSniSocketFactory();
         }
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+        registry.register(new Scheme("http", new PlainTcpSocketFactory(), 80));
         registry.register(new Scheme("https", httpsSocketFactory, 443));
 
         client = new DefaultHttpClient(new ThreadSafeClientConnManager(httpParams, registry), httpParams);
+        client.addRequestInterceptor(TaskMetrics.requestInterceptor);
+        client.addResponseInterceptor(TaskMetrics.responseInterceptor);
         if (settings.shouldUseAuthentication()) {
             if (settings.getUsername() == null || settings.getPassword() == null) {
                 throw new DaemonException(DaemonException.ExceptionType.AuthenticationFailure, "No username or password set, while authentication was enabled.");
@@ -26,6 +26,8 @@ import org.transdroid.daemon.Daemon;
 import org.transdroid.daemon.DaemonMethod;
 import org.transdroid.daemon.IDaemonAdapter;
 import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.util.CircuitBreaker;
+import org.transdroid.daemon.util.TaskMetrics;
 
 /**
  * A daemon task represents some action that needs to be performed on the server daemon. It has no capabilities on
@@ -73,12 +75,20 @@ public class DaemonTask implements Parcelable {
     }
 
     /**
-     * Execute the task on the appropriate daemon adapter
+     * Execute the task on the appropriate daemon adapter, unless the server could not be reached recently, in which
+     * case the task fails directly (see {@link CircuitBreaker}); the time spent is recorded in the {@link TaskMetrics}
      *
      * @param log The logger to use when writing exceptions and debug information
      */
     public DaemonTaskResult execute(Log log) {
-        return adapter.executeTask(log, this);
+        TaskMetrics.Trace trace = TaskMetrics.begin();
+        DaemonTaskResult result = null;
+        try {
+            result = CircuitBreaker.forServer(adapter.getSettings()).execute(log, adapter, this);
+            return result;
+        } finally {
+            TaskMetrics.end(adapter.getSettings(), method, trace, result);
+        }
     }
 
     public DaemonMethod getMethod() {
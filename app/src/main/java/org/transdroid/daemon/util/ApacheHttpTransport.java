@@ -0,0 +1,126 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonSettings;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * HTTP transport on top of the Apache HttpClient as used by all adapters, with a pool of keep-alive connections to the
+ * server and transparent decoding of gzip and deflate responses. At most {@link DaemonSettings#getMaxConnections()}
+ * requests are executed at the same time; other requests wait for their turn rather than for a free pool connection,
+ * which would time out.
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    private final DefaultHttpClient httpclient;
+    private final Semaphore streams;
+
+    public ApacheHttpTransport(DaemonSettings settings, boolean useBasicAuth) throws DaemonException {
+        streams = new Semaphore(settings.getMaxConnections(), true);
+        httpclient = HttpHelper.createStandardHttpClient(settings, useBasicAuth);
+        httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
+        httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+
+        ApacheRequest httprequest = new ApacheRequest(request.getMethod());
+        if (request.getBody() != null) {
+            ByteArrayEntity entity = new ByteArrayEntity(request.getBody());
+            entity.setContentType(request.getContentType());
+            httprequest.setEntity(entity);
+        }
+        httprequest.setURI(URI.create(request.getUrl()));
+        for (String[] header : request.getHeaders()) {
+            httprequest.addHeader(header[0], header[1]);
+        }
+
+        try {
+            streams.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting to execute " + request.getUrl());
+        }
+        try {
+            HttpResponse response;
+            try {
+                response = httpclient.execute(httprequest);
+            } catch (IllegalStateException e) {
+                // The connection pool was shut down, as the server settings changed since this transport was obtained
+                throw new IOException("Connection to server was closed: " + e.getMessage());
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (Header header : response.getAllHeaders()) {
+                if (!headers.containsKey(header.getName())) {
+                    headers.put(header.getName(), header.getValue());
+                }
+            }
+            HttpEntity entity = response.getEntity();
+            byte[] body = null;
+            String charset = null;
+            if (entity != null) {
+                // Reading the full body releases the connection back into the pool
+                charset = EntityUtils.getContentCharSet(entity);
+                body = EntityUtils.toByteArray(entity);
+            }
+            return new Response(response.getStatusLine().getStatusCode(), headers, body, charset);
+        } finally {
+            streams.release();
+        }
+
+    }
+
+    @Override
+    public void shutdown() {
+        httpclient.getConnectionManager().shutdown();
+    }
+
+    /**
+     * Request with any method name, which may or may not have a body.
+     */
+    private static class ApacheRequest extends HttpEntityEnclosingRequestBase {
+
+        private final String method;
+
+        ApacheRequest(String method) {
+            this.method = method;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+    }
+
+}
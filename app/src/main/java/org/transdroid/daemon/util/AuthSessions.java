@@ -0,0 +1,188 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.transdroid.daemon.DaemonSettings;
+
+/**
+ * Keeps the authentication sessions (tokens, session ids and cookies) that adapters obtained from a server, such that
+ * these can be reused by new adapter instances and after an app restart instead of logging in again. The actual storage
+ * is provided by the app via {@link #setStore(KeyValueStore)}; without a store, sessions are simply not kept.
+ * <p/>
+ * Sessions are stored per server connection settings (including the credentials), so changed settings never reuse an
+ * old session. Adapters should still expect a restored session to be rejected by the server (e.g. when the server was
+ * restarted) and should log in again once when that happens.
+ */
+public class AuthSessions {
+
+    private static KeyValueStore store = null;
+
+    /**
+     * Sets the storage to use for authentication sessions. Should be set once, before any adapter is used.
+     */
+    public static synchronized void setStore(KeyValueStore store) {
+        AuthSessions.store = store;
+    }
+
+    private static synchronized KeyValueStore getStore() {
+        return store;
+    }
+
+    /**
+     * Restores the last stored session of some type for a server.
+     *
+     * @param settings The settings of the server to restore a session for
+     * @param name     The type of session value, such as 'token' or 'cookie', as used by the adapter
+     * @param maxAge   The time in milliseconds after which the server will have expired the session by itself
+     * @return The stored session, or null if there is none or it is older than the maximum age
+     */
+    public static Session restore(DaemonSettings settings, String name, long maxAge) {
+        KeyValueStore store = getStore();
+        if (store == null) {
+            return null;
+        }
+        String stored = store.get(getKey(settings, name));
+        if (stored == null) {
+            return null;
+        }
+        int separator = stored.indexOf('|');
+        try {
+            long createdAt = Long.parseLong(stored.substring(0, separator));
+            if (System.currentTimeMillis() - createdAt > maxAge) {
+                store.remove(getKey(settings, name));
+                return null;
+            }
+            return new Session(stored.substring(separator + 1), createdAt);
+        } catch (RuntimeException e) {
+            // Not a session value as stored by us
+            store.remove(getKey(settings, name));
+            return null;
+        }
+    }
+
+    /**
+     * Stores a session of some type for a server, replacing any earlier stored session of this type.
+     *
+     * @param settings The settings of the server that the session was obtained from
+     * @param name     The type of session value, such as 'token' or 'cookie', as used by the adapter
+     * @param value    The session value to store, or null to remove the stored session
+     */
+    public static void save(DaemonSettings settings, String name, String value) {
+        KeyValueStore store = getStore();
+        if (store == null) {
+            return;
+        }
+        if (value == null) {
+            store.remove(getKey(settings, name));
+        } else {
+            store.put(getKey(settings, name), System.currentTimeMillis() + "|" + value);
+        }
+    }
+
+    /**
+     * Removes a stored session of some type for a server, such as after the server rejected it.
+     */
+    public static void clear(DaemonSettings settings, String name) {
+        save(settings, name, null);
+    }
+
+    /**
+     * Stores the session cookie that a server set in an HTTP client, such as after a login request.
+     *
+     * @param settings   The settings of the server that the cookie was obtained from
+     * @param httpclient The HTTP client that received the cookie
+     * @param cookieName The name of the session cookie
+     * @return The stored cookie, or null if the client had no cookie with this name
+     */
+    public static Cookie saveCookie(DaemonSettings settings, DefaultHttpClient httpclient, String cookieName) {
+        for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
+            if (cookie.getName().equals(cookieName)) {
+                save(settings, "cookie_" + cookieName, cookie.getDomain() + "\n" + cookie.getPath() + "\n" + cookie.getValue());
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Restores a stored session cookie of a server into an HTTP client, such that it is sent with the next requests.
+     *
+     * @param settings   The settings of the server to restore a cookie for
+     * @param httpclient The HTTP client to add the cookie to
+     * @param cookieName The name of the session cookie
+     * @param maxAge     The time in milliseconds after which the server will have expired the session by itself
+     * @return The restored cookie (as session), or null if no (recent) session cookie was stored
+     */
+    public static Session restoreCookie(DaemonSettings settings, DefaultHttpClient httpclient, String cookieName, long maxAge) {
+        Session session = restore(settings, "cookie_" + cookieName, maxAge);
+        if (session == null) {
+            return null;
+        }
+        String[] parts = session.getValue().split("\n", 3);
+        if (parts.length < 3) {
+            clearCookie(settings, cookieName);
+            return null;
+        }
+        BasicClientCookie cookie = new BasicClientCookie(cookieName, parts[2]);
+        cookie.setDomain("null".equals(parts[0]) ? settings.getAddress() : parts[0]);
+        cookie.setPath("null".equals(parts[1]) ? "/" : parts[1]);
+        httpclient.getCookieStore().addCookie(cookie);
+        return new Session(parts[2], session.getCreatedAt());
+    }
+
+    /**
+     * Removes a stored session cookie of a server, such as after the server rejected it.
+     */
+    public static void clearCookie(DaemonSettings settings, String cookieName) {
+        clear(settings, "cookie_" + cookieName);
+    }
+
+    private static String getKey(DaemonSettings settings, String name) {
+        String connection = settings.getType() + "|" + (settings.getSsl() ? "https" : "http") + "|" + settings.getAddress()
+                + "|" + settings.getPort() + "|" + settings.getFolder() + "|" + settings.getUsername() + "|"
+                + settings.getPassword() + "|" + settings.getExtraPassword();
+        return Long.toHexString(BinaryHelper.hash64(connection)) + "_" + name;
+    }
+
+    /**
+     * A stored session value, with the moment it was obtained from the server.
+     */
+    public static class Session {
+
+        private final String value;
+        private final long createdAt;
+
+        Session(String value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+    }
+
+}
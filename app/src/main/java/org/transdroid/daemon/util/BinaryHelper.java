@@ -0,0 +1,134 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Helpers to write and read compact binary files, such as the on-disk caches. Files are always written atomically (to a
+ * unique temporary file that is renamed when complete) and read back via a memory-mapped buffer.
+ */
+public class BinaryHelper {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Writes a (nullable) string as length-prefixed UTF-8 bytes.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a (nullable) string as written by {@link #writeString(DataOutput, String)}.
+     *
+     * @throws IOException Thrown when the length of the string is invalid, such as for a truncated or corrupt file
+     */
+    public static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length + " with " + in.remaining() + " bytes remaining");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Calculates a 64-bit FNV-1a hash of a string, which is small enough to store and compare in bulk and (unlike
+     * {@link String#hashCode()}) large enough to practically never collide within a set of torrents or RSS items.
+     */
+    public static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Maps a file into memory to read it without copying it to the heap first.
+     *
+     * @param file The file to read
+     * @return A read-only buffer over the full file contents, or null if the file does not exist
+     */
+    public static MappedByteBuffer mapReadOnly(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Writes a binary file atomically: the contents are written to a temporary file first, which then replaces the
+     * target file. Readers will therefore never see a partially written file. Every write uses its own temporary file,
+     * so concurrent writes of the same target do not corrupt each other; the last one to complete wins.
+     *
+     * @param target The file to (over)write
+     * @param writer The code that writes the file contents
+     */
+    public static void writeAtomically(File target, Writer writer) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent.toString());
+        }
+        File temp = File.createTempFile(target.getName(), ".tmp", parent);
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            writer.write(out);
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(target)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Cannot replace " + target.toString());
+        }
+    }
+
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+}
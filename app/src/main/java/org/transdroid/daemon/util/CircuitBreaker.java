@@ -0,0 +1,194 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import android.os.SystemClock;
+
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonException.ExceptionType;
+import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.IDaemonAdapter;
+import org.transdroid.daemon.task.DaemonTask;
+import org.transdroid.daemon.task.DaemonTaskFailureResult;
+import org.transdroid.daemon.task.DaemonTaskResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Guards the execution of tasks on a server, such that a server that cannot be reached is not contacted over and over
+ * again, with every task waiting for the connection to time out. After a number of consecutive connection errors the
+ * circuit opens and tasks fail directly with the last connection error. After some time a single task is let through
+ * as probe; when it succeeds the circuit closes again, otherwise it stays open for twice as long (up to a maximum).
+ * <p/>
+ * Only connection errors count as failures: when the server responds at all, even with an error, it is reachable.
+ * There is one circuit per server address, shared by all adapter instances for that server.
+ */
+public class CircuitBreaker {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_OPEN_TIME = 10 * 1000; // 10 seconds
+    private static final long MAX_OPEN_TIME = 5 * 60 * 1000; // 5 minutes
+    private static final Map<String, CircuitBreaker> circuits = new HashMap<>();
+
+    private State state = State.Closed;
+    private int consecutiveFailures = 0;
+    private long openTime = MIN_OPEN_TIME;
+    private long retryAt = 0;
+    private DaemonException lastError = null;
+
+    private CircuitBreaker() {
+    }
+
+    /**
+     * Returns the circuit of a server, which is created (closed) when the server was not contacted before.
+     *
+     * @param settings The settings of the server to get the circuit for
+     * @return The circuit that guards all connections to this server
+     */
+    public static CircuitBreaker forServer(DaemonSettings settings) {
+        String key = settings.getType() + "|" + (settings.getSsl() ? "https" : "http") + "|" + settings.getAddress() + "|"
+                + settings.getPort() + "|" + settings.getFolder();
+        synchronized (circuits) {
+            CircuitBreaker circuit = circuits.get(key);
+            if (circuit == null) {
+                circuit = new CircuitBreaker();
+                circuits.put(key, circuit);
+            }
+            return circuit;
+        }
+    }
+
+    /**
+     * Executes a task on its adapter, unless the circuit of the server is open, in which case the task fails directly.
+     *
+     * @param log     The logger to use when writing exceptions and debug information
+     * @param adapter The adapter of the server to execute the task on
+     * @param task    The task to execute
+     * @return The result of the task, or a failure result with a {@link OpenCircuitException} if the circuit is open
+     */
+    public DaemonTaskResult execute(Log log, IDaemonAdapter adapter, DaemonTask task) {
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (state == State.HalfOpen || (state == State.Open && now < retryAt)) {
+                // Another task is already probing the server, or it is not time to try again yet
+                return new DaemonTaskFailureResult(task, new OpenCircuitException(lastError, Math.max(0, retryAt - now)));
+            }
+            if (state == State.Open) {
+                log.d(this, "Probing " + adapter.getSettings().getAddress() + " after it could not be reached");
+                state = State.HalfOpen;
+            }
+        }
+        DaemonTaskResult result = null;
+        try {
+            result = adapter.executeTask(log, task);
+            return result;
+        } finally {
+            if (result instanceof DaemonTaskFailureResult
+                    && ((DaemonTaskFailureResult) result).getException().getType() == ExceptionType.ConnectionError) {
+                onConnectionError(log, adapter, ((DaemonTaskFailureResult) result).getException());
+            } else if (result != null) {
+                onResponse();
+            } else {
+                // The adapter crashed or did not return a result; let a next task probe the server again
+                onUnknownResult();
+            }
+        }
+    }
+
+    private synchronized void onConnectionError(Log log, IDaemonAdapter adapter, DaemonException e) {
+        lastError = e;
+        consecutiveFailures++;
+        if (state == State.HalfOpen) {
+            openTime = Math.min(openTime * 2, MAX_OPEN_TIME);
+        } else if (state == State.Closed && consecutiveFailures < FAILURE_THRESHOLD) {
+            return;
+        }
+        state = State.Open;
+        retryAt = SystemClock.elapsedRealtime() + openTime;
+        log.d(this, adapter.getSettings().getAddress() + " could not be reached " + consecutiveFailures + " times; next "
+                + "attempt in " + (openTime / 1000) + " seconds");
+    }
+
+    private synchronized void onResponse() {
+        state = State.Closed;
+        consecutiveFailures = 0;
+        openTime = MIN_OPEN_TIME;
+        lastError = null;
+    }
+
+    private synchronized void onUnknownResult() {
+        if (state == State.HalfOpen) {
+            state = State.Open;
+        }
+    }
+
+    /**
+     * Lets the next task probe the server directly, rather than waiting for the scheduled retry, such as when the user
+     * explicitly asks for a refresh.
+     */
+    public synchronized void retryNow() {
+        if (state == State.Open) {
+            retryAt = 0;
+        }
+    }
+
+    private enum State {
+        /**
+         * The server is reachable; all tasks are executed
+         */
+        Closed,
+        /**
+         * The server could not be reached; tasks fail directly until the retry time
+         */
+        Open,
+        /**
+         * A single task is probing whether the server can be reached again; other tasks fail directly
+         */
+        HalfOpen
+    }
+
+    /**
+     * The (connection) error that a task fails with when it is not executed at all since the circuit of the server is
+     * open. It carries the last error that the server connection failed with.
+     */
+    public static class OpenCircuitException extends DaemonException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long retryDelay;
+
+        OpenCircuitException(DaemonException lastError, long retryDelay) {
+            super(ExceptionType.ConnectionError, "Server not contacted since it could not be reached"
+                    + (lastError == null ? "" : " (" + lastError.getMessage() + ")"));
+            this.retryDelay = retryDelay;
+        }
+
+        /**
+         * Returns the time, as of when the task failed, until the server is contacted again.
+         *
+         * @return The time in milliseconds until a next task may probe the server
+         */
+        public long getRetryDelay() {
+            return retryDelay;
+        }
+
+    }
+
+}
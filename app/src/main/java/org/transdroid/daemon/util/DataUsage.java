@@ -0,0 +1,228 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import android.text.TextUtils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.ExecutionContext;
+import org.transdroid.daemon.DaemonSettings;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Accounts the data that is received from servers (and RSS feeds), per server and per app feature, such that users on
+ * a capped data plan can see what uses their data. Received bytes are counted as they come from the network, so before
+ * decompression. Tasks are accounted to the feature that is set for the thread that executes them (see
+ * {@link #setFeature(Feature)}); the actual (daily) counters are kept by the app via {@link #setRecorder(Recorder)}.
+ * <p/>
+ * Also tells adapters whether they should save data, which is when the active network is metered at the moment they
+ * ask (see {@link #setNetworkCheck(NetworkCheck)}), in which case adapters that can retrieve only the torrents that
+ * changed since the last retrieval should do so.
+ */
+public class DataUsage {
+
+    private static final ThreadLocal<Feature> currentFeature = new ThreadLocal<>();
+    private static Recorder recorder = null;
+    private static NetworkCheck networkCheck = null;
+
+    /**
+     * Sets where the received data is accounted. Should be set once, before any adapter is used.
+     */
+    public static synchronized void setRecorder(Recorder recorder) {
+        DataUsage.recorder = recorder;
+    }
+
+    private static synchronized Recorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Sets the feature that the tasks executed on the current thread are done for, until it is set otherwise.
+     *
+     * @param feature The feature to account the data to, or null to account to the foreground app again
+     * @return The feature that was set before, to restore it with when done
+     */
+    public static Feature setFeature(Feature feature) {
+        Feature previous = currentFeature.get();
+        if (feature == null) {
+            currentFeature.remove();
+        } else {
+            currentFeature.set(feature);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the feature that the tasks executed on the current thread are done for.
+     */
+    public static Feature getFeature() {
+        Feature feature = currentFeature.get();
+        return feature == null ? Feature.Foreground : feature;
+    }
+
+    /**
+     * Accounts the data that was received from a server by a task on the current thread.
+     *
+     * @param settings The settings of the server that the data was received from
+     * @param bytes    The number of bytes received
+     */
+    public static void record(DaemonSettings settings, long bytes) {
+        record(TextUtils.isEmpty(settings.getName()) ? settings.getAddress() : settings.getName(), getFeature(), bytes);
+    }
+
+    /**
+     * Accounts data that was received from some server.
+     *
+     * @param server  A name to identify the server, as shown to the user
+     * @param feature The feature that the data was received for
+     * @param bytes   The number of bytes received
+     */
+    public static void record(String server, Feature feature, long bytes) {
+        Recorder recorder = getRecorder();
+        if (recorder != null && bytes > 0) {
+            recorder.record(server, feature, bytes);
+        }
+    }
+
+    /**
+     * Sets how to check whether the active network is metered. Should be set once, before any adapter is used.
+     */
+    public static synchronized void setNetworkCheck(NetworkCheck networkCheck) {
+        DataUsage.networkCheck = networkCheck;
+    }
+
+    private static synchronized NetworkCheck getNetworkCheck() {
+        return networkCheck;
+    }
+
+    /**
+     * Returns whether adapters should save data, because the active network is metered right now.
+     */
+    public static boolean shouldSaveData() {
+        NetworkCheck networkCheck = getNetworkCheck();
+        return networkCheck != null && networkCheck.isActiveNetworkMetered();
+    }
+
+    /**
+     * Creates an HTTP response interceptor that accounts the received response bodies to a feature, for HTTP clients
+     * that are not used by server adapters (which are accounted per task instead). Should be added before any
+     * interceptor that decodes the response.
+     *
+     * @param feature The feature that the client is used for
+     * @return An interceptor to add to the HTTP client
+     */
+    public static HttpResponseInterceptor createResponseInterceptor(final Feature feature) {
+        return (response, context) -> {
+            HttpEntity entity = response.getEntity();
+            HttpHost host = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+            if (entity != null && host != null) {
+                response.setEntity(new CountingEntity(entity, host.getHostName(), feature));
+            }
+        };
+    }
+
+    public enum Feature {
+        /**
+         * The app itself, i.e. the screens the user is looking at
+         */
+        Foreground,
+        /**
+         * The home screen widgets
+         */
+        Widget,
+        /**
+         * The background checks for new and finished torrents
+         */
+        Checker,
+        /**
+         * The (background) checks for new RSS feed items
+         */
+        Rss
+    }
+
+    /**
+     * Keeps the counters of received data.
+     */
+    public interface Recorder {
+
+        /**
+         * Adds received data to the counters; may be called from any thread.
+         */
+        void record(String server, Feature feature, long bytes);
+
+    }
+
+    /**
+     * Checks the network that the device is connected to.
+     */
+    public interface NetworkCheck {
+
+        /**
+         * Returns whether the active network is metered, i.e. the user may pay for the data usage; may be called from
+         * any thread.
+         */
+        boolean isActiveNetworkMetered();
+
+    }
+
+    /**
+     * HTTP entity wrapper that accounts the bytes read from the response body.
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+
+        private final String server;
+        private final Feature feature;
+
+        CountingEntity(HttpEntity entity, String server, Feature feature) {
+            super(entity);
+            this.server = server;
+            this.feature = feature;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(wrappedEntity.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int read = super.read();
+                    if (read >= 0) {
+                        record(server, feature, 1);
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        record(server, feature, read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of resolved server host names. The platform only caches lookups for a few seconds, while servers
+ * are typically contacted over and over again. Entries expire after a fixed time and should be invalidated when a
+ * connection to the resolved address fails, for example because the device switched networks.
+ */
+public class DnsCache {
+
+    private static final long TTL = 5 * 60 * 1000; // 5 minutes
+    private static final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Resolves a host name, using a recent earlier lookup if available.
+     *
+     * @param host The host name (or literal IP address) to resolve
+     * @return The (first) address of the host
+     * @throws UnknownHostException If the host name could not be resolved
+     */
+    public static InetAddress resolve(String host) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(host);
+            if (entry != null && now < entry.expiresAt) {
+                return entry.address;
+            }
+        }
+        // Look up outside of the lock, such that a slow lookup does not block other hosts
+        InetAddress address = InetAddress.getByName(host);
+        synchronized (entries) {
+            entries.put(host, new Entry(address, now + TTL));
+        }
+        return address;
+    }
+
+    /**
+     * Removes the cached address of a host, such that it is looked up again on the next connection.
+     */
+    public static void invalidate(String host) {
+        synchronized (entries) {
+            entries.remove(host);
+        }
+    }
+
+    private static class Entry {
+
+        private final InetAddress address;
+        private final long expiresAt;
+
+        Entry(InetAddress address, long expiresAt) {
+            this.address = address;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
@@ -27,7 +27,8 @@ import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.scheme.SocketFactory;
@@ -47,11 +48,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Provides a set of general helper methods that can be used in web-based communication.
@@ -68,7 +72,8 @@ public class HttpHelper {
     public static String userAgent = "Transdroid Torrent Connect";
 
     /**
-     * HTTP request interceptor to allow for GZip-encoded data transfer
+     * HTTP request interceptor to allow for GZip-encoded data transfer; deflate is not asked for, as servers do not
+     * agree on whether it is zlib-wrapped or raw
      */
     public static HttpRequestInterceptor gzipRequestInterceptor = (request, context) -> {
         if (!request.containsHeader("Accept-Encoding")) {
@@ -76,7 +81,7 @@ public class HttpHelper {
         }
     };
     /**
-     * HTTP response interceptor that decodes GZipped data
+     * HTTP response interceptor that decodes GZipped and deflated data
      */
     public static HttpResponseInterceptor gzipResponseInterceptor = (response, context) -> {
         HttpEntity entity = response.getEntity();
@@ -89,6 +94,10 @@ public class HttpHelper {
                     response.setEntity(new GzipDecompressingEntity(response.getEntity()));
                     return;
                 }
+                if (codec.getName().equalsIgnoreCase("deflate")) {
+                    response.setEntity(new DeflateDecompressingEntity(response.getEntity()));
+                    return;
+                }
             }
         }
     };
@@ -105,7 +114,7 @@ public class HttpHelper {
             throws DaemonException {
         return createStandardHttpClient(userBasicAuth && settings.shouldUseAuthentication(), settings.getUsername(),
                 settings.getPassword(), settings.getAuthToken(), settings.getSslTrustAll(), settings.getSslTrustKey(),
-                settings.getTimeoutInMilliseconds(), settings.getAddress(), settings.getPort());
+                settings.getTimeoutInMilliseconds(), settings.getAddress(), settings.getPort(), settings.getMaxConnections());
     }
 
     /**
@@ -123,6 +132,27 @@ public class HttpHelper {
     public static DefaultHttpClient createStandardHttpClient(boolean userBasicAuth, String username, String password, String authToken,
                                                              boolean sslTrustAll, String sslTrustKey, int timeout,
                                                              String authAddress, int authPort) throws DaemonException {
+        return createStandardHttpClient(userBasicAuth, username, password, authToken, sslTrustAll, sslTrustKey, timeout,
+                authAddress, authPort, DaemonSettings.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Creates a standard Apache HttpClient that is thread safe, supports different SSL auth methods and basic
+     * authentication
+     *
+     * @param sslTrustAll    Whether to trust all SSL certificates
+     * @param sslTrustKey    A specific SSL key to accept exclusively
+     * @param timeout        The connection timeout for all requests
+     * @param authAddress    The authentication domain address
+     * @param authPort       The authentication domain port number
+     * @param maxConnections The number of connections that may be open to the server at the same time
+     * @return An HttpClient that should be stored locally and reused for every new request
+     * @throws DaemonException Thrown when information (such as username/password) is missing
+     */
+    public static DefaultHttpClient createStandardHttpClient(boolean userBasicAuth, String username, String password, String authToken,
+                                                             boolean sslTrustAll, String sslTrustKey, int timeout,
+                                                             String authAddress, int authPort, int maxConnections)
+            throws DaemonException {
 
         // Register http and https sockets
         SchemeRegistry registry = new SchemeRegistry();
@@ -134,7 +164,7 @@ public class HttpHelper {
         } else {
             httpsSocketFactory = new TlsSniSocketFactory();
         }
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+        registry.register(new Scheme("http", new PlainTcpSocketFactory(), 80));
         registry.register(new Scheme("https", httpsSocketFactory, 443));
 
         // Standard parameters
@@ -144,10 +174,15 @@ public class HttpHelper {
         if (userAgent != null) {
             HttpProtocolParams.setUserAgent(httpparams, userAgent);
         }
+        ConnManagerParams.setMaxConnectionsPerRoute(httpparams, new ConnPerRouteBean(maxConnections));
 
         DefaultHttpClient httpclient =
                 new DefaultHttpClient(new ThreadSafeClientConnManager(httpparams, registry), httpparams);
 
+        // Report the timing and size of requests for the task that is being executed
+        httpclient.addRequestInterceptor(TaskMetrics.requestInterceptor);
+        httpclient.addResponseInterceptor(TaskMetrics.responseInterceptor);
+
         // Authentication credentials
         if (userBasicAuth) {
             if (username == null || password == null) {
@@ -263,7 +298,7 @@ public class HttpHelper {
             // the wrapped entity's getContent() decides about repeatability
             InputStream wrappedin = wrappedEntity.getContent();
 
-            return new GZIPInputStream(wrappedin);
+            return TaskMetrics.countDecoded(new GZIPInputStream(wrappedin));
         }
 
         @Override
@@ -274,4 +309,40 @@ public class HttpHelper {
 
     }
 
+    /**
+     * HTTP entity wrapper to decompress deflated HTTP responses, which may be zlib-wrapped (as the HTTP specification
+     * says) or raw (as some servers send it)
+     */
+    private static class DeflateDecompressingEntity extends HttpEntityWrapper {
+
+        public DeflateDecompressingEntity(final HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException, IllegalStateException {
+            PushbackInputStream content = new PushbackInputStream(wrappedEntity.getContent(), 2);
+            byte[] header = new byte[2];
+            int read = 0;
+            while (read < 2) {
+                int r = content.read(header, read, 2 - read);
+                if (r < 0) {
+                    break;
+                }
+                read += r;
+            }
+            content.unread(header, 0, read);
+            // A zlib header has compression method 8 and is a multiple of 31 when read as 16-bit number
+            boolean zlib = read == 2 && (header[0] & 0x0F) == 8 && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+            return TaskMetrics.countDecoded(new InflaterInputStream(content, new Inflater(!zlib)));
+        }
+
+        @Override
+        public long getContentLength() {
+            // length of inflated content is not known
+            return -1;
+        }
+
+    }
+
 }
@@ -0,0 +1,208 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonSettings;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The HTTP connection to one server, as used by adapters to execute their requests without depending on a specific
+ * HTTP client implementation. A transport is shared by all adapter instances for the same server (see
+ * {@link HttpTransports}), takes care of authentication, (pooled) connections and decoding of compressed responses and
+ * may execute multiple requests at the same time.
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes a request and reads its full response.
+     *
+     * @param request The request to execute
+     * @return The response of the server, with its (decoded) body
+     * @throws IOException Thrown when the server could not be reached or the connection was broken
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * Closes all connections of this transport, after which it can no longer be used; called when the server settings
+     * changed and a new transport replaced this one.
+     */
+    void shutdown();
+
+    /**
+     * Creates the transport for a server.
+     */
+    interface Factory {
+
+        /**
+         * @param settings     The server settings to adhere
+         * @param useBasicAuth Whether to authenticate with the username and password of the settings
+         * @return A new transport that connects to the server of the settings
+         * @throws DaemonException Thrown when information (such as username/password) is missing
+         */
+        HttpTransport create(DaemonSettings settings, boolean useBasicAuth) throws DaemonException;
+
+    }
+
+    /**
+     * An HTTP request, with its headers and optional body.
+     */
+    class Request {
+
+        private final String method;
+        private final String url;
+        private final List<String[]> headers = new ArrayList<>();
+        private byte[] body = null;
+        private String contentType = null;
+
+        public Request(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        public static Request get(String url) {
+            return new Request("GET", url);
+        }
+
+        public static Request post(String url, String body, String contentType) {
+            Request request = new Request("POST", url);
+            try {
+                request.setBody(body.getBytes("UTF-8"), contentType);
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported
+            }
+            return request;
+        }
+
+        public Request addHeader(String name, String value) {
+            headers.add(new String[]{name, value});
+            return this;
+        }
+
+        /**
+         * Replaces any earlier added header(s) with the same name.
+         */
+        public Request setHeader(String name, String value) {
+            for (int i = headers.size() - 1; i >= 0; i--) {
+                if (headers.get(i)[0].equalsIgnoreCase(name)) {
+                    headers.remove(i);
+                }
+            }
+            return addHeader(name, value);
+        }
+
+        public Request setBody(byte[] body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+            return this;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public List<String[]> getHeaders() {
+            return Collections.unmodifiableList(headers);
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+    }
+
+    /**
+     * A fully read HTTP response.
+     */
+    class Response {
+
+        private final int statusCode;
+        private final Map<String, String> headers = new TreeMap<>();
+        private final byte[] body;
+        private final String charset;
+
+        /**
+         * @param statusCode The HTTP status code
+         * @param headers    The response headers; only the first value of every header name is kept
+         * @param body       The (decoded) response body, or null if the response had no body
+         * @param charset    The character set of the body as indicated by the server, or null if not indicated
+         */
+        public Response(int statusCode, Map<String, String> headers, byte[] body, String charset) {
+            this.statusCode = statusCode;
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.US);
+                if (!this.headers.containsKey(name)) {
+                    this.headers.put(name, header.getValue());
+                }
+            }
+            this.body = body;
+            this.charset = charset;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Returns the (first) value of a response header, regardless of the case of its name.
+         *
+         * @return The header value, or null if the response has no such header
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        public boolean hasBody() {
+            return body != null;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the response body as text, in the character set indicated by the server or else UTF-8.
+         *
+         * @return The body text, or null if the response had no body
+         */
+        public String getBodyString() throws UnsupportedEncodingException {
+            if (body == null) {
+                return null;
+            }
+            return new String(body, charset == null ? "UTF-8" : charset);
+        }
+
+    }
+
+}
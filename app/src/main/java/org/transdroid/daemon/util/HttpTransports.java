@@ -0,0 +1,103 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonSettings;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides the {@link HttpTransport} to use for a server. Transports are shared by all adapter instances with the same
+ * connection settings, such that a new adapter (as created for every widget update or background check) reuses the
+ * open connections of earlier adapters. There is one transport per server; when its connection settings change (or it
+ * switches between its local and remote address), its old transport is replaced and its connections are closed. The
+ * transports are found by the server's id and only a digest of its connection settings is kept, such that the
+ * credentials are not retained in the key. The Apache HttpClient based transport
+ * is used unless the app sets another implementation via {@link #setFactory(HttpTransport.Factory)}.
+ */
+public class HttpTransports {
+
+    private static HttpTransport.Factory factory = ApacheHttpTransport::new;
+    private static final Map<String, Entry> transports = new HashMap<>();
+
+    /**
+     * Sets the transport implementation to use for all servers. Should be set once, before any adapter is used.
+     */
+    public static synchronized void setFactory(HttpTransport.Factory factory) {
+        HttpTransports.factory = factory;
+        for (Entry entry : transports.values()) {
+            entry.transport.shutdown();
+        }
+        transports.clear();
+    }
+
+    /**
+     * Returns the transport for a server, which is created when the server was not contacted before with exactly these
+     * connection settings.
+     *
+     * @param settings     The server settings to adhere
+     * @param useBasicAuth Whether to authenticate with the username and password of the settings
+     * @return The transport that is shared by all requests to this server
+     * @throws DaemonException Thrown when information (such as username/password) is missing
+     */
+    public static synchronized HttpTransport forServer(DaemonSettings settings, boolean useBasicAuth) throws DaemonException {
+        String server = settings.getType() + "|" + settings.getIdString();
+        byte[] connection = digest(settings.getAddress() + "|" + settings.getPort() + "|"
+                + (settings.getSsl() ? "https" : "http") + "|" + settings.getSslTrustAll() + "|"
+                + settings.getSslTrustKey() + "|" + settings.getTimeoutInMilliseconds() + "|" + settings.getAuthToken() + "|"
+                + settings.getMaxConnections() + "|" + (useBasicAuth && settings.shouldUseAuthentication() ? settings.getUsername() + "|" + settings.getPassword() : ""));
+        Entry entry = transports.get(server);
+        if (entry != null && MessageDigest.isEqual(entry.connection, connection)) {
+            return entry.transport;
+        }
+        HttpTransport transport = factory.create(settings, useBasicAuth);
+        transports.put(server, new Entry(connection, transport));
+        if (entry != null) {
+            // The settings of this server changed, so the connections of the old transport are of no use anymore
+            entry.transport.shutdown();
+        }
+        return transport;
+    }
+
+    private static byte[] digest(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are available on every Android version
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Entry {
+
+        private final byte[] connection;
+        private final HttpTransport transport;
+
+        Entry(byte[] connection, HttpTransport transport) {
+            this.connection = connection;
+            this.transport = transport;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010-2018 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon.util;
+
+import android.os.SystemClock;
+
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.params.HttpParams;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * HttpClient socket factory for plain (non-TLS) connections, which resolves host names via the {@link DnsCache}, just
+ * like the {@link TlsSniSocketFactory} does for secure connections. The time it takes to connect is recorded for the task
+ * that is executed on the current thread (see {@link TaskMetrics}).
+ */
+public class PlainTcpSocketFactory implements SocketFactory {
+
+    private final PlainSocketFactory plainSocketFactory = new PlainSocketFactory(DnsCache::resolve);
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return plainSocketFactory.createSocket();
+    }
+
+    @Override
+    public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort,
+                                HttpParams params) throws IOException {
+        long connectStart = SystemClock.elapsedRealtime();
+        try {
+            Socket connected = plainSocketFactory.connectSocket(sock, host, port, localAddress, localPort, params);
+            TaskMetrics.recordConnect(SystemClock.elapsedRealtime() - connectStart);
+            return connected;
+        } catch (IOException e) {
+            // The server might have moved, or we are on another network now: look up the address again next time
+            DnsCache.invalidate(host);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isSecure(Socket sock) throws IllegalArgumentException {
+        return false;
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.transdroid.daemon.DaemonSettings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches what adapters learned about the capabilities of a server, such as its (API) version and supported methods, so
+ * these do not need to be discovered again by every new adapter instance or after an app restart. Capabilities are
+ * stored per server address and connection settings via the store as provided by the app with
+ * {@link #setStore(KeyValueStore)}; without a store, capabilities are simply rediscovered as before.
+ * <p/>
+ * Capabilities expire after a day, as the server software might have been updated. Adapters should also invalidate
+ * them when a request fails in a way that suggests the server is not (anymore) what they expected.
+ */
+public class ServerCapabilities {
+
+    public static final String VERSION = "version";
+    public static final String METHODS = "methods";
+
+    private static final long MAX_AGE = 24 * 60 * 60 * 1000; // 1 day
+    private static KeyValueStore store = null;
+
+    /**
+     * Sets the storage to use for server capabilities. Should be set once, before any adapter is used.
+     */
+    public static synchronized void setStore(KeyValueStore store) {
+        ServerCapabilities.store = store;
+    }
+
+    private static synchronized KeyValueStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns a known capability of a server.
+     *
+     * @param settings The settings of the server
+     * @param name     The capability, such as {@link #VERSION}
+     * @return The stored value, or null if it is unknown or no longer recent
+     */
+    public static String get(DaemonSettings settings, String name) {
+        KeyValueStore store = getStore();
+        if (store == null) {
+            return null;
+        }
+        String stored = store.get(getKey(settings, name));
+        if (stored == null) {
+            return null;
+        }
+        int separator = stored.indexOf('|');
+        try {
+            if (System.currentTimeMillis() - Long.parseLong(stored.substring(0, separator)) > MAX_AGE) {
+                store.remove(getKey(settings, name));
+                return null;
+            }
+            return stored.substring(separator + 1);
+        } catch (RuntimeException e) {
+            store.remove(getKey(settings, name));
+            return null;
+        }
+    }
+
+    /**
+     * Returns a known numeric capability, such as the version, of a server.
+     *
+     * @return The stored value, or the given value to use when it is unknown or no longer recent
+     */
+    public static int getInt(DaemonSettings settings, String name, int unknown) {
+        String value = get(settings, name);
+        try {
+            return value == null ? unknown : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return unknown;
+        }
+    }
+
+    /**
+     * Returns a known list capability, such as the supported methods, of a server.
+     *
+     * @return The stored list of values, or null if it is unknown or no longer recent
+     */
+    public static List<String> getList(DaemonSettings settings, String name) {
+        String value = get(settings, name);
+        if (value == null) {
+            return null;
+        }
+        return value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split("\n"));
+    }
+
+    /**
+     * Stores a capability of a server as just discovered.
+     *
+     * @param settings The settings of the server
+     * @param name     The capability, such as {@link #VERSION}
+     * @param value    The discovered value
+     */
+    public static void put(DaemonSettings settings, String name, String value) {
+        KeyValueStore store = getStore();
+        if (store != null) {
+            store.put(getKey(settings, name), System.currentTimeMillis() + "|" + value);
+        }
+    }
+
+    public static void put(DaemonSettings settings, String name, int value) {
+        put(settings, name, Integer.toString(value));
+    }
+
+    public static void put(DaemonSettings settings, String name, List<String> values) {
+        StringBuilder value = new StringBuilder();
+        for (String item : values) {
+            value.append(value.length() == 0 ? "" : "\n").append(item);
+        }
+        put(settings, name, value.toString());
+    }
+
+    /**
+     * Removes known capabilities of a server, such that these are discovered again on the next request.
+     *
+     * @param settings The settings of the server
+     * @param names    The capabilities to forget
+     */
+    public static void invalidate(DaemonSettings settings, String... names) {
+        KeyValueStore store = getStore();
+        if (store == null) {
+            return;
+        }
+        for (String name : names) {
+            store.remove(getKey(settings, name));
+        }
+    }
+
+    private static String getKey(DaemonSettings settings, String name) {
+        String server = settings.getType() + "|" + (settings.getSsl() ? "https" : "http") + "|" + settings.getAddress() + "|"
+                + settings.getPort() + "|" + settings.getFolder();
+        return Long.toHexString(BinaryHelper.hash64(server)) + "_cap_" + name;
+    }
+
+}
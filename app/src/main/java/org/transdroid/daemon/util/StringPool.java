@@ -0,0 +1,121 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import org.transdroid.daemon.DaemonSettings;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of canonical string instances for the few distinct values that many torrents of a server share, such as download
+ * locations, labels, errors and trackers. Adapters pass these values through the pool of their server while parsing, so
+ * that every torrent refers to the same instance (which also makes equality checks a reference comparison) and the pool
+ * is reused on every refresh of the same server. Pools are found by the server's id, such that the server settings
+ * themselves (including its credentials) are not retained.
+ */
+public class StringPool {
+
+    private static final int MAX_SERVERS = 8;
+    private static final int MAX_SIZE = 2048;
+    private static final Map<String, StringPool> pools =
+            new LinkedHashMap<String, StringPool>(MAX_SERVERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StringPool> eldest) {
+                    return size() > MAX_SERVERS;
+                }
+            };
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, Map<String, String>> suffixed = new HashMap<>();
+
+    /**
+     * Returns the string pool for some server, which is shared by all adapter instances of this server.
+     *
+     * @param settings The settings of the server for which torrents are parsed
+     * @return The (possibly new) pool of this server
+     */
+    public static StringPool forServer(DaemonSettings settings) {
+        String server = settings.getType() + "|" + settings.getIdString();
+        synchronized (pools) {
+            StringPool pool = pools.get(server);
+            if (pool == null) {
+                pool = new StringPool();
+                pools.put(server, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Returns the canonical instance of some string value.
+     *
+     * @param value The string as just parsed, which may be null
+     * @return An equal string instance as stored in the pool, or null if the value was null
+     */
+    public synchronized String get(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = strings.get(value);
+        if (pooled == null) {
+            ensureCapacity();
+            strings.put(value, value);
+            pooled = value;
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns the canonical instance of some string value followed by a fixed suffix, such as a directory path and its
+     * separator. Unlike a plain concatenation, no new string is built when the combined value is already known.
+     *
+     * @param value  The string as just parsed, which may be null
+     * @param suffix The suffix to append
+     * @return The pooled concatenation of value and suffix, or null if the value was null
+     */
+    public synchronized String get(String value, String suffix) {
+        if (value == null) {
+            return null;
+        }
+        Map<String, String> withSuffix = suffixed.get(suffix);
+        String pooled = withSuffix == null ? null : withSuffix.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        String key = get(value);
+        pooled = get(value + suffix);
+        withSuffix = suffixed.get(suffix);
+        if (withSuffix == null) {
+            withSuffix = new HashMap<>();
+            suffixed.put(suffix, withSuffix);
+        }
+        withSuffix.put(key, pooled);
+        return pooled;
+    }
+
+    private void ensureCapacity() {
+        // Values that are not shared at all (such as unique names) should not let the pool grow indefinitely
+        if (strings.size() >= MAX_SIZE) {
+            strings.clear();
+            suffixed.clear();
+        }
+    }
+
+}
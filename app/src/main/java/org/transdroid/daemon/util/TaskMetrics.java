@@ -0,0 +1,389 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import android.os.SystemClock;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonMethod;
+import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.task.DaemonTaskFailureResult;
+import org.transdroid.daemon.task.DaemonTaskResult;
+import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of every executed task goes, per server and per method: connecting (including the DNS lookup
+ * and TLS handshake), waiting for the first byte of the server response, reading the rest of the response, and parsing
+ * it into the result. Also records the response sizes before and after decompression, the number of torrents retrieved
+ * and the types of errors.
+ * <p/>
+ * A task is traced on the thread that executes it (see {@link #begin()} and {@link #end}); the HTTP clients as created
+ * by {@link HttpHelper} report their connections and requests to the trace of the current thread via their socket
+ * factories, {@link #requestInterceptor} and {@link #responseInterceptor}. Adapters report the time they spend parsing
+ * via {@link #recordParse(long)}; for adapters that do not, no parse time is recorded. The recorded distributions are
+ * kept in memory only, until the app process ends.
+ */
+public class TaskMetrics {
+
+    private static final ThreadLocal<Trace> current = new ThreadLocal<>();
+    private static final ConcurrentHashMap<String, MethodMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * HTTP request interceptor that marks the start of a request (after the connection was established)
+     */
+    public static final HttpRequestInterceptor requestInterceptor = (request, context) -> {
+        Trace trace = current.get();
+        if (trace != null) {
+            trace.onRequest(SystemClock.elapsedRealtime());
+        }
+    };
+    /**
+     * HTTP response interceptor that marks the arrival of the response headers and counts the bytes of the response
+     * body; should be added before any interceptor that decodes the response
+     */
+    public static final HttpResponseInterceptor responseInterceptor = (response, context) -> {
+        Trace trace = current.get();
+        if (trace == null) {
+            return;
+        }
+        trace.onFirstByte(SystemClock.elapsedRealtime());
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new CountingEntity(entity, entity.getContentEncoding() == null));
+        }
+    };
+
+    /**
+     * Starts tracing the task that is about to be executed on the current thread.
+     *
+     * @return The trace to pass on to {@link #end}, or null if a task is already traced on this thread
+     */
+    public static Trace begin() {
+        if (current.get() != null) {
+            return null;
+        }
+        Trace trace = new Trace(SystemClock.elapsedRealtime());
+        current.set(trace);
+        return trace;
+    }
+
+    /**
+     * Stops tracing the task that was executed on the current thread and records its measurements.
+     *
+     * @param settings The settings of the server that the task was executed on
+     * @param method   The method of the task
+     * @param trace    The trace as returned by {@link #begin()}
+     * @param result   The result of the task, or null if it did not complete
+     */
+    public static void end(DaemonSettings settings, DaemonMethod method, Trace trace, DaemonTaskResult result) {
+        if (trace == null) {
+            return;
+        }
+        current.remove();
+        long total = SystemClock.elapsedRealtime() - trace.startedAt;
+        trace.flushRequest();
+
+        String server = settings.getType() + " " + settings.getHumanReadableIdentifier();
+        String key = server + "|" + method;
+        MethodMetrics methodMetrics = metrics.get(key);
+        if (methodMetrics == null) {
+            methodMetrics = new MethodMetrics(server, method);
+            MethodMetrics earlier = metrics.putIfAbsent(key, methodMetrics);
+            if (earlier != null) {
+                methodMetrics = earlier;
+            }
+        }
+        methodMetrics.record(trace, total, result);
+        DataUsage.record(settings, trace.wireBytes);
+    }
+
+    /**
+     * Records the time it took to set up a (secure) connection for the task that is executed on the current thread.
+     */
+    public static void recordConnect(long duration) {
+        Trace trace = current.get();
+        if (trace != null) {
+            trace.connect += duration;
+        }
+    }
+
+    /**
+     * Records the time it took to parse (part of) a server response for the task that is executed on the current thread.
+     */
+    public static void recordParse(long duration) {
+        Trace trace = current.get();
+        if (trace != null) {
+            trace.parse += duration;
+            trace.parsed = true;
+        }
+    }
+
+    /**
+     * Wraps the stream of a decompressed response, such that the decoded bytes read from it are counted for the task
+     * that is executed on the current thread.
+     */
+    public static InputStream countDecoded(InputStream decoded) {
+        return new CountingInputStream(decoded, false, true);
+    }
+
+    /**
+     * Wraps the stream of a (compressed) response that is not read via an HTTP client, such as from a raw socket, such
+     * that the bytes received from it are counted for the task that is executed on the current thread.
+     */
+    public static InputStream countReceived(InputStream received) {
+        return new CountingInputStream(received, false, false);
+    }
+
+    /**
+     * Returns a human-readable overview of all measurements since the app was started, such as to show on screen or to
+     * include in an error report.
+     *
+     * @return The measurements per server and method, or an empty string if no tasks were executed yet
+     */
+    public static String getReport() {
+        StringBuilder report = new StringBuilder();
+        String lastServer = null;
+        for (MethodMetrics method : new TreeMap<>(metrics).values()) {
+            if (!method.server.equals(lastServer)) {
+                if (lastServer != null) {
+                    report.append("\n");
+                }
+                report.append(method.server).append("\n");
+                lastServer = method.server;
+            }
+            method.appendTo(report);
+        }
+        return report.toString();
+    }
+
+    /**
+     * The measurements of one task as it is being executed; only accessed from the thread that executes the task.
+     */
+    public static class Trace {
+
+        private final long startedAt;
+        private long connect = 0;
+        private long firstByte = 0;
+        private long network = 0;
+        private long parse = 0;
+        private boolean parsed = false;
+        private long wireBytes = 0;
+        private long decodedBytes = 0;
+        private long requestStartedAt = -1;
+        private long lastReadAt;
+
+        Trace(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        void onRequest(long now) {
+            flushRequest();
+            requestStartedAt = now;
+            lastReadAt = now;
+        }
+
+        void onFirstByte(long now) {
+            if (requestStartedAt >= 0) {
+                firstByte += now - requestStartedAt;
+                lastReadAt = now;
+            }
+        }
+
+        void onRead(long bytes, boolean uncompressed) {
+            wireBytes += bytes;
+            if (uncompressed) {
+                decodedBytes += bytes;
+            }
+            lastReadAt = SystemClock.elapsedRealtime();
+        }
+
+        void flushRequest() {
+            if (requestStartedAt >= 0) {
+                network += lastReadAt - requestStartedAt;
+                requestStartedAt = -1;
+            }
+        }
+
+    }
+
+    private static class MethodMetrics {
+
+        private final String server;
+        private final DaemonMethod method;
+        private final Histogram total = new Histogram();
+        private final Histogram connect = new Histogram();
+        private final Histogram firstByte = new Histogram();
+        private final Histogram read = new Histogram();
+        private final Histogram parse = new Histogram();
+        private final Histogram wireBytes = new Histogram();
+        private final Histogram decodedBytes = new Histogram();
+        private final Histogram torrents = new Histogram();
+        private final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        MethodMetrics(String server, DaemonMethod method) {
+            this.server = server;
+            this.method = method;
+        }
+
+        void record(Trace trace, long duration, DaemonTaskResult result) {
+            total.record(duration);
+            connect.record(trace.connect);
+            firstByte.record(trace.firstByte);
+            read.record(Math.max(0, trace.network - trace.firstByte));
+            if (trace.parsed) {
+                parse.record(trace.parse);
+            }
+            wireBytes.record(trace.wireBytes);
+            decodedBytes.record(trace.decodedBytes);
+            if (result instanceof RetrieveTaskSuccessResult && ((RetrieveTaskSuccessResult) result).getTorrents() != null) {
+                torrents.record(((RetrieveTaskSuccessResult) result).getTorrents().size());
+            }
+            if (result instanceof DaemonTaskFailureResult) {
+                DaemonException e = ((DaemonTaskFailureResult) result).getException();
+                countError(e instanceof CircuitBreaker.OpenCircuitException ? "NotContacted" : e.getType().name());
+            } else if (result == null) {
+                countError("NoResult");
+            }
+        }
+
+        private void countError(String type) {
+            AtomicLong count = errors.get(type);
+            if (count == null) {
+                count = new AtomicLong();
+                AtomicLong earlier = errors.putIfAbsent(type, count);
+                if (earlier != null) {
+                    count = earlier;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        void appendTo(StringBuilder report) {
+            report.append("  ").append(method).append(": ").append(total.getCount()).append("x, total ");
+            appendTimes(report, total);
+            report.append("; connect ");
+            appendTimes(report, connect);
+            report.append("; first byte ");
+            appendTimes(report, firstByte);
+            report.append("; read ");
+            appendTimes(report, read);
+            if (parse.getCount() > 0) {
+                report.append("; parse ");
+                appendTimes(report, parse);
+            }
+            report.append("; avg ").append(FileSizeConverter.getSize(wireBytes.getMean())).append(" received, ")
+                    .append(FileSizeConverter.getSize(decodedBytes.getMean())).append(" decoded");
+            if (torrents.getCount() > 0) {
+                report.append("; avg ").append(torrents.getMean()).append(" torrents");
+            }
+            if (!errors.isEmpty()) {
+                report.append("; errors");
+                for (Map.Entry<String, AtomicLong> error : new TreeMap<>(errors).entrySet()) {
+                    report.append(" ").append(error.getKey()).append(" ").append(error.getValue().get()).append("x");
+                }
+            }
+            report.append("\n");
+        }
+
+        private void appendTimes(StringBuilder report, Histogram histogram) {
+            report.append(String.format(Locale.US, "p50 %dms p90 %dms max %dms", histogram.getPercentile(0.5),
+                    histogram.getPercentile(0.9), histogram.getMax()));
+        }
+
+    }
+
+    /**
+     * HTTP entity wrapper that reports the bytes read from the response body to the trace of the current thread.
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+
+        private final boolean uncompressed;
+
+        CountingEntity(HttpEntity entity, boolean uncompressed) {
+            super(entity);
+            this.uncompressed = uncompressed;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new CountingInputStream(wrappedEntity.getContent(), uncompressed, false);
+        }
+
+    }
+
+    /**
+     * Input stream that reports the bytes read from it to the trace of the current thread, either as bytes received
+     * from the network or as bytes decoded from a compressed response.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final boolean uncompressed;
+        private final boolean decoded;
+
+        CountingInputStream(InputStream in, boolean uncompressed, boolean decoded) {
+            super(in);
+            this.uncompressed = uncompressed;
+            this.decoded = decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(long bytes) {
+            Trace trace = current.get();
+            if (trace == null) {
+                return;
+            }
+            if (decoded) {
+                trace.decodedBytes += bytes;
+            } else {
+                trace.onRead(bytes, uncompressed);
+            }
+        }
+
+    }
+
+}
@@ -18,16 +18,21 @@ package org.transdroid.daemon.util;
 
 import android.annotation.TargetApi;
 import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.apache.http.conn.scheme.LayeredSocketFactory;
 import org.apache.http.conn.ssl.StrictHostnameVerifier;
 import org.apache.http.params.HttpParams;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -53,10 +58,19 @@ import javax.net.ssl.TrustManager;
  * server certificate is given, such that the correct SHA-1 hash to use can be foudn in the log.
  * <p/>
  * Finally, the ignoring of all SSL certificates (and hostname) is possible (which is obviously very insecure!).
+ * <p/>
+ * To make repeated connections to the same server cheap, the underlying SSL socket factory (with its trust managers) is
+ * shared by all connections with the same trust configuration, sessions are resumed from an SSL session cache that is
+ * stored on disk (when set via {@link #setSessionCacheDirectory(File)}) and host names are resolved via the
+ * {@link DnsCache}. As a resumed session is not checked by the trust managers again, every trust configuration has its
+ * own session cache, and sessions of connections that accept all certificates are never stored on disk.
  */
 public class TlsSniSocketFactory implements LayeredSocketFactory {
 
     private final static HostnameVerifier hostnameVerifier = new StrictHostnameVerifier();
+    private final static Map<String, SSLCertificateSocketFactory> sslSocketFactories = new HashMap<>();
+    private static File sessionCacheDirectory = null;
+    private final static Map<String, SSLSessionCache> sessionCaches = new HashMap<>();
 
     private final boolean acceptAllCertificates;
     private final String selfSignedCertificateKey;
@@ -76,6 +90,64 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
         this.selfSignedCertificateKey = null;
     }
 
+    /**
+     * Sets the directory in which SSL sessions are stored, such that these can be resumed after an app restart. Should
+     * be set once, before any connections are made.
+     *
+     * @param directory The (private) directory to store the sessions in
+     */
+    public static synchronized void setSessionCacheDirectory(File directory) {
+        sessionCacheDirectory = directory;
+    }
+
+    /**
+     * Returns the on-disk session cache for a trust configuration, such that sessions that were established under one
+     * configuration (such as an old pinned key) are never resumed under another.
+     *
+     * @param name A name for the trust configuration that is safe to use as directory name
+     * @return The session cache, or null if sessions cannot be stored
+     */
+    private static synchronized SSLSessionCache getSessionCache(String name) {
+        if (sessionCacheDirectory == null) {
+            return null;
+        }
+        SSLSessionCache sessionCache = sessionCaches.get(name);
+        if (sessionCache == null) {
+            try {
+                sessionCache = new SSLSessionCache(new File(sessionCacheDirectory, name));
+                sessionCaches.put(name, sessionCache);
+            } catch (IOException e) {
+                Log.d(TlsSniSocketFactory.class.getSimpleName(), "SSL session cache not usable: " + e);
+            }
+        }
+        return sessionCache;
+    }
+
+    /**
+     * Returns the SSL socket factory for the trust configuration of this factory, which is created only once, such that
+     * the trust managers and (in-memory) session cache are shared between all connections that use it.
+     */
+    private SSLCertificateSocketFactory getSslSocketFactory() {
+        String key = acceptAllCertificates ? "all" : selfSignedCertificateKey != null ? "key:" + selfSignedCertificateKey : "default";
+        synchronized (sslSocketFactories) {
+            SSLCertificateSocketFactory sslSocketFactory = sslSocketFactories.get(key);
+            if (sslSocketFactory == null) {
+                // Sessions of connections that accept any certificate are only kept in memory, for this factory
+                SSLSessionCache sessionCache = acceptAllCertificates ? null : getSessionCache(selfSignedCertificateKey != null
+                        ? "key-" + Long.toHexString(BinaryHelper.hash64(selfSignedCertificateKey)) : "default");
+                sslSocketFactory = (SSLCertificateSocketFactory) SSLCertificateSocketFactory.getDefault(0, sessionCache);
+                // For self-signed certificates use a custom trust manager
+                if (acceptAllCertificates) {
+                    sslSocketFactory.setTrustManagers(new TrustManager[]{new IgnoreSSLTrustManager()});
+                } else if (selfSignedCertificateKey != null) {
+                    sslSocketFactory.setTrustManagers(new TrustManager[]{new SelfSignedTrustManager(selfSignedCertificateKey)});
+                }
+                sslSocketFactories.put(key, sslSocketFactory);
+            }
+            return sslSocketFactory;
+        }
+    }
+
     // Plain TCP/IP (layer below TLS)
 
     @Override
@@ -107,18 +179,18 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
             plainSocket.close();
         }
 
-        SSLCertificateSocketFactory sslSocketFactory =
-                (SSLCertificateSocketFactory) SSLCertificateSocketFactory.getDefault(0);
-
-        // For self-signed certificates use a custom trust manager
-        if (acceptAllCertificates) {
-            sslSocketFactory.setTrustManagers(new TrustManager[]{new IgnoreSSLTrustManager()});
-        } else if (selfSignedCertificateKey != null) {
-            sslSocketFactory.setTrustManagers(new TrustManager[]{new SelfSignedTrustManager(selfSignedCertificateKey)});
-        }
+        SSLCertificateSocketFactory sslSocketFactory = getSslSocketFactory();
 
         // create and connect SSL socket, but don't do hostname/certificate verification yet
-        SSLSocket ssl = (SSLSocket) sslSocketFactory.createSocket(InetAddress.getByName(host), port);
+        long connectStart = SystemClock.elapsedRealtime();
+        SSLSocket ssl;
+        try {
+            ssl = (SSLSocket) sslSocketFactory.createSocket(DnsCache.resolve(host), port);
+        } catch (IOException e) {
+            // The server might have moved, or we are on another network now: look up the address again next time
+            DnsCache.invalidate(host);
+            throw e;
+        }
 
         // enable TLSv1.1/1.2 if available
         ssl.setEnabledProtocols(ssl.getSupportedProtocols());
@@ -137,6 +209,7 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
 
         // verify hostname and certificate
         SSLSession session = ssl.getSession();
+        TaskMetrics.recordConnect(SystemClock.elapsedRealtime() - connectStart);
         if (!(acceptAllCertificates || selfSignedCertificateKey != null) && !hostnameVerifier.verify(host, session)) {
             throw new SSLPeerUnverifiedException("Cannot verify hostname: " + host);
         }